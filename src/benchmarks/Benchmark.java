@@ -0,0 +1,25 @@
+package benchmarks;
+
+/**
+ * One piece of code to time, for the BenchmarkRunner.
+ *
+ * setUp() builds whatever the benchmark works on and isn't timed. run() is
+ * one operation and is called over and over; what it returns is handed to
+ * the runner so the JIT can't decide the work isn't needed and drop it.
+ */
+public abstract class Benchmark {
+	private final String name;
+
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setUp() throws Exception {
+	}
+
+	public abstract Object run() throws Exception;
+}
@@ -0,0 +1,254 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Runs the SwarmBenchmarks and reports the average time and memory allocated
+ * per operation, in the manner of JMH:
+ *  - each benchmark is run in a JVM of its own (-forks=N, 0 to run them all
+ *    in this one), so what the JIT learned from one doesn't skew the next;
+ *  - warmup iterations are run and thrown away before the measured ones;
+ *  - operations are timed in batches, so reading the clock doesn't count;
+ *  - the result of every operation is consumed so the work can't be dropped.
+ *
+ * Run from the top of the repository so the map files are found, e.g.
+ *   java -cp bin:libs/* benchmarks.BenchmarkRunner -filter=scan -csv=bench.csv
+ *
+ * options:
+ *   -filter=text    only the benchmarks whose name contains text
+ *   -list           print the benchmark names and stop
+ *   -warmup=N       warmup iterations (5)
+ *   -iterations=N   measured iterations (5)
+ *   -time=MS        length of an iteration in milliseconds (1000)
+ *   -forks=N        JVMs to run each benchmark in, one after another (1)
+ *   -map=file       map the scan and pathfinding benchmarks run on, or a world:WIDTHxHEIGHT:SEED to make up (Map100x60_2016-04-30_1.txt)
+ *   -csv=file       also append the results to this file, to compare runs
+ */
+public class BenchmarkRunner {
+	// what a forked JVM prints for each measured iteration: RESULT name ns_per_op bytes_per_op
+	private static final String RESULT = "RESULT ";
+
+	// the runner's own output - System.out is silenced while benchmarks run
+	private static final PrintStream out = System.out;
+	private static final PrintStream discard = new PrintStream(new OutputStream() {
+		public void write(int b) {
+		}
+
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	// results are compared with this so the JIT has to work them out
+	private static volatile Object blackhole = new Object();
+	private static int blackholeHits;
+
+	public static void main(String[] args) throws Exception {
+		String filter = "";
+		String exact = null;
+		boolean list = false;
+		int warmup = 5;
+		int iterations = 5;
+		long iterationMillis = 1000;
+		int forks = 1;
+		String mapFile = "Map100x60_2016-04-30_1.txt";
+		String csvFile = null;
+
+		for (String s : args) {
+			if (s.startsWith("-filter=")) {
+				filter = s.substring(8);
+			} else if (s.startsWith("-exact=")) {
+				// used by a forked JVM to run just the one benchmark
+				exact = s.substring(7);
+			} else if (s.equals("-list")) {
+				list = true;
+			} else if (s.startsWith("-warmup=")) {
+				warmup = Integer.parseInt(s.substring(8));
+			} else if (s.startsWith("-iterations=")) {
+				iterations = Integer.parseInt(s.substring(12));
+			} else if (s.startsWith("-time=")) {
+				iterationMillis = Long.parseLong(s.substring(6));
+			} else if (s.startsWith("-forks=")) {
+				forks = Integer.parseInt(s.substring(7));
+			} else if (s.startsWith("-map=")) {
+				mapFile = s.substring(5);
+			} else if (s.startsWith("-csv=")) {
+				csvFile = s.substring(5);
+			} else {
+				out.println("BenchmarkRunner: unknown option " + s);
+				System.exit(2);
+			}
+		}
+
+		List<Benchmark> selected = new ArrayList<Benchmark>();
+		for (Benchmark benchmark : SwarmBenchmarks.create(mapFile)) {
+			if (exact != null ? benchmark.getName().equals(exact) : benchmark.getName().contains(filter)) {
+				selected.add(benchmark);
+			}
+		}
+		if (list) {
+			for (Benchmark benchmark : selected) {
+				out.println(benchmark.getName());
+			}
+			return;
+		}
+
+		if (exact != null) {
+			// a forked JVM - hand the measurements back to the parent
+			for (double[] result : measure(selected.get(0), warmup, iterations, iterationMillis)) {
+				out.println(RESULT + selected.get(0).getName() + " " + result[0] + " " + result[1]);
+			}
+			return;
+		}
+
+		out.println("BenchmarkRunner: " + selected.size() + " benchmarks, " + forks + " forks x (" + warmup + " warmup + "
+				+ iterations + " measured) iterations of " + iterationMillis + " ms, java " + System.getProperty("java.version"));
+		out.println(String.format("%-32s %14s %12s %14s %12s", "benchmark", "ns/op", "+- stddev", "ops/s", "B/op"));
+		List<String> csvLines = new ArrayList<String>();
+		for (Benchmark benchmark : selected) {
+			List<double[]> results = new ArrayList<double[]>();
+			if (forks == 0) {
+				results.addAll(measure(benchmark, warmup, iterations, iterationMillis));
+			} else {
+				for (int f = 0; f < forks; f++) {
+					results.addAll(fork(benchmark.getName(), warmup, iterations, iterationMillis, mapFile));
+				}
+			}
+			if (results.isEmpty()) {
+				out.println(String.format("%-32s %14s", benchmark.getName(), "FAILED"));
+				continue;
+			}
+
+			double mean = 0;
+			double bytes = 0;
+			for (double[] result : results) {
+				mean += result[0];
+				bytes += result[1];
+			}
+			mean /= results.size();
+			bytes /= results.size();
+			double variance = 0;
+			for (double[] result : results) {
+				variance += (result[0] - mean) * (result[0] - mean);
+			}
+			double stddev = results.size() > 1 ? Math.sqrt(variance / (results.size() - 1)) : 0;
+
+			out.println(String.format("%-32s %14.1f %12.1f %14.0f %12.0f", benchmark.getName(), mean, stddev, 1e9 / mean, bytes));
+			csvLines.add(benchmark.getName() + "," + String.format("%.1f,%.1f,%.0f", mean, stddev, bytes) + "," + results.size());
+		}
+
+		if (csvFile != null) {
+			appendCsv(csvFile, csvLines);
+		}
+	}
+
+	/**
+	 * Runs the benchmark in this JVM.
+	 * @return {ns per operation, bytes allocated per operation} for each measured iteration
+	 */
+	private static List<double[]> measure(Benchmark benchmark, int warmup, int iterations, long iterationMillis) throws Exception {
+		System.setOut(discard);
+		try {
+			benchmark.setUp();
+
+			// find a batch size that takes about a millisecond, so the clock is read rarely
+			int batch = 1;
+			while (true) {
+				long start = System.nanoTime();
+				runBatch(benchmark, batch);
+				if (System.nanoTime() - start > 1000000 || batch >= (1 << 24)) {
+					break;
+				}
+				batch *= 2;
+			}
+
+			List<double[]> results = new ArrayList<double[]>();
+			for (int i = 0; i < warmup + iterations; i++) {
+				long bytesBefore = allocatedBytes();
+				long operations = 0;
+				long start = System.nanoTime();
+				long end = start + iterationMillis * 1000000;
+				long now;
+				do {
+					runBatch(benchmark, batch);
+					operations += batch;
+				} while ((now = System.nanoTime()) < end);
+				long bytes = allocatedBytes() - bytesBefore;
+
+				if (i >= warmup) {
+					results.add(new double[] { (double) (now - start) / operations, bytes < 0 ? -1 : (double) bytes / operations });
+				}
+			}
+			return results;
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	private static void runBatch(Benchmark benchmark, int batch) throws Exception {
+		for (int i = 0; i < batch; i++) {
+			if (benchmark.run() == blackhole) {
+				blackholeHits++;
+			}
+		}
+	}
+
+	// bytes allocated by this thread so far, or a negative number if the JVM can't tell
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	// runs the benchmark in a new JVM with the same class path and collects its measurements
+	private static List<double[]> fork(String name, int warmup, int iterations, long iterationMillis, String mapFile) throws IOException, InterruptedException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				BenchmarkRunner.class.getName(), "-exact=" + name, "-warmup=" + warmup, "-iterations=" + iterations,
+				"-time=" + iterationMillis, "-map=" + mapFile);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+
+		List<double[]> results = new ArrayList<double[]>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.startsWith(RESULT)) {
+				String[] fields = line.split(" ");
+				results.add(new double[] { Double.parseDouble(fields[2]), Double.parseDouble(fields[3]) });
+			} else {
+				out.println("  " + name + ": " + line);
+			}
+		}
+		in.close();
+		process.waitFor();
+		return results;
+	}
+
+	private static void appendCsv(String fileName, List<String> lines) throws IOException {
+		boolean header = !new File(fileName).exists();
+		FileWriter writer = new FileWriter(fileName, true);
+		try {
+			if (header) {
+				writer.write("date,java,benchmark,ns_per_op,stddev_ns,bytes_per_op,iterations\n");
+			}
+			String prefix = new Date() + "," + System.getProperty("java.version") + ",";
+			for (String line : lines) {
+				writer.write(prefix + line + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,389 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import common.Coord;
+import common.MapTile;
+import common.PlanetMap;
+import common.ProceduralWorld;
+import common.RoverLocations;
+import common.ScanDelta;
+import common.ScanMap;
+import common.ScanMapCodec;
+import common.ScienceLocations;
+import enums.Science;
+import enums.Terrain;
+import rover07Util.GoalPicker;
+import rover07Util.WorldMap;
+import rover07Util.WorldMapCell;
+import rover07Util.Communications.Protocol;
+import rover07Util.Communications.ScienceInfo;
+import rover07Util.Pathfinding.DStarLite;
+import rover07Util.Pathfinding.MapCell;
+import supportTools.MapConverter;
+import supportTools.SwarmMapInit;
+
+/**
+ * The server's and ROVER_07's hot paths, as Benchmarks for the BenchmarkRunner:
+ *   scan.*       building a SCAN window and encoding it the three ways a reply can be sent
+ *   map.parse.*  loading the bundled map files
+ *   map.load.*   loading a map converted to the binary format
+ *   worldMap.*   ROVER_07 merging scan replies into its map
+ *   dstar.*      ROVER_07's D* Lite path planning, from scratch and after a change
+ *   goalPicker.* ROVER_07 choosing where to go next
+ *   protocol.*   the science messages the rovers send each other
+ *
+ * Everything is made from fixed seeds, so every run works on the same data.
+ */
+public class SwarmBenchmarks {
+	// a ROVER_07 - radar sensor, and no range booster
+	private static final EnumSet<Science> VISIBLE_SCIENCE = EnumSet.of(Science.MINERAL);
+	private static final int EDGE = 7;
+	private static final int BOOSTED_EDGE = 11;
+	// number of rover positions the scan benchmarks go round, a power of two
+	private static final int POSITIONS = 1024;
+	// enough for every chunk the positions are in, when run on a made up world (-map=world:...)
+	private static final long WORLD_MEMORY = 64L * 1024 * 1024;
+
+	/**
+	 * @param mapFile the map the scan and pathfinding benchmarks run on
+	 */
+	static List<Benchmark> create(final String mapFile) {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		final Game game = new Game(mapFile);
+
+		// *** SCAN ***
+		benchmarks.add(new Benchmark("scan.getScanMap") {
+			int i = 0;
+
+			public void setUp() throws Exception {
+				game.load();
+			}
+
+			public Object run() {
+				return game.planetMap.getScanMap(game.positions[i++ & (POSITIONS - 1)], EDGE, game.roverLocations, game.scienceLocations, VISIBLE_SCIENCE);
+			}
+		});
+		benchmarks.add(new Benchmark("scan.getScanMap.boosted") {
+			int i = 0;
+
+			public void setUp() throws Exception {
+				game.load();
+			}
+
+			public Object run() {
+				return game.planetMap.getScanMap(game.positions[i++ & (POSITIONS - 1)], BOOSTED_EDGE, game.roverLocations, game.scienceLocations, VISIBLE_SCIENCE);
+			}
+		});
+		benchmarks.add(new Benchmark("scan.getScanTiles") {
+			int i = 0;
+			byte[] tiles = new byte[EDGE * EDGE];
+
+			public void setUp() throws Exception {
+				game.load();
+			}
+
+			public Object run() {
+				game.planetMap.getScanTiles(game.positions[i++ & (POSITIONS - 1)], EDGE, game.roverLocations, game.scienceLocations, VISIBLE_SCIENCE, tiles);
+				return tiles;
+			}
+		});
+		// what RoverSession.retriveScanMap does for a JSON SCAN reply, Gson set up included
+		benchmarks.add(new Benchmark("scan.json") {
+			int i = 0;
+			ScanMap[] scans;
+
+			public void setUp() throws Exception {
+				scans = game.scans(EDGE);
+			}
+
+			public Object run() {
+				Gson gson = new GsonBuilder()
+						.setPrettyPrinting()
+						.enableComplexMapKeySerialization()
+						.create();
+				return gson.toJson(scans[i++ & (POSITIONS - 1)]);
+			}
+		});
+		benchmarks.add(new Benchmark("scan.binary") {
+			int i = 0;
+			ScanMap[] scans;
+
+			public void setUp() throws Exception {
+				scans = game.scans(EDGE);
+			}
+
+			public Object run() {
+				return ScanMapCodec.encodeToString(scans[i++ & (POSITIONS - 1)]);
+			}
+		});
+		// a SCAN_DELTA after a one tile move
+		benchmarks.add(new Benchmark("scan.delta") {
+			int i = 0;
+			byte[][] windows;
+
+			public void setUp() throws Exception {
+				game.load();
+				windows = new byte[POSITIONS][EDGE * EDGE];
+				for (int n = 0; n < POSITIONS; n++) {
+					game.planetMap.getScanTiles(game.walk[n], EDGE, game.roverLocations, game.scienceLocations, VISIBLE_SCIENCE, windows[n]);
+				}
+			}
+
+			public Object run() {
+				int n = i++ & (POSITIONS - 1);
+				int previous = (n - 1) & (POSITIONS - 1);
+				return ScanDelta.encodeToString(game.walk[n], EDGE, windows[n], game.walk[previous], windows[previous]);
+			}
+		});
+
+		// *** MAP FILES ***
+		for (final String file : new String[] { "Map100x60_2016-04-30_1.txt", "Map100x60blank.txt" }) {
+			benchmarks.add(new Benchmark("map.parse." + file.substring(0, file.length() - 4)) {
+				public Object run() throws Exception {
+					SwarmMapInit mapInit = new SwarmMapInit();
+					mapInit.parseInputFromDisplayTextFile(file);
+					return mapInit.getPlanetMap();
+				}
+			});
+		}
+		// the same map converted to the binary format once, in setUp
+		benchmarks.add(new Benchmark("map.load.Map100x60_2016-04-30_1") {
+			File binary;
+
+			public void setUp() throws Exception {
+				SwarmMapInit mapInit = new SwarmMapInit();
+				mapInit.parseInputFromDisplayTextFile("Map100x60_2016-04-30_1.txt");
+				binary = File.createTempFile("benchmark", MapConverter.BINARY_EXTENSION);
+				binary.deleteOnExit();
+				mapInit.saveToBinaryFile(binary.getPath());
+			}
+
+			public Object run() throws Exception {
+				SwarmMapInit mapInit = new SwarmMapInit();
+				mapInit.loadFromBinaryFile(binary.getPath());
+				return mapInit.getPlanetMap();
+			}
+		});
+
+		// *** ROVER_07 ***
+		benchmarks.add(new Benchmark("worldMap.updateMap.scan") {
+			int i = 0;
+			ScanMap[] scans;
+			WorldMap worldMap;
+
+			public void setUp() throws Exception {
+				scans = game.scans(EDGE);
+				worldMap = new WorldMap(game.planetMap.getWidth(), game.planetMap.getHeight());
+			}
+
+			public Object run() {
+				ScanMap scan = scans[i++ & (POSITIONS - 1)];
+				return worldMap.updateMap(scan.getCenterPoint(), scan);
+			}
+		});
+		benchmarks.add(new Benchmark("worldMap.updateMap.delta") {
+			int i = 0;
+			ScanDelta[] deltas;
+			WorldMap worldMap;
+
+			public void setUp() throws Exception {
+				game.load();
+				deltas = new ScanDelta[POSITIONS];
+				byte[][] windows = new byte[POSITIONS][EDGE * EDGE];
+				for (int n = 0; n < POSITIONS; n++) {
+					game.planetMap.getScanTiles(game.walk[n], EDGE, game.roverLocations, game.scienceLocations, VISIBLE_SCIENCE, windows[n]);
+				}
+				for (int n = 0; n < POSITIONS; n++) {
+					int previous = (n - 1) & (POSITIONS - 1);
+					deltas[n] = ScanDelta.decode(ScanDelta.encode(game.walk[n], EDGE, windows[n], game.walk[previous], windows[previous]));
+				}
+				worldMap = new WorldMap(game.planetMap.getWidth(), game.planetMap.getHeight());
+			}
+
+			public Object run() {
+				return worldMap.updateMap(deltas[i++ & (POSITIONS - 1)]);
+			}
+		});
+		// plans from the start area to the target area of a fully explored map
+		benchmarks.add(new Benchmark("dstar.initial") {
+			WorldMap worldMap;
+
+			public void setUp() throws Exception {
+				worldMap = game.exploredWorldMap();
+			}
+
+			public Object run() {
+				DStarLite pf = new DStarLite(worldMap, worldMap.getCell(game.planetMap.getStartPosition()),
+						worldMap.getCell(game.planetMap.getTargetPosition()));
+				pf.solve();
+				return pf.getPath();
+			}
+		});
+		// a rover turns up on the planned path, then leaves again - one replan each
+		benchmarks.add(new Benchmark("dstar.replan") {
+			WorldMap worldMap;
+			DStarLite pf;
+			WorldMapCell onPath;
+
+			public void setUp() throws Exception {
+				worldMap = game.exploredWorldMap();
+				pf = new DStarLite(worldMap, worldMap.getCell(game.planetMap.getStartPosition()),
+						worldMap.getCell(game.planetMap.getTargetPosition()));
+				pf.solve();
+				List<MapCell> path = pf.getPath();
+				onPath = (WorldMapCell) path.get(Math.min(5, path.size() - 1));
+			}
+
+			public Object run() {
+				onPath.setBlocked(!onPath.isBlocked());
+				pf.markChangedCell(onPath);
+				pf.solve();
+				return pf.getPath();
+			}
+		});
+		benchmarks.add(new Benchmark("goalPicker.getClosestGoal") {
+			int i = 0;
+			GoalPicker goalPicker;
+			Coord[] from;
+
+			public void setUp() throws Exception {
+				WorldMap worldMap = game.exploredWorldMap();
+				goalPicker = new GoalPicker();
+				goalPicker.addDefault(worldMap.getCell(game.planetMap.getTargetPosition()));
+				List<Coord> clear = new ArrayList<Coord>();
+				for (int y = 0; y < worldMap.getHeight(); y++) {
+					for (int x = 0; x < worldMap.getWidth(); x++) {
+						if (worldMap.getCell(x, y).getTile().getScience() != Science.NONE) {
+							goalPicker.addCell(worldMap.getCell(x, y));
+						} else {
+							clear.add(new Coord(x, y));
+						}
+					}
+				}
+				// only from tiles that aren't goals themselves, as picking those changes the goals
+				clear.remove(game.planetMap.getTargetPosition());
+				Random random = new Random(3);
+				from = new Coord[POSITIONS];
+				for (int n = 0; n < POSITIONS; n++) {
+					from[n] = clear.get(random.nextInt(clear.size()));
+				}
+			}
+
+			public Object run() {
+				return goalPicker.getClosestGoal(from[i++ & (POSITIONS - 1)]);
+			}
+		});
+
+		// *** PROTOCOL ***
+		benchmarks.add(new Benchmark("protocol.stringify") {
+			ScienceInfo info = new ScienceInfo(Terrain.SOIL, Science.MINERAL, new Coord(42, 17));
+
+			public Object run() {
+				return Protocol.stringify(info);
+			}
+		});
+		benchmarks.add(new Benchmark("protocol.parse") {
+			public Object run() {
+				return Protocol.parse("SOIL MINERAL 42 17");
+			}
+		});
+
+		return benchmarks;
+	}
+
+	/**
+	 * The game state the benchmarks work on, loaded the first time one asks for it.
+	 */
+	static class Game {
+		private final String mapFile;
+		private boolean loaded = false;
+
+		PlanetMap planetMap;
+		RoverLocations roverLocations;
+		ScienceLocations scienceLocations;
+		// random rover positions
+		Coord[] positions;
+		// a random walk, one tile at a time, for deltas
+		Coord[] walk;
+
+		Game(String mapFile) {
+			this.mapFile = mapFile;
+		}
+
+		void load() throws Exception {
+			if (loaded) {
+				return;
+			}
+			SwarmMapInit mapInit = new SwarmMapInit();
+			if (ProceduralWorld.isWorldName(mapFile)) {
+				mapInit.loadProceduralWorld(mapFile, WORLD_MEMORY);
+			} else {
+				mapInit.parseInputFromDisplayTextFile(mapFile);
+			}
+			planetMap = mapInit.getPlanetMap();
+			roverLocations = mapInit.getRoverLocations();
+			scienceLocations = mapInit.getScienceLocations();
+
+			Random random = new Random(1);
+			int width = planetMap.getWidth();
+			int height = planetMap.getHeight();
+			positions = new Coord[POSITIONS];
+			for (int n = 0; n < POSITIONS; n++) {
+				positions[n] = new Coord(random.nextInt(width), random.nextInt(height));
+			}
+
+			// the last step comes back next to the first, so going round the walk is always one tile at a time
+			walk = new Coord[POSITIONS];
+			int x = width / 2;
+			int y = height / 2;
+			for (int n = 0; n < POSITIONS / 2; n++) {
+				int step = random.nextInt(2) * 2 - 1;
+				if (random.nextBoolean()) {
+					x = Math.max(0, Math.min(width - 1, x + step));
+				} else {
+					y = Math.max(0, Math.min(height - 1, y + step));
+				}
+				walk[n] = new Coord(x, y);
+			}
+			for (int n = POSITIONS / 2; n < POSITIONS; n++) {
+				walk[n] = walk[POSITIONS - 1 - n];
+			}
+			loaded = true;
+		}
+
+		ScanMap[] scans(int edge) throws Exception {
+			load();
+			ScanMap[] scans = new ScanMap[POSITIONS];
+			for (int n = 0; n < POSITIONS; n++) {
+				scans[n] = planetMap.getScanMap(positions[n], edge, roverLocations, scienceLocations, VISIBLE_SCIENCE);
+			}
+			return scans;
+		}
+
+		// the whole map as ROVER_07 would know it once it has been everywhere, with the cells it won't drive on blocked
+		WorldMap exploredWorldMap() throws Exception {
+			load();
+			WorldMap worldMap = new WorldMap(planetMap.getWidth(), planetMap.getHeight());
+			int edge = 2 * Math.max(planetMap.getWidth(), planetMap.getHeight()) + 1;
+			Coord corner = new Coord(0, 0);
+			worldMap.updateMap(corner, planetMap.getScanMap(corner, edge, roverLocations, scienceLocations));
+			for (int y = 0; y < worldMap.getHeight(); y++) {
+				for (int x = 0; x < worldMap.getWidth(); x++) {
+					MapTile tile = worldMap.getCell(x, y).getTile();
+					if (tile.getTerrain() == Terrain.NONE || tile.getTerrain() == Terrain.ROCK) {
+						worldMap.getCell(x, y).setBlocked(true);
+					}
+				}
+			}
+			return worldMap;
+		}
+	}
+}
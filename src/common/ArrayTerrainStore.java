@@ -0,0 +1,72 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import enums.Terrain;
+
+/**
+ * A TerrainStore holding every tile in a single buffer, row by row
+ * (y * width + x) so the tiles of a scan window row are next to each other
+ * in memory. Limited to maps of up to Integer.MAX_VALUE tiles.
+ *
+ * The bytes are usually on the heap, but can also be a memory mapped map file
+ * (see BinaryMapFile), in which case only the parts of the map that are used
+ * are ever read from disk, and set() throws a ReadOnlyBufferException.
+ */
+public class ArrayTerrainStore extends TerrainStore {
+	private final ByteBuffer tiles;
+
+	/**
+	 * @param fill the terrain every tile starts out as
+	 */
+	public ArrayTerrainStore(int width, int height, Terrain fill) {
+		super(width, height);
+		if ((long) width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("a " + width + " x " + height + " map is too big for one array - use a ChunkedTerrainStore");
+		}
+		this.tiles = ByteBuffer.allocate(width * height);
+		Arrays.fill(tiles.array(), pack(fill, 0));
+	}
+
+	/**
+	 * Uses the tiles in the buffer, already packed, without copying them.
+	 * @param tiles width * height bytes from its position on
+	 */
+	ArrayTerrainStore(int width, int height, ByteBuffer tiles) {
+		super(width, height);
+		if (tiles.remaining() != (long) width * height) {
+			throw new IllegalArgumentException("a " + width + " x " + height + " map needs " + (long) width * height
+					+ " bytes of terrain, not " + tiles.remaining());
+		}
+		this.tiles = tiles.slice();
+	}
+
+	/**
+	 * Copies the tiles onto the heap, even if this store is memory mapped.
+	 */
+	@Override
+	public TerrainStore copy() {
+		ByteBuffer copied = ByteBuffer.allocate(width * height);
+		copied.put(tiles.duplicate());
+		copied.clear();
+		return new ArrayTerrainStore(width, height, copied);
+	}
+
+	@Override
+	byte getPacked(int x, int y) {
+		return tiles.get(y * width + x);
+	}
+
+	@Override
+	void setPacked(int x, int y, byte packed) {
+		tiles.put(y * width + x, packed);
+	}
+
+	@Override
+	void getRow(int y, byte[] row) {
+		ByteBuffer from = tiles.duplicate();
+		from.position(y * width);
+		from.get(row, 0, width);
+	}
+}
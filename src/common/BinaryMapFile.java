@@ -0,0 +1,289 @@
+package common;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+import enums.RoverName;
+import enums.Science;
+
+/**
+ * A planet map in binary, made from a Map*.txt file by supportTools.MapConverter.
+ * The terrain is kept exactly as a TerrainStore holds it, so loading one just
+ * memory maps that part of the file and the server reads the tiles straight
+ * from it - the time to load doesn't grow with the size of the map, and parts
+ * of the map no rover goes near are never read from disk. The mapping is read
+ * only - a PlanetMap loaded this way has to be copied (new PlanetMap(planetMap))
+ * before its terrain can be changed.
+ *
+ * Given a memory budget the terrain is read into a ChunkedTerrainStore a chunk
+ * at a time as it is needed instead, for maps too big to map in one piece.
+ *
+ * Layout (big-endian):
+ *   int     MAGIC
+ *   short   format version
+ *   int     map width, int map height
+ *   int     start position x, int y (-1 if there isn't one)
+ *   int     target position x, int y (-1 if there isn't one)
+ *   int     number of science locations
+ *   int     number of rovers
+ *   short   length of the map name, then its UTF-8 bytes
+ *   then width * height bytes of terrain, row by row, packed as by TerrainStore
+ *   then SCIENCE_SIZE bytes for each science location:
+ *     int     x, int y
+ *     byte    Science ordinal
+ *   then ROVER_SIZE bytes for each rover:
+ *     byte    RoverName ordinal
+ *     int     x, int y
+ *
+ * Terrain, Science and RoverName are stored by ordinal, so VERSION has to
+ * change if any of those enums are reordered.
+ */
+public class BinaryMapFile {
+	public static final int MAGIC = 0x53574D31; // "SWM1"
+	public static final short VERSION = 1;
+	static final int SCIENCE_SIZE = 9;
+	static final int ROVER_SIZE = 9;
+
+	private static final Science[] SCIENCES = Science.values();
+	private static final RoverName[] ROVER_NAMES = RoverName.values();
+
+	private final String mapName;
+	private final PlanetMap planetMap;
+	private final RoverLocations roverLocations;
+	private final ScienceLocations scienceLocations;
+
+	/**
+	 * Loads a binary map file, mapping its terrain into memory.
+	 */
+	public BinaryMapFile(String fileName) throws IOException {
+		this(fileName, 0);
+	}
+
+	/**
+	 * Loads a binary map file.
+	 * @param memoryBudget 0 to map the terrain into memory, otherwise the bytes of
+	 *        terrain to hold at once, read from the file as needed - the file is then
+	 *        kept open for as long as the map is used
+	 */
+	public BinaryMapFile(String fileName, long memoryBudget) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		boolean keepOpen = false;
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate((int) Math.min(channel.size(), 4 + 2 + 8 * 4 + 2 + 0xFFFF));
+			readFully(channel, header, 0);
+			header.flip();
+			if (header.remaining() < 4 + 2 || header.getInt() != MAGIC) {
+				throw new IOException(fileName + " is not a binary map file");
+			}
+			short version = header.getShort();
+			if (version != VERSION) {
+				throw new IOException(fileName + " is binary map format version " + version + ", only version " + VERSION + " can be read");
+			}
+			if (header.remaining() < 8 * 4 + 2) {
+				throw new IOException(fileName + " is cut short");
+			}
+			int width = header.getInt();
+			int height = header.getInt();
+			Coord startPos = readCoord(header);
+			Coord targetPos = readCoord(header);
+			int scienceCount = header.getInt();
+			int roverCount = header.getInt();
+			byte[] name = new byte[header.getShort() & 0xFFFF];
+			if (header.remaining() < name.length) {
+				throw new IOException(fileName + " is cut short");
+			}
+			header.get(name);
+			this.mapName = new String(name, StandardCharsets.UTF_8);
+
+			long terrainStart = header.position();
+			long terrainSize = (long) width * height;
+			long tailSize = (long) scienceCount * SCIENCE_SIZE + (long) roverCount * ROVER_SIZE;
+			if (width < 0 || height < 0 || scienceCount < 0 || roverCount < 0
+					|| channel.size() != terrainStart + terrainSize + tailSize) {
+				throw new IOException(fileName + " is " + channel.size() + " bytes, not the size its header says");
+			}
+
+			TerrainStore terrain;
+			if (memoryBudget > 0) {
+				terrain = new ChunkedTerrainStore(width, height, new FileChunkSource(channel, terrainStart, width, height), memoryBudget);
+				keepOpen = true;
+			} else if (terrainSize > Integer.MAX_VALUE) {
+				throw new IOException(fileName + " is too big to map into memory in one piece - give a memory budget to load it in chunks");
+			} else {
+				// the mapping stays valid after the file is closed
+				terrain = new ArrayTerrainStore(width, height, channel.map(FileChannel.MapMode.READ_ONLY, terrainStart, terrainSize));
+			}
+			this.planetMap = new PlanetMap(terrain, startPos, targetPos);
+
+			ByteBuffer tail = ByteBuffer.allocate((int) tailSize);
+			readFully(channel, tail, terrainStart + terrainSize);
+			tail.flip();
+			this.scienceLocations = new ScienceLocations();
+			for (int i = 0; i < scienceCount; i++) {
+				Coord loc = new Coord(tail.getInt(), tail.getInt());
+				scienceLocations.putScience(loc, SCIENCES[ordinal(tail.get(), SCIENCES.length, fileName)]);
+			}
+			this.roverLocations = new RoverLocations(width, height);
+			for (int i = 0; i < roverCount; i++) {
+				RoverName rname = ROVER_NAMES[ordinal(tail.get(), ROVER_NAMES.length, fileName)];
+				roverLocations.putRover(rname, new Coord(tail.getInt(), tail.getInt()));
+			}
+		} finally {
+			if (!keepOpen) {
+				file.close();
+			}
+		}
+	}
+
+	/**
+	 * Tells a binary map file from a Map*.txt one by its first bytes.
+	 */
+	public static boolean isBinaryMap(String fileName) throws IOException {
+		File file = new File(fileName);
+		if (file.length() < 4) {
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return in.readInt() == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the map out in the binary format, replacing any file of the same name.
+	 */
+	public static void write(String fileName, String mapName, PlanetMap planetMap, RoverLocations roverLocations,
+			ScienceLocations scienceLocations) throws IOException {
+		byte[] name = mapName.getBytes(StandardCharsets.UTF_8);
+		if (name.length > 0xFFFF) {
+			throw new IOException("map name is too long for a binary map file");
+		}
+		HashMap<Coord, Science> science = scienceLocations.getHashMapClone();
+		HashMap<RoverName, Coord> rovers = roverLocations.getHashMapClone();
+
+		ByteBuffer header = ByteBuffer.allocate(4 + 2 + 8 * 4 + 2 + name.length);
+		header.putInt(MAGIC);
+		header.putShort(VERSION);
+		header.putInt(planetMap.getWidth());
+		header.putInt(planetMap.getHeight());
+		putCoord(header, planetMap.getStartPosition());
+		putCoord(header, planetMap.getTargetPosition());
+		header.putInt(science.size());
+		header.putInt(rovers.size());
+		header.putShort((short) name.length);
+		header.put(name);
+		header.flip();
+
+		ByteBuffer tail = ByteBuffer.allocate(science.size() * SCIENCE_SIZE + rovers.size() * ROVER_SIZE);
+		for (Entry<Coord, Science> entry : science.entrySet()) {
+			tail.putInt(entry.getKey().xpos);
+			tail.putInt(entry.getKey().ypos);
+			tail.put((byte) entry.getValue().ordinal());
+		}
+		for (Entry<RoverName, Coord> entry : rovers.entrySet()) {
+			tail.put((byte) entry.getKey().ordinal());
+			tail.putInt(entry.getValue().xpos);
+			tail.putInt(entry.getValue().ypos);
+		}
+		tail.flip();
+
+		new File(fileName).delete();
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			writeFully(channel, header);
+			TerrainStore terrain = planetMap.getTerrainStore();
+			byte[] row = new byte[terrain.getWidth()];
+			for (int y = 0; y < terrain.getHeight(); y++) {
+				terrain.getRow(y, row);
+				writeFully(channel, ByteBuffer.wrap(row));
+			}
+			writeFully(channel, tail);
+		} finally {
+			file.close();
+		}
+	}
+
+	public String getMapName() {
+		return mapName;
+	}
+
+	public PlanetMap getPlanetMap() {
+		return planetMap;
+	}
+
+	public RoverLocations getRoverLocations() {
+		return roverLocations;
+	}
+
+	public ScienceLocations getScienceLocations() {
+		return scienceLocations;
+	}
+
+	// reads a chunk a row at a time from the terrain in the file
+	private static final class FileChunkSource implements ChunkSource {
+		private final FileChannel channel;
+		private final long terrainStart;
+		private final int width;
+		private final int height;
+
+		FileChunkSource(FileChannel channel, long terrainStart, int width, int height) {
+			this.channel = channel;
+			this.terrainStart = terrainStart;
+			this.width = width;
+			this.height = height;
+		}
+
+		public void loadChunk(int x0, int y0, int size, byte[] tiles) throws IOException {
+			int rowLength = Math.min(size, width - x0);
+			for (int y = y0; y < Math.min(y0 + size, height); y++) {
+				readFully(channel, ByteBuffer.wrap(tiles, (y - y0) * size, rowLength), terrainStart + (long) y * width + x0);
+			}
+		}
+	}
+
+	private static Coord readCoord(ByteBuffer buffer) {
+		int xpos = buffer.getInt();
+		int ypos = buffer.getInt();
+		return (xpos < 0) ? null : new Coord(xpos, ypos);
+	}
+
+	private static void putCoord(ByteBuffer buffer, Coord coord) {
+		buffer.putInt(coord == null ? -1 : coord.xpos);
+		buffer.putInt(coord == null ? -1 : coord.ypos);
+	}
+
+	private static int ordinal(byte b, int count, String fileName) throws IOException {
+		if ((b & 0xFF) >= count) {
+			throw new IOException(fileName + " has an unknown science or rover " + (b & 0xFF));
+		}
+		return b & 0xFF;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0) {
+				return;
+			}
+			position += n;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package common;
+
+import java.io.IOException;
+
+/**
+ * Where a ChunkedTerrainStore gets the terrain of a chunk it doesn't have:
+ * read from a map file, or made up by a ProceduralWorld. A chunk that was
+ * let go and is loaded again has to come back the same.
+ */
+public interface ChunkSource {
+
+	/**
+	 * Fills in the packed terrain (see TerrainStore) of the size x size tiles
+	 * starting at (x0, y0), row by row: tiles[(y - y0) * size + (x - x0)].
+	 * Only the tiles that are on the map need filling in. May be called from
+	 * any thread, but only for one chunk at a time.
+	 */
+	void loadChunk(int x0, int y0, int size, byte[] tiles) throws IOException;
+}
@@ -0,0 +1,182 @@
+package common;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A TerrainStore for worlds too big to hold at once. The map is cut into
+ * CHUNK_SIZE x CHUNK_SIZE chunks that are only loaded from a ChunkSource
+ * the first time a tile in them is looked at, and let go again, least
+ * recently used first, when more than the memory budget would be held -
+ * so only the parts of the map the rovers are exploring take any memory.
+ *
+ * Reading a tile whose chunk is held only costs a look up in the chunk
+ * table, without any locking. Loading and letting go of chunks is done under
+ * a lock, which is fine as long as the budget holds the areas being explored.
+ *
+ * Chunks are let go in CLOCK order, which is close to least recently used
+ * but only needs a flag set when a chunk is read. A chunk that has been
+ * changed with set() is never let go, since its source would give back the
+ * old terrain - the store goes over its budget instead.
+ */
+public class ChunkedTerrainStore extends TerrainStore {
+	public static final int CHUNK_BITS = 6;
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	// the memory a held chunk takes, counting what the JVM adds to the array and the Chunk
+	static final int CHUNK_BYTES = CHUNK_SIZE * CHUNK_SIZE + 64;
+	// enough for every scan window that can be in use at once to be held
+	static final int MIN_HELD_CHUNKS = 64;
+
+	private static final class Chunk {
+		final int index;
+		final byte[] tiles = new byte[CHUNK_SIZE * CHUNK_SIZE];
+		// read since the clock hand last went past - set without the lock, so only ever written when it changes
+		volatile boolean used = true;
+		volatile boolean changed = false;
+
+		Chunk(int index) {
+			this.index = index;
+		}
+	}
+
+	private final ChunkSource source;
+	private final long memoryBudget;
+	private final int chunksWide;
+	private final int maxHeld;
+	private final AtomicReferenceArray<Chunk> chunks;
+
+	// the chunks being held, in no order, for the clock hand to go round - guarded by this
+	private Chunk[] held = new Chunk[MIN_HELD_CHUNKS];
+	private int heldCount = 0;
+	private int hand = 0;
+	private long loads = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param memoryBudget bytes the held chunks may take, at least enough for MIN_HELD_CHUNKS
+	 */
+	public ChunkedTerrainStore(int width, int height, ChunkSource source, long memoryBudget) {
+		super(width, height);
+		this.chunksWide = (width + CHUNK_MASK) >> CHUNK_BITS;
+		long chunkCount = (long) chunksWide * ((height + CHUNK_MASK) >> CHUNK_BITS);
+		if (chunkCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("can't store a " + width + " x " + height + " map");
+		}
+		this.source = source;
+		this.memoryBudget = memoryBudget;
+		this.maxHeld = (int) Math.max(MIN_HELD_CHUNKS, Math.min(memoryBudget / CHUNK_BYTES, chunkCount));
+		this.chunks = new AtomicReferenceArray<Chunk>((int) chunkCount);
+	}
+
+	/**
+	 * A store over the same source and with the same budget, holding copies
+	 * of the chunks that have been changed in this one.
+	 */
+	@Override
+	public synchronized TerrainStore copy() {
+		ChunkedTerrainStore copy = new ChunkedTerrainStore(width, height, source, memoryBudget);
+		for (int i = 0; i < heldCount; i++) {
+			if (held[i].changed) {
+				Chunk chunk = new Chunk(held[i].index);
+				System.arraycopy(held[i].tiles, 0, chunk.tiles, 0, chunk.tiles.length);
+				chunk.changed = true;
+				copy.hold(chunk);
+			}
+		}
+		return copy;
+	}
+
+	@Override
+	byte getPacked(int x, int y) {
+		return chunk(x, y).tiles[((y & CHUNK_MASK) << CHUNK_BITS) | (x & CHUNK_MASK)];
+	}
+
+	@Override
+	void setPacked(int x, int y, byte packed) {
+		Chunk chunk = chunk(x, y);
+		chunk.changed = true;
+		chunk.tiles[((y & CHUNK_MASK) << CHUNK_BITS) | (x & CHUNK_MASK)] = packed;
+	}
+
+	public synchronized int getHeldChunks() {
+		return heldCount;
+	}
+
+	public synchronized long getChunkLoads() {
+		return loads;
+	}
+
+	public synchronized long getChunkEvictions() {
+		return evictions;
+	}
+
+	private Chunk chunk(int x, int y) {
+		int index = (y >> CHUNK_BITS) * chunksWide + (x >> CHUNK_BITS);
+		Chunk chunk = chunks.get(index);
+		if (chunk == null) {
+			return load(index);
+		}
+		if (!chunk.used) {
+			chunk.used = true;
+		}
+		return chunk;
+	}
+
+	private synchronized Chunk load(int index) {
+		Chunk chunk = chunks.get(index);
+		if (chunk != null) {
+			// another thread loaded it first
+			return chunk;
+		}
+		if (heldCount >= maxHeld) {
+			evict();
+		}
+		chunk = new Chunk(index);
+		int x0 = (index % chunksWide) << CHUNK_BITS;
+		int y0 = (index / chunksWide) << CHUNK_BITS;
+		try {
+			source.loadChunk(x0, y0, CHUNK_SIZE, chunk.tiles);
+		} catch (IOException e) {
+			throw new UncheckedIOException("could not load the terrain at " + x0 + ", " + y0, e);
+		}
+		loads++;
+		hold(chunk);
+		return chunk;
+	}
+
+	// only called with the lock held
+	private void hold(Chunk chunk) {
+		if (heldCount == held.length) {
+			held = Arrays.copyOf(held, held.length * 2);
+		}
+		held[heldCount++] = chunk;
+		chunks.set(chunk.index, chunk);
+	}
+
+	// only called with the lock held - lets go of the first chunk the hand finds that
+	// hasn't been read since it last went past, clearing the used flags on the way
+	private void evict() {
+		for (int tries = 0; tries < 2 * heldCount; tries++) {
+			if (hand >= heldCount) {
+				hand = 0;
+			}
+			Chunk chunk = held[hand];
+			if (chunk.changed) {
+				hand++;
+			} else if (chunk.used) {
+				chunk.used = false;
+				hand++;
+			} else {
+				chunks.set(chunk.index, null);
+				held[hand] = held[--heldCount];
+				held[heldCount] = null;
+				evictions++;
+				return;
+			}
+		}
+		// every chunk held has been changed - go over the budget rather than lose the changes
+	}
+}
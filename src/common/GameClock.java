@@ -0,0 +1,88 @@
+package common;
+
+/**
+ * Source of time for everything in the game that runs on a timer - move and
+ * gather cooldowns, the requests per second limit and the length of a match.
+ *
+ * REAL is wall clock time and is what the server uses unless told otherwise.
+ * A scaled clock runs faster than real time so a whole match can be played in
+ * seconds, and a ManualClock only moves when it is advanced, for tests and
+ * simulations that need to control time exactly.
+ */
+public abstract class GameClock {
+
+	public static final GameClock REAL = new GameClock() {
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public void sleep(long millis) throws InterruptedException {
+			Thread.sleep(millis);
+		}
+
+		@Override
+		public String toString() {
+			return "real time";
+		}
+	};
+
+	/**
+	 * @return the current game time in milliseconds
+	 */
+	public abstract long currentTimeMillis();
+
+	/**
+	 * Blocks the calling thread until the given amount of game time has passed.
+	 */
+	public abstract void sleep(long millis) throws InterruptedException;
+
+	/**
+	 * How much wall clock time the given amount of game time takes, for
+	 * scheduling on executors that only know real time. Clocks that don't run
+	 * along with real time return the game time unchanged, so a timer must
+	 * still check the game clock when it fires.
+	 */
+	public long toRealMillis(long millis) {
+		return millis;
+	}
+
+	/**
+	 * Returns a clock that starts at the current wall clock time and then runs
+	 * timeScale times faster than it, e.g. 60 turns a 10 minute match into 10 seconds.
+	 */
+	public static GameClock scaled(final double timeScale) {
+		if (timeScale <= 0) {
+			throw new IllegalArgumentException("time scale must be positive: " + timeScale);
+		}
+		if (timeScale == 1.0) {
+			return REAL;
+		}
+		final long realStart = System.currentTimeMillis();
+		return new GameClock() {
+			@Override
+			public long currentTimeMillis() {
+				return realStart + (long) ((System.currentTimeMillis() - realStart) * timeScale);
+			}
+
+			@Override
+			public void sleep(long millis) throws InterruptedException {
+				long realMillis = toRealMillis(millis);
+				if (realMillis > 0) {
+					Thread.sleep(realMillis);
+				}
+			}
+
+			@Override
+			public long toRealMillis(long millis) {
+				return (long) Math.ceil(millis / timeScale);
+			}
+
+			@Override
+			public String toString() {
+				return timeScale + "x time";
+			}
+		};
+	}
+}
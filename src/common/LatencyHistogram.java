@@ -0,0 +1,121 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations in nanoseconds for reporting percentiles, in the style of
+ * HdrHistogram: every power of two range is split into 64 equal buckets, so a
+ * reported value is never more than about 1.5% above the real one, whatever
+ * its size.
+ *
+ * Recording is lock-free and allocation free so it can be done on every
+ * request from any number of threads. Reading while others are recording
+ * gives a slightly blurred, but never broken, picture.
+ */
+public class LatencyHistogram {
+	// values below 128 get a bucket each, above that 64 buckets per power of two
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKET_COUNT;
+	private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder totalCount = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucketIndex(nanos));
+		totalCount.increment();
+		totalNanos.add(nanos);
+
+		long max;
+		while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos));
+	}
+
+	/**
+	 * Adds everything recorded in other to this one, e.g. to sum up several runs.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			long count = other.counts.get(i);
+			if (count > 0) {
+				counts.addAndGet(i, count);
+			}
+		}
+		totalCount.add(other.getCount());
+		totalNanos.add(other.getTotalNanos());
+
+		long otherMax = other.getMaxNanos();
+		long max;
+		while (otherMax > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, otherMax));
+	}
+
+	public long getCount() {
+		return totalCount.sum();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public double getMeanNanos() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) getTotalNanos() / count;
+	}
+
+	/**
+	 * @param percentile 0 to 100
+	 * @return the value that percentile of the recorded values are at or below,
+	 *         rounded up to the end of its bucket; 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = 0;
+		long[] snapshot = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(bucketHighestValue(i), getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+
+	static int bucketIndex(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+		// keep the top SUB_BUCKET_BITS + 1 bits of the value
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+		return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	static long bucketHighestValue(int index) {
+		if (index < LINEAR_LIMIT) {
+			return index;
+		}
+		int shift = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+		long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
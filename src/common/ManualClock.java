@@ -0,0 +1,52 @@
+package common;
+
+/**
+ * A GameClock that only moves forward when advance() or setTime() is called.
+ * Threads sleeping on it wake up once the clock has been advanced past their
+ * wake up time, which makes runs repeatable no matter how fast the machine is.
+ */
+public class ManualClock extends GameClock {
+	private long now;
+
+	public ManualClock() {
+		this(0);
+	}
+
+	public ManualClock(long startTime) {
+		this.now = startTime;
+	}
+
+	@Override
+	public synchronized long currentTimeMillis() {
+		return now;
+	}
+
+	@Override
+	public synchronized void sleep(long millis) throws InterruptedException {
+		long wakeTime = now + millis;
+		while (now < wakeTime) {
+			wait();
+		}
+	}
+
+	public synchronized void advance(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("can't move the clock backwards: " + millis);
+		}
+		now += millis;
+		notifyAll();
+	}
+
+	public synchronized void setTime(long time) {
+		if (time < now) {
+			throw new IllegalArgumentException("can't move the clock backwards: " + time + " < " + now);
+		}
+		now = time;
+		notifyAll();
+	}
+
+	@Override
+	public String toString() {
+		return "manual time";
+	}
+}
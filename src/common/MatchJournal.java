@@ -0,0 +1,263 @@
+package common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Append-only record of every command the server ran during a match and what
+ * came of it, written through a memory mapped file so recording costs about
+ * as much as filling in a few bytes of memory. Read back with a
+ * {@link MatchJournal.Reader}, e.g. by controlServer.JournalReplay.
+ *
+ * Layout (big-endian):
+ *   int     MAGIC
+ *   short   format version
+ *   short   header size, records start here
+ *   long    game time the match started at
+ *   short   length of the map file name, then its UTF-8 bytes
+ *   then RECORD_SIZE bytes per command:
+ *     byte    Command ordinal + 1 (0 marks the unused end of the file)
+ *     byte    RoverName ordinal
+ *     byte    argument - MoveDirection ordinal for MOVE, scan format ordinal for SCAN and SCAN_FORMAT
+ *     byte    Science ordinal taken by a GATHER, NONE otherwise
+ *     int     game time of the command, in milliseconds since the start of the match
+ *     int     rover x position after the command
+ *     int     rover y position after the command
+ *
+ * Version 1 journals had short positions, in RECORD_SIZE_V1 byte records -
+ * too small for the larger procedural worlds. The Reader still reads them.
+ *
+ * The file is grown CHUNK_SIZE bytes at a time; close() cuts off what wasn't
+ * used, and a reader also stops at the first zero command byte, so a journal
+ * left behind by a server that was killed can still be read.
+ */
+public class MatchJournal implements Closeable {
+	public static final int MAGIC = 0x53574A31; // "SWJ1"
+	public static final short VERSION = 2;
+	public static final int RECORD_SIZE = 16;
+	static final int RECORD_SIZE_V1 = 12;
+	static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * What was journaled. CONNECT is written when a rover connects, the rest
+	 * for the server command of the same name; OTHER is anything unrecognised.
+	 */
+	public enum Command {
+		CONNECT, MOVE, LOC, START_LOC, TARGET_LOC, SCAN_FORMAT, SCAN, TIMER, GATHER, CARGO, EQUIPMENT,
+		SUBSCRIBE, UNSUBSCRIBE, STATS, OTHER;
+
+		private static final Command[] VALUES = values();
+
+		/**
+		 * @param input a command line sent by a rover; only the first word is looked at
+		 */
+		public static Command fromLine(String input) {
+			int end = input.indexOf(' ');
+			String word = (end < 0) ? input : input.substring(0, end);
+			for (int i = 1; i < VALUES.length - 1; i++) {
+				if (VALUES[i].name().equals(word)) {
+					return VALUES[i];
+				}
+			}
+			return OTHER;
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long startTime;
+	private MappedByteBuffer buffer;
+	private long bufferOffset; // file offset of the start of buffer
+	private boolean closed = false;
+
+	/**
+	 * Creates the journal file, replacing any file of the same name.
+	 * @param startTime game time the match started at; record times are relative to it
+	 */
+	public MatchJournal(String fileName, String mapFileName, long startTime) throws IOException {
+		new File(fileName).delete();
+		this.file = new RandomAccessFile(fileName, "rw");
+		this.channel = file.getChannel();
+		this.startTime = startTime;
+
+		byte[] mapName = mapFileName.getBytes(StandardCharsets.UTF_8);
+		int headerSize = 4 + 2 + 2 + 8 + 2 + mapName.length;
+		this.bufferOffset = 0;
+		this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putShort((short) headerSize);
+		buffer.putLong(startTime);
+		buffer.putShort((short) mapName.length);
+		buffer.put(mapName);
+	}
+
+	/**
+	 * Adds one record. Safe to call from any thread; does nothing once the
+	 * journal is closed.
+	 */
+	public synchronized void append(Command command, int rover, int arg, int science, long time, int xpos, int ypos) throws IOException {
+		if (closed) {
+			return;
+		}
+		if (buffer.remaining() < RECORD_SIZE) {
+			// map the next chunk from where this one is full up to
+			bufferOffset += buffer.position();
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, bufferOffset, CHUNK_SIZE);
+		}
+		buffer.put((byte) (command.ordinal() + 1));
+		buffer.put((byte) rover);
+		buffer.put((byte) arg);
+		buffer.put((byte) science);
+		buffer.putInt((int) (time - startTime));
+		buffer.putInt(xpos);
+		buffer.putInt(ypos);
+	}
+
+	/**
+	 * Writes out what has been recorded and trims the file to it.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		buffer.force();
+		try {
+			channel.truncate(bufferOffset + buffer.position());
+		} catch (IOException e) {
+			// some platforms won't shrink a file that is still mapped - the reader stops at the padding anyway
+		}
+		file.close();
+	}
+
+	/**
+	 * Reads a journal record by record. The same object is updated in place
+	 * for each record, so nothing is allocated while reading.
+	 */
+	public static class Reader implements Closeable {
+		private static final Command[] COMMANDS = Command.values();
+
+		private final RandomAccessFile file;
+		private final ByteBuffer buffer;
+		private final long startTime;
+		private final String mapFileName;
+		private final int recordSize;
+
+		private Command command;
+		private int rover;
+		private int arg;
+		private int science;
+		private long time;
+		private int xpos;
+		private int ypos;
+
+		public Reader(String fileName) throws IOException {
+			file = new RandomAccessFile(fileName, "r");
+			long length = file.length();
+			if (length > Integer.MAX_VALUE) {
+				file.close();
+				throw new IOException("journal is too big to map in one go: " + length + " bytes");
+			}
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+			if (buffer.getInt() != MAGIC) {
+				file.close();
+				throw new IOException(fileName + " is not a match journal");
+			}
+			short version = buffer.getShort();
+			if (version == VERSION) {
+				recordSize = RECORD_SIZE;
+			} else if (version == 1) {
+				recordSize = RECORD_SIZE_V1;
+			} else {
+				file.close();
+				throw new IOException("unknown journal version " + version);
+			}
+			int headerSize = buffer.getShort();
+			startTime = buffer.getLong();
+			byte[] mapName = new byte[buffer.getShort()];
+			buffer.get(mapName);
+			mapFileName = new String(mapName, StandardCharsets.UTF_8);
+			buffer.position(headerSize);
+		}
+
+		public long getStartTime() {
+			return startTime;
+		}
+
+		public String getMapFileName() {
+			return mapFileName;
+		}
+
+		/**
+		 * Moves on to the next record.
+		 * @return false at the end of the journal
+		 */
+		public boolean next() {
+			if (buffer.remaining() < recordSize) {
+				return false;
+			}
+			int code = buffer.get();
+			if (code <= 0 || code > COMMANDS.length) {
+				return false; // unused space at the end of a journal that wasn't closed
+			}
+			command = COMMANDS[code - 1];
+			rover = buffer.get();
+			arg = buffer.get();
+			science = buffer.get();
+			time = startTime + buffer.getInt();
+			if (recordSize == RECORD_SIZE) {
+				xpos = buffer.getInt();
+				ypos = buffer.getInt();
+			} else {
+				xpos = buffer.getShort();
+				ypos = buffer.getShort();
+			}
+			return true;
+		}
+
+		public Command getCommand() {
+			return command;
+		}
+
+		// RoverName ordinal
+		public int getRover() {
+			return rover;
+		}
+
+		public int getArg() {
+			return arg;
+		}
+
+		// Science ordinal
+		public int getScience() {
+			return science;
+		}
+
+		// game time of the command
+		public long getTime() {
+			return time;
+		}
+
+		public int getX() {
+			return xpos;
+		}
+
+		public int getY() {
+			return ypos;
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+}
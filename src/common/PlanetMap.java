@@ -1,7 +1,18 @@
 package common;
 
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.google.gson.annotations.JsonAdapter;
+
+import enums.Science;
+import enums.Terrain;
+
+// written to json tile by tile, as it was before the terrain was packed into a TerrainStore
+@JsonAdapter(PlanetMapTypeAdapter.class)
 public class PlanetMap {
-	private MapTile[][] planetMap;
+	// only the terrain and elevation of each tile - science is kept in ScienceLocations and rovers in RoverLocations
+	private transient TerrainStore terrain;
 	// width is number of columns is xloc, height is number of rows is yloc
 	private int mapWidth;
 	private int mapHeight;
@@ -13,7 +24,7 @@ public class PlanetMap {
 	public PlanetMap(){
 		this.mapHeight = 0;
 		this.mapWidth = 0;
-		this.planetMap = null;
+		this.terrain = new ArrayTerrainStore(0, 0, Terrain.SOIL);
 		this.startPosCoord = null;
 		this.targetPosCoord = null;
 	}
@@ -22,12 +33,7 @@ public class PlanetMap {
 	public PlanetMap(int width, int height){
 		this.mapHeight = height;
 		this.mapWidth = width;
-		this.planetMap = new MapTile[width][height];
-		for(int j=0;j<height;j++){
-			for(int i=0;i<width;i++){
-				this.planetMap[i][j] = new MapTile();
-			}
-		}
+		this.terrain = new ArrayTerrainStore(width, height, Terrain.SOIL);
 		this.startPosCoord = new Coord(0, 0);
 		this.targetPosCoord = new Coord(0, 0);
 	}
@@ -35,12 +41,7 @@ public class PlanetMap {
 	public PlanetMap(int width, int height, Coord startPos, Coord targetPos){
 		this.mapHeight = height;
 		this.mapWidth = width;
-		this.planetMap = new MapTile[width][height];
-		for(int j=0;j<height;j++){
-			for(int i=0;i<width;i++){
-				this.planetMap[i][j] = new MapTile();
-			}
-		}
+		this.terrain = new ArrayTerrainStore(width, height, Terrain.SOIL);
 		this.startPosCoord = startPos;
 		this.targetPosCoord = targetPos;
 	}
@@ -49,59 +50,104 @@ public class PlanetMap {
 		// TODO add ability to instantiate from JSON or binary file
 	}
 	
+	// a map whose terrain is already loaded, e.g. memory mapped by BinaryMapFile
+	PlanetMap(TerrainStore terrain, Coord startPos, Coord targetPos){
+		this.mapHeight = terrain.getHeight();
+		this.mapWidth = terrain.getWidth();
+		this.terrain = terrain;
+		this.startPosCoord = startPos;
+		this.targetPosCoord = targetPos;
+	}
+	
 	public PlanetMap(PlanetMap planetMapIn) {
-		this.planetMap = planetMapIn.planetMap.clone();
+		this.terrain = planetMapIn.terrain.copy();
 		this.mapWidth = planetMapIn.mapWidth;
 		this.mapHeight = planetMapIn.mapHeight;
 		this.startPosCoord = planetMapIn.startPosCoord;
 		this.targetPosCoord = planetMapIn.targetPosCoord;
 	}
 
+	// only the terrain and elevation of the tile are kept
 	public void setTile(MapTile tile, int xloc, int yloc){
-		this.planetMap[xloc][yloc] = tile;
+		this.terrain.set(xloc, yloc, tile.getTerrain(), tile.getElevation());
+	}
+	
+	public void setTerrain(Terrain ter, int xloc, int yloc){
+		this.terrain.set(xloc, yloc, ter, 0);
 	}
 	
+	// returns a new MapTile each time - changing it doesn't change the map, use setTile for that
 	public MapTile getTile(Coord coord){
-		return this.planetMap[coord.xpos][coord.ypos];
+		return getTile(coord.xpos, coord.ypos);
 	}
 	
 	public MapTile getTile(int xloc, int yloc){
-		return this.planetMap[xloc][yloc];
+		return new MapTile(terrain.getTerrain(xloc, yloc), terrain.getElevation(xloc, yloc));
+	}
+	
+	// same as getTile(...).getTerrain() without making a MapTile
+	public Terrain getTerrain(Coord coord){
+		return terrain.getTerrain(coord.xpos, coord.ypos);
+	}
+	
+	public Terrain getTerrain(int xloc, int yloc){
+		return terrain.getTerrain(xloc, yloc);
 	}
 	
 	// Generates and returns a local scanMap to the rover; assumes edge size is an odd number
 	public ScanMap getScanMap(Coord coord, int edgeSize, RoverLocations rloc, ScienceLocations sciloc){
+		return getScanMap(coord, edgeSize, rloc, sciloc, EnumSet.allOf(Science.class));
+	}
+	
+	// Same as above, but only reports the kinds of science in visibleScience (what the rover's sensors detect).
+	// Science is read straight from the ScienceLocations index, so nothing outside the window is looked at.
+	public ScanMap getScanMap(Coord coord, int edgeSize, RoverLocations rloc, ScienceLocations sciloc, Set<Science> visibleScience){
 		int startx = coord.xpos - (edgeSize -1)/2;
 		int starty = coord.ypos - (edgeSize -1)/2;
-		MapTile aTile;
 		MapTile[][] tMap = new MapTile[edgeSize][edgeSize];
 		
+		// row by row, to go along the terrain store
 		for(int j= 0; j< edgeSize; j++){
 			for(int i= 0; i< edgeSize; i++){
-				// Checks if location value is off the edge of the planetMap
-				if((i + startx) < 0 || (i + startx) >= mapWidth || (j + starty) < 0 || (j + starty) >= mapHeight){
-					aTile = new MapTile(0); // makes a MapTile with terrain = NONE
-				} else {					
-					// It is important to instantiate a new map tile to prevent
-					// passing the tile by reference and corrupting the original planetMap
-					aTile = planetMap[i + startx][j + starty].getCopyOfMapTile();
-				}
-				Coord tempCoord = new Coord(i + startx, j + starty);
-				
-				// check and add rover to tile
-				if(rloc.containsCoord(tempCoord)){
-					aTile.setHasRoverTrue();
+				int x = i + startx;
+				int y = j + starty;
+				// off the edge of the planetMap is terrain NONE
+				Terrain ter = Terrain.NONE;
+				int elevation = 0;
+				if(terrain.contains(x, y)){
+					byte packed = terrain.getPacked(x, y);
+					ter = TerrainStore.terrainOf(packed);
+					elevation = TerrainStore.elevationOf(packed);
 				}
-				
-				// check and add Science if on map
-				if(sciloc.checkLocation(tempCoord)){
-					aTile.setSciecne(sciloc.scanLocation(tempCoord));
-				}
-				tMap[i][j] = aTile;
+				// Science if on map and visible to the sensors, and any rover there
+				Science sci = sciloc.scanLocation(x, y, visibleScience);
+				tMap[i][j] = new MapTile(ter, sci, elevation, rloc.containsCoord(x, y));
 			}	
 		}
 		return new ScanMap(tMap, edgeSize, coord);
 	}
+
+	// Same window as getScanMap, but written straight into tiles as ScanMapCodec bytes (column by column)
+	// so no MapTiles are made. Used for SCAN_DELTA, which compares these bytes with the last scan sent.
+	public void getScanTiles(Coord coord, int edgeSize, RoverLocations rloc, ScienceLocations sciloc, Set<Science> visibleScience, byte[] tiles){
+		int startx = coord.xpos - (edgeSize -1)/2;
+		int starty = coord.ypos - (edgeSize -1)/2;
+
+		for(int i= 0; i< edgeSize; i++){
+			for(int j= 0; j< edgeSize; j++){
+				int x = i + startx;
+				int y = j + starty;
+				// off the edge of the planetMap is terrain NONE
+				Terrain ter = terrain.contains(x, y) ? terrain.getTerrain(x, y) : Terrain.NONE;
+				Science sci = sciloc.scanLocation(x, y, visibleScience);
+				tiles[i * edgeSize + j] = ScanMapCodec.encodeTile(ter, sci, rloc.containsCoord(x, y));
+			}
+		}
+	}
+	
+	public TerrainStore getTerrainStore(){
+		return terrain;
+	}
 	
 	public int getWidth(){
 		return this.mapWidth;
@@ -128,44 +174,39 @@ public class PlanetMap {
 		
 		this.mapHeight = 40;
 		this.mapWidth = 40;
-		this.planetMap = new MapTile[mapWidth][mapHeight];
-		for(int j=0;j<mapHeight;j++){
-			for(int i=0;i<mapWidth;i++){
-				this.planetMap[i][j] = new MapTile();
-			}
-		}
+		this.terrain = new ArrayTerrainStore(mapWidth, mapHeight, Terrain.SOIL);
 		
-		this.planetMap[7][7] = new MapTile("R"); 
-		this.planetMap[7][8] = new MapTile("R"); 
-		this.planetMap[8][7] = new MapTile("R"); 
-		this.planetMap[8][8] = new MapTile("R");
+		setTerrain(Terrain.getEnum("R"), 7, 7); 
+		setTerrain(Terrain.getEnum("R"), 7, 8); 
+		setTerrain(Terrain.getEnum("R"), 8, 7); 
+		setTerrain(Terrain.getEnum("R"), 8, 8);
 		
-		this.planetMap[15][16] = new MapTile("R"); 
-		this.planetMap[15][17] = new MapTile("R"); 
-		this.planetMap[15][18] = new MapTile("R"); 
-		this.planetMap[15][19] = new MapTile("R"); 
-		this.planetMap[14][18] = new MapTile("R"); 
-		this.planetMap[14][19] = new MapTile("R"); 
-		this.planetMap[14][20] = new MapTile("R"); 
-		this.planetMap[14][21] = new MapTile("R"); 
+		setTerrain(Terrain.getEnum("R"), 15, 16); 
+		setTerrain(Terrain.getEnum("R"), 15, 17); 
+		setTerrain(Terrain.getEnum("R"), 15, 18); 
+		setTerrain(Terrain.getEnum("R"), 15, 19); 
+		setTerrain(Terrain.getEnum("R"), 14, 18); 
+		setTerrain(Terrain.getEnum("R"), 14, 19); 
+		setTerrain(Terrain.getEnum("R"), 14, 20); 
+		setTerrain(Terrain.getEnum("R"), 14, 21); 
 		
-		this.planetMap[6][23] = new MapTile("R");
-		this.planetMap[7][23] = new MapTile("R");
-		this.planetMap[7][23] = new MapTile("R");
-		this.planetMap[8][24] = new MapTile("R");
-		this.planetMap[8][25] = new MapTile("R");
+		setTerrain(Terrain.getEnum("R"), 6, 23);
+		setTerrain(Terrain.getEnum("R"), 7, 23);
+		setTerrain(Terrain.getEnum("R"), 7, 23);
+		setTerrain(Terrain.getEnum("R"), 8, 24);
+		setTerrain(Terrain.getEnum("R"), 8, 25);
 		
-		this.planetMap[24][10] = new MapTile("S");
-		this.planetMap[24][11] = new MapTile("S");
-		this.planetMap[24][12] = new MapTile("S");
-		this.planetMap[25][10] = new MapTile("S");
-		this.planetMap[25][11] = new MapTile("S");
-		this.planetMap[25][12] = new MapTile("S");
-		this.planetMap[25][13] = new MapTile("S");
-		this.planetMap[26][10] = new MapTile("S");
-		this.planetMap[26][11] = new MapTile("S");
-		this.planetMap[26][12] = new MapTile("S");
-		this.planetMap[26][13] = new MapTile("S");
+		setTerrain(Terrain.getEnum("S"), 24, 10);
+		setTerrain(Terrain.getEnum("S"), 24, 11);
+		setTerrain(Terrain.getEnum("S"), 24, 12);
+		setTerrain(Terrain.getEnum("S"), 25, 10);
+		setTerrain(Terrain.getEnum("S"), 25, 11);
+		setTerrain(Terrain.getEnum("S"), 25, 12);
+		setTerrain(Terrain.getEnum("S"), 25, 13);
+		setTerrain(Terrain.getEnum("S"), 26, 10);
+		setTerrain(Terrain.getEnum("S"), 26, 11);
+		setTerrain(Terrain.getEnum("S"), 26, 12);
+		setTerrain(Terrain.getEnum("S"), 26, 13);
 	}
 	
 	public void loadSmallExampleTestPlanetMapTerrain(){
@@ -173,17 +214,12 @@ public class PlanetMap {
 		
 		this.mapHeight = 5;
 		this.mapWidth = 5;
-		this.planetMap = new MapTile[mapWidth][mapHeight];
-		for(int j=0;j<mapHeight;j++){
-			for(int i=0;i<mapWidth;i++){
-				this.planetMap[i][j] = new MapTile();
-			}
-		}
+		this.terrain = new ArrayTerrainStore(mapWidth, mapHeight, Terrain.SOIL);
 		
-		this.planetMap[2][2] = new MapTile("R"); 
-		this.planetMap[3][2] = new MapTile("R"); 
-		this.planetMap[1][4] = new MapTile("R"); 
+		setTerrain(Terrain.getEnum("R"), 2, 2); 
+		setTerrain(Terrain.getEnum("R"), 3, 2); 
+		setTerrain(Terrain.getEnum("R"), 1, 4); 
 	
-		this.planetMap[3][3] = new MapTile("S");
+		setTerrain(Terrain.getEnum("S"), 3, 3);
 	}
 }
@@ -0,0 +1,122 @@
+package common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import enums.Terrain;
+
+/**
+ * Writes a PlanetMap to json the way it was written when every tile was a
+ * MapTile - a "planetMap" array of columns of tiles, then the size and the
+ * start and target locations - and reads it back into a TerrainStore. So map
+ * files saved by SwarmMapInit.saveToJson before and after the terrain was
+ * packed into a TerrainStore can be loaded either way.
+ *
+ * Used for every PlanetMap through its @JsonAdapter annotation, so a Gson
+ * doesn't need this registering with it.
+ */
+public class PlanetMapTypeAdapter extends TypeAdapter<PlanetMap> {
+	private static final Gson GSON = new Gson();
+	private final TypeAdapter<MapTile> tileAdapter = GSON.getAdapter(MapTile.class);
+	private final TypeAdapter<Coord> coordAdapter = GSON.getAdapter(Coord.class);
+
+	@Override
+	public void write(JsonWriter out, PlanetMap map) throws IOException {
+		if (map == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("planetMap");
+		out.beginArray();
+		for (int x = 0; x < map.getWidth(); x++) {
+			out.beginArray();
+			for (int y = 0; y < map.getHeight(); y++) {
+				tileAdapter.write(out, map.getTile(x, y));
+			}
+			out.endArray();
+		}
+		out.endArray();
+		out.name("mapWidth").value(map.getWidth());
+		out.name("mapHeight").value(map.getHeight());
+		if (map.getStartPosition() != null) {
+			out.name("startPosCoord");
+			coordAdapter.write(out, map.getStartPosition());
+		}
+		if (map.getTargetPosition() != null) {
+			out.name("targetPosCoord");
+			coordAdapter.write(out, map.getTargetPosition());
+		}
+		out.endObject();
+	}
+
+	@Override
+	public PlanetMap read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		List<List<MapTile>> columns = new ArrayList<List<MapTile>>();
+		int width = -1;
+		int height = -1;
+		Coord startPos = null;
+		Coord targetPos = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+			} else if (name.equals("planetMap")) {
+				in.beginArray();
+				while (in.hasNext()) {
+					List<MapTile> column = new ArrayList<MapTile>();
+					in.beginArray();
+					while (in.hasNext()) {
+						column.add(tileAdapter.read(in));
+					}
+					in.endArray();
+					columns.add(column);
+				}
+				in.endArray();
+			} else if (name.equals("mapWidth")) {
+				width = in.nextInt();
+			} else if (name.equals("mapHeight")) {
+				height = in.nextInt();
+			} else if (name.equals("startPosCoord")) {
+				startPos = coordAdapter.read(in);
+			} else if (name.equals("targetPosCoord")) {
+				targetPos = coordAdapter.read(in);
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+
+		// the size is taken from the tiles if it wasn't written
+		if (width < 0) {
+			width = columns.size();
+		}
+		if (height < 0) {
+			height = columns.isEmpty() ? 0 : columns.get(0).size();
+		}
+		TerrainStore terrain = new ArrayTerrainStore(width, height, Terrain.SOIL);
+		for (int x = 0; x < width && x < columns.size(); x++) {
+			List<MapTile> column = columns.get(x);
+			for (int y = 0; y < height && y < column.size(); y++) {
+				MapTile tile = column.get(y);
+				if (tile != null && tile.getTerrain() != null) {
+					terrain.set(x, y, tile.getTerrain(), tile.getElevation());
+				}
+			}
+		}
+		return new PlanetMap(terrain, startPos, targetPos);
+	}
+}
@@ -0,0 +1,200 @@
+package common;
+
+import java.util.BitSet;
+
+import enums.RoverName;
+import enums.Science;
+import enums.Terrain;
+
+/**
+ * A planet made up from a seed rather than read from a map file, of any size
+ * up to 100,000 x 100,000 and beyond. Its terrain is a ChunkedTerrainStore
+ * that this makes each chunk for as it is first needed, so only the parts
+ * of the world the rovers explore ever take up memory. The same seed always
+ * gives the same world, so a chunk that was let go comes back the same.
+ *
+ * Science is placed a chunk at a time too, the first time the chunk's
+ * terrain is made, and stays in the ScienceLocations from then on so what
+ * has been gathered isn't put back.
+ *
+ * The rovers start together in a clear area of soil in the middle of the
+ * world. Named on the server command line as world:WIDTHxHEIGHT or
+ * world:WIDTHxHEIGHT:SEED, e.g. world:100000x100000:7.
+ */
+public class ProceduralWorld implements ChunkSource {
+	public static final String PREFIX = "world:";
+	// one tile in this many has science on it
+	static final int SCIENCE_RARITY = 150;
+	// soil all round the start position, so the rovers can get going
+	static final int CLEAR_RADIUS = 12;
+	static final int MIN_SIZE = 2 * CLEAR_RADIUS + 8;
+
+	private static final long TERRAIN_SALT = 0x5DEECE66DL;
+	private static final long SCIENCE_SALT = 0x9E3779B97F4A7C15L;
+
+	private final String name;
+	private final int width;
+	private final int height;
+	private final long seed;
+	private final Coord startPos;
+	private final PlanetMap planetMap;
+	private final RoverLocations roverLocations;
+	private final ScienceLocations scienceLocations = new ScienceLocations();
+	// chunks whose science has been placed - only used from loadChunk, one chunk at a time
+	private final BitSet sciencePlaced = new BitSet();
+	private final int chunksWide;
+
+	/**
+	 * @param memoryBudget bytes of terrain to hold at once, see ChunkedTerrainStore
+	 */
+	public ProceduralWorld(int width, int height, long seed, long memoryBudget) {
+		if (width < MIN_SIZE || height < MIN_SIZE) {
+			throw new IllegalArgumentException("a world has to be at least " + MIN_SIZE + " x " + MIN_SIZE);
+		}
+		this.name = PREFIX + width + "x" + height + ":" + seed;
+		this.width = width;
+		this.height = height;
+		this.seed = seed;
+		this.chunksWide = (width + ChunkedTerrainStore.CHUNK_MASK) >> ChunkedTerrainStore.CHUNK_BITS;
+		this.startPos = new Coord(width / 2, height / 2);
+		int targetOffset = Math.min(width, height) / 4;
+		Coord targetPos = new Coord(startPos.xpos + targetOffset, startPos.ypos + targetOffset);
+		this.planetMap = new PlanetMap(new ChunkedTerrainStore(width, height, this, memoryBudget), startPos, targetPos);
+
+		// every rover in rows across the clear area
+		this.roverLocations = new RoverLocations(width, height);
+		RoverName[] names = RoverName.values();
+		for (int i = 1; i < names.length; i++) {
+			int n = i - 1;
+			roverLocations.putRover(names[i], new Coord(startPos.xpos - 6 + 2 * (n % 7), startPos.ypos - 6 + 2 * (n / 7)));
+		}
+	}
+
+	public static boolean isWorldName(String mapName) {
+		return mapName.startsWith(PREFIX);
+	}
+
+	/**
+	 * @param worldName world:WIDTHxHEIGHT or world:WIDTHxHEIGHT:SEED (seed 1 if not given)
+	 */
+	public static ProceduralWorld fromName(String worldName, long memoryBudget) {
+		String[] parts = isWorldName(worldName) ? worldName.substring(PREFIX.length()).split(":") : new String[0];
+		int by = (parts.length > 0) ? parts[0].indexOf('x') : -1;
+		if (parts.length > 2 || by < 0) {
+			throw new IllegalArgumentException("a world is named " + PREFIX + "WIDTHxHEIGHT[:SEED], not " + worldName);
+		}
+		try {
+			int width = Integer.parseInt(parts[0].substring(0, by));
+			int height = Integer.parseInt(parts[0].substring(by + 1));
+			long seed = (parts.length > 1) ? Long.parseLong(parts[1]) : 1;
+			return new ProceduralWorld(width, height, seed, memoryBudget);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("a world is named " + PREFIX + "WIDTHxHEIGHT[:SEED], not " + worldName);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public PlanetMap getPlanetMap() {
+		return planetMap;
+	}
+
+	public RoverLocations getRoverLocations() {
+		return roverLocations;
+	}
+
+	public ScienceLocations getScienceLocations() {
+		return scienceLocations;
+	}
+
+	@Override
+	public void loadChunk(int x0, int y0, int size, byte[] tiles) {
+		int chunk = (y0 >> ChunkedTerrainStore.CHUNK_BITS) * chunksWide + (x0 >> ChunkedTerrainStore.CHUNK_BITS);
+		boolean placeScience = !sciencePlaced.get(chunk);
+		sciencePlaced.set(chunk);
+
+		for (int y = y0; y < Math.min(y0 + size, height); y++) {
+			for (int x = x0; x < Math.min(x0 + size, width); x++) {
+				double h = height(x, y);
+				Terrain ter = terrainAt(x, y, h);
+				tiles[(y - y0) * size + (x - x0)] = TerrainStore.pack(ter, (int) (h * TerrainStore.MAX_ELEVATION));
+				if (placeScience) {
+					Science sci = scienceAt(x, y, ter);
+					if (sci != Science.NONE) {
+						scienceLocations.putScience(new Coord(x, y), sci);
+					}
+				}
+			}
+		}
+	}
+
+	// 0 to 1, smooth over tens of tiles with some finer roughness on top
+	private double height(int x, int y) {
+		return 0.6 * noise(x, y, 32) + 0.3 * noise(x, y, 8) + 0.1 * noise(x, y, 2);
+	}
+
+	private Terrain terrainAt(int x, int y, double h) {
+		int dx = x - startPos.xpos;
+		int dy = y - startPos.ypos;
+		if (dx * dx + dy * dy <= CLEAR_RADIUS * CLEAR_RADIUS) {
+			return Terrain.SOIL;
+		}
+		if (h < 0.2) {
+			return Terrain.NONE;
+		} else if (h < 0.32) {
+			return Terrain.SAND;
+		} else if (h < 0.62) {
+			return Terrain.SOIL;
+		} else if (h < 0.75) {
+			return Terrain.GRAVEL;
+		}
+		return Terrain.ROCK;
+	}
+
+	// drilled science on rock and gravel, dug science on soil and sand
+	private Science scienceAt(int x, int y, Terrain ter) {
+		long r = hash(seed ^ SCIENCE_SALT, x, y);
+		if (ter == Terrain.NONE || Long.remainderUnsigned(r, SCIENCE_RARITY) != 0) {
+			return Science.NONE;
+		}
+		boolean second = (r >>> 63) != 0;
+		if (ter == Terrain.ROCK || ter == Terrain.GRAVEL) {
+			return second ? Science.RADIOACTIVE : Science.MINERAL;
+		}
+		return second ? Science.CRYSTAL : Science.ORGANIC;
+	}
+
+	// value noise - random values on a grid scale tiles apart, smoothly blended in between
+	private double noise(int x, int y, int scale) {
+		int gx = Math.floorDiv(x, scale);
+		int gy = Math.floorDiv(y, scale);
+		double fx = smooth((x - gx * scale) / (double) scale);
+		double fy = smooth((y - gy * scale) / (double) scale);
+		long s = seed ^ TERRAIN_SALT ^ scale;
+		double top = lerp(unit(hash(s, gx, gy)), unit(hash(s, gx + 1, gy)), fx);
+		double bottom = lerp(unit(hash(s, gx, gy + 1)), unit(hash(s, gx + 1, gy + 1)), fx);
+		return lerp(top, bottom, fy);
+	}
+
+	private static double smooth(double t) {
+		return t * t * (3 - 2 * t);
+	}
+
+	private static double lerp(double a, double b, double t) {
+		return a + (b - a) * t;
+	}
+
+	private static double unit(long hash) {
+		return (hash >>> 11) * 0x1.0p-53;
+	}
+
+	// SplitMix64's finalizer over the seed and the position
+	private static long hash(long seed, int x, int y) {
+		long z = seed + ((long) x << 32 | (y & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -1,6 +1,7 @@
 package common;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 import enums.RoverDriveType;
 import enums.RoverName;
@@ -10,19 +11,35 @@ import enums.Science;
 public class Rover {
 	private RoverDriveType driveType;
 	private RoverName roverName;
+	// where this rover is kept in RoverLocations - see RoverLocations.idOf and syntheticId
+	private final int id;
 	private RoverToolType tool_1;
 	private RoverToolType tool_2;
-	private long lastMoveTime;
+	// read by the server's scheduler thread for READY events
+	private volatile long lastMoveTime;
 	private long lastGatherTime;
-	private long lastRequestTime;
-	private int requestCount;
+	// all the rover timers run on this clock
+	private final GameClock clock;
+	// the kinds of science this rover's sensors can see on a SCAN
+	private EnumSet<Science> visibleScience;
 	
 	// public for the arrayList just because it is easier to deal with than getters/setters
     public ArrayList<Science> scienceCargo;
 	
 	
 	public Rover(RoverName rname){
+		this(rname, GameClock.REAL);
+	}
+	
+	public Rover(RoverName rname, GameClock clock){
+		this(rname, RoverLocations.idOf(rname), clock);
+	}
+	
+	// a synthetic rover has its own id but takes its equipment from rname
+	public Rover(RoverName rname, int id, GameClock clock){
 		this.roverName = rname;
+		this.id = id;
+		this.clock = clock;
 		System.out.println("ROVER: building a rover " + rname);
 		// Rover type equipment is stored in the RoverName enum
 		
@@ -49,17 +66,27 @@ public class Rover {
 		this.tool_2 = ttype2;
 		System.out.println("ROVER: this.tool_2 " + ttype2);
 		
-		requestCount = 0;
+		// work out once which science the sensors detect, rather than on every SCAN
+		visibleScience = EnumSet.noneOf(Science.class);
+		addSensedScience(tool_1);
+		addSensedScience(tool_2);
 		
 		//stores the current timestamp
-		this.lastMoveTime = System.currentTimeMillis();
-		this.lastRequestTime = System.currentTimeMillis();
+		this.lastMoveTime = clock.currentTimeMillis();
 	}
 	
 	public RoverName getRoverName(){
 		return this.roverName;
 	}
 	
+	public int getId(){
+		return this.id;
+	}
+	
+	public boolean isSynthetic(){
+		return RoverLocations.isSynthetic(id);
+	}
+	
 	public RoverDriveType getRoverDrive(){
 		return this.driveType;
 	}
@@ -72,28 +99,48 @@ public class Rover {
 		return this.tool_2;		
 	}
 	
+	public EnumSet<Science> getVisibleScience(){
+		return this.visibleScience;
+	}
+	
+	// Sensors: RADIATION_SENSOR->Radioactive science; CHEMICAL_SENSOR->Organic Science;
+	//	SPECTRAL_SENSOR->Crystal Science; RADAR_SENSOR  ->mineral Science
+	private void addSensedScience(RoverToolType tool){
+		switch(tool){
+		case RADIATION_SENSOR:
+			visibleScience.add(Science.RADIOACTIVE);
+			break;
+		case CHEMICAL_SENSOR:
+			visibleScience.add(Science.ORGANIC);
+			break;
+		case SPECTRAL_SENSOR:
+			visibleScience.add(Science.CRYSTAL);
+			break;
+		case RADAR_SENSOR:
+			visibleScience.add(Science.MINERAL);
+			break;
+		default:
+			break;
+		}
+	}
+	
 	public long getRoverLastGatherTime(){
 		return this.lastGatherTime;
 	}
 	public void updateGatherTime(){
-		this.lastGatherTime = System.currentTimeMillis();
+		this.lastGatherTime = clock.currentTimeMillis();
 	}
 	
 	public long getRoverLastMoveTime(){
 		return this.lastMoveTime;
 	}
 	public void updateMoveTime(){
-		this.lastMoveTime = System.currentTimeMillis();
+		this.lastMoveTime = clock.currentTimeMillis();
 	}
-	
-	public long getRoverRequestCount(){
-		if((System.currentTimeMillis() - lastRequestTime) < 1000){
-			++requestCount;
-		} else {
-			lastRequestTime = System.currentTimeMillis();
-			requestCount = 0;
-		}	
-		return this.requestCount;
+	// for when the move was made at a known game time, e.g. when a journal is replayed
+	public void updateMoveTime(long time){
+		this.lastMoveTime = time;
 	}
+	
 
 }
@@ -2,47 +2,257 @@ package common;
 
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import enums.RoverName;
 import enums.Science;
 
 public class RoverLocations {
 	
-	private HashMap<RoverName, Coord> roverHash;
+	private ConcurrentHashMap<RoverName, Coord> roverHash;
+	
+	// Synthetic rovers, used to put load on the server, have no RoverName - they are kept
+	// here by id instead, starting from SYNTHETIC_ID_BASE so they never clash with a named rover
+	private final ConcurrentHashMap<Integer, Coord> syntheticHash = new ConcurrentHashMap<Integer, Coord>();
+	
+	// Occupancy grid kept alongside roverHash - holds the id (see idOf) of the
+	// rover on each location, 0 if empty. A move claims the destination cell with a
+	// compare-and-set from 0 and then releases the source cell, so two rovers can never end
+	// up on the same location and moves in different parts of the map don't wait on each
+	// other. Transient, rebuilt from roverHash on first use.
+	private static final RoverName[] ROVER_NAMES = RoverName.values();
+	public static final int SYNTHETIC_ID_BASE = ROVER_NAMES.length + 1;
+	private transient volatile OccupancyGrid occupancy;
+
+	// The grid is made of BLOCK_SIZE x BLOCK_SIZE blocks of cells, each only allocated when a
+	// rover first goes into it, so a huge map costs next to nothing until rovers explore it.
+	// A grid that doesn't cover the map (it wasn't given the map size) is replaced by a bigger one
+	// when a rover moves off it. The bigger grid shares the blocks of the old one, and blocks are
+	// only added under the lock, to the newest grid (see block), so a claim made through either
+	// grid is seen through both.
+	private static final class OccupancyGrid {
+		static final int BLOCK_BITS = 6;
+		static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+		static final int BLOCK_MASK = BLOCK_SIZE - 1;
+		
+		final AtomicReferenceArray<AtomicIntegerArray> blocks;
+		final int blocksWide;
+		final int width;
+		final int height;
+
+		OccupancyGrid(int width, int height){
+			this.blocksWide = (width + BLOCK_MASK) >> BLOCK_BITS;
+			this.blocks = new AtomicReferenceArray<AtomicIntegerArray>(blocksWide * ((height + BLOCK_MASK) >> BLOCK_BITS));
+			this.width = width;
+			this.height = height;
+		}
+
+		boolean contains(int xloc, int yloc){
+			return xloc >= 0 && yloc >= 0 && xloc < width && yloc < height;
+		}
+		
+		int get(int xloc, int yloc){
+			AtomicIntegerArray block = existingBlock(xloc, yloc);
+			return (block == null) ? 0 : block.get(cellIndex(xloc, yloc));
+		}
+		
+		// the block holding the location, or null if it is off this grid or no rover has been in it yet
+		AtomicIntegerArray existingBlock(int xloc, int yloc){
+			return contains(xloc, yloc) ? blocks.get(blockIndex(xloc, yloc)) : null;
+		}
+		
+		// this grid, or a bigger one sharing its blocks if the location is off it - by whole blocks,
+		// so a rover exploring past the edge doesn't grow it on every move
+		OccupancyGrid covering(int xloc, int yloc){
+			if(contains(xloc, yloc)){
+				return this;
+			}
+			return grow(Math.max(width, (xloc | BLOCK_MASK) + 1), Math.max(height, (yloc | BLOCK_MASK) + 1));
+		}
+		
+		// the block holding a location on this grid, added if no rover has been in it yet
+		// - only called with the RoverLocations lock held, on a grid nothing newer has replaced
+		AtomicIntegerArray addBlock(int xloc, int yloc){
+			int index = blockIndex(xloc, yloc);
+			AtomicIntegerArray block = blocks.get(index);
+			if(block == null){
+				block = new AtomicIntegerArray(BLOCK_SIZE * BLOCK_SIZE);
+				blocks.set(index, block);
+			}
+			return block;
+		}
+		
+		// a grid covering width x height, sharing this one's blocks
+		OccupancyGrid grow(int width, int height){
+			OccupancyGrid grown = new OccupancyGrid(width, height);
+			int blocksHigh = (this.height + BLOCK_MASK) >> BLOCK_BITS;
+			for(int row = 0; row < blocksHigh; row++){
+				for(int col = 0; col < blocksWide; col++){
+					grown.blocks.set(row * grown.blocksWide + col, blocks.get(row * blocksWide + col));
+				}
+			}
+			return grown;
+		}
+		
+		int blockIndex(int xloc, int yloc){
+			return (yloc >> BLOCK_BITS) * blocksWide + (xloc >> BLOCK_BITS);
+		}
+		
+		static int cellIndex(int xloc, int yloc){
+			return ((yloc & BLOCK_MASK) << BLOCK_BITS) | (xloc & BLOCK_MASK);
+		}
+	}
 
 	public RoverLocations(){
-		roverHash = new HashMap<RoverName, Coord>();
+		roverHash = new ConcurrentHashMap<RoverName, Coord>();
 	}
 	
 	public RoverLocations(HashMap<RoverName, Coord> rovHash){
-		roverHash = (HashMap<RoverName, Coord>) rovHash.clone();
+		roverHash = new ConcurrentHashMap<RoverName, Coord>(rovHash);
+	}
+	
+	/**
+	 * Sizes the occupancy grid to the map up front, so every location on the map can take
+	 * part in lock-free moves. Without it the grid only covers the area the rovers were
+	 * placed in by putRover.
+	 */
+	public RoverLocations(int mapWidth, int mapHeight){
+		this();
+		occupancy = new OccupancyGrid(mapWidth, mapHeight);
 	}
 	
 
 	
-	public synchronized boolean moveRover(RoverName rname, Coord loc){
-		if(roverHash.containsValue(loc)){
+	// the id a named rover has in the occupancy grid
+	public static int idOf(RoverName rname){
+		return rname.ordinal() + 1;
+	}
+	
+	// the id of the n'th synthetic rover
+	public static int syntheticId(int n){
+		return SYNTHETIC_ID_BASE + n;
+	}
+	
+	public static boolean isSynthetic(int id){
+		return id >= SYNTHETIC_ID_BASE;
+	}
+	
+	/**
+	 * Moves the rover to loc, unless another rover is already there.
+	 * Safe to call from several threads at once without any outside locking.
+	 */
+	public boolean moveRover(RoverName rname, Coord loc){
+		return moveRover(rname, roverHash.get(rname), loc);
+	}
+	
+	/**
+	 * Moves the rover from one location to another, failing if the destination is taken or
+	 * if the rover is no longer at from (it was moved by some other thread in the meantime).
+	 */
+	public boolean moveRover(RoverName rname, Coord from, Coord to){
+		return moveRover(roverHash, rname, idOf(rname), from, to);
+	}
+	
+	/**
+	 * moveRover by id, for named and synthetic rovers alike. A from of null places a
+	 * rover that isn't on the map yet.
+	 */
+	public boolean moveRover(int id, Coord from, Coord to){
+		if(isSynthetic(id)){
+			return moveRover(syntheticHash, id, id, from, to);
+		}
+		return moveRover(roverHash, ROVER_NAMES[id - 1], id, from, to);
+	}
+	
+	private <K> boolean moveRover(ConcurrentHashMap<K, Coord> hash, K key, int id, Coord from, Coord to){
+		if(to.xpos < 0 || to.ypos < 0){
 			return false;
-		}			
-		roverHash.put(rname,  loc);			
+		}
+		// claim the destination - fails if any rover (including this one) is already there
+		if(!block(to.xpos, to.ypos).compareAndSet(OccupancyGrid.cellIndex(to.xpos, to.ypos), 0, id)){
+			return false;
+		}
+		
+		// publish the new position, backing out of the claim if the rover moved under us
+		boolean moved = (from == null) ? hash.putIfAbsent(key, to) == null : hash.replace(key, from, to);
+		if(!moved){
+			release(to.xpos, to.ypos, id);
+			return false;
+		}
+		
+		// and only then give up the old location
+		if(from != null){
+			release(from.xpos, from.ypos, id);
+		}
 		return true;
 	}
 	
-	public synchronized Coord getLocation(RoverName rname){
+	// empties the location if the rover with this id is on it
+	private void release(int xloc, int yloc, int id){
+		AtomicIntegerArray block = grid().existingBlock(xloc, yloc);
+		if(block != null){
+			block.compareAndSet(OccupancyGrid.cellIndex(xloc, yloc), id, 0);
+		}
+	}
+	
+	/**
+	 * The block of the newest grid holding the location, growing the grid and adding the block
+	 * if need be - without locking when it is already there.
+	 */
+	private AtomicIntegerArray block(int xloc, int yloc){
+		AtomicIntegerArray block = grid().existingBlock(xloc, yloc);
+		return (block != null) ? block : addBlock(xloc, yloc);
+	}
+	
+	private synchronized AtomicIntegerArray addBlock(int xloc, int yloc){
+		OccupancyGrid grid = grid().covering(xloc, yloc);
+		occupancy = grid;
+		return grid.addBlock(xloc, yloc);
+	}
+	
+	public Coord getLocation(RoverName rname){
 		return roverHash.get(rname);
 	}
 	
-	public synchronized RoverName getName(Coord loc){
-		for (Entry<RoverName, Coord> entry : roverHash.entrySet()) {
-            if (entry.getValue().equals(loc)) {
-                return entry.getKey();
-            }
-        }	
-		return null;
+	public Coord getLocation(int id){
+		if(isSynthetic(id)){
+			return syntheticHash.get(id);
+		}
+		return roverHash.get(ROVER_NAMES[id - 1]);
+	}
+	
+	/**
+	 * Takes a synthetic rover off the map, e.g. when its connection closes. Named rovers
+	 * stay where they are so they can reconnect.
+	 */
+	public void removeSyntheticRover(int id){
+		Coord loc = syntheticHash.remove(id);
+		if(loc != null){
+			release(loc.xpos, loc.ypos, id);
+		}
+	}
+	
+	public RoverName getName(Coord loc){
+		return getName(loc.xpos, loc.ypos);
 	}
 	
-	public synchronized boolean containsCoord (Coord loc){
-		return roverHash.containsValue(loc);
+	// RoverName.NONE for a synthetic rover
+	public RoverName getName(int xloc, int yloc){
+		int id = occupant(xloc, yloc);
+		if(id == 0){
+			return null;
+		}
+		return isSynthetic(id) ? RoverName.NONE : ROVER_NAMES[id - 1];
+	}
+	
+	public boolean containsCoord (Coord loc){
+		return occupant(loc.xpos, loc.ypos) != 0;
+	}
+	
+	public boolean containsCoord (int xloc, int yloc){
+		return occupant(xloc, yloc) != 0;
 	}
 	
 	public void printRovers(){
@@ -53,16 +263,89 @@ public class RoverLocations {
     	}
 	}
 	
-	public synchronized HashMap<RoverName, Coord> getHashMapClone(){	
-		return (HashMap<RoverName, Coord>) roverHash.clone();
+	public HashMap<RoverName, Coord> getHashMapClone(){	
+		return new HashMap<RoverName, Coord>(roverHash);
 	}
 	
+	/**
+	 * Places a rover without checking for other rovers, used while setting up the map.
+	 */
 	public synchronized void putRover(RoverName rname, Coord rloc){	
-		roverHash.put(rname, rloc);
+		Coord previous = roverHash.put(rname, rloc);
+		if(occupancy == null){
+			// will pick this change up from roverHash when it is built
+			return;
+		}
+		int id = idOf(rname);
+		if(previous != null){
+			release(previous.xpos, previous.ypos, id);
+		}
+		setOccupant(rloc.xpos, rloc.ypos, id);
+	}
+	
+	private int occupant(int xloc, int yloc){
+		return grid().get(xloc, yloc);
+	}
+	
+	private OccupancyGrid grid(){
+		OccupancyGrid grid = occupancy;
+		if(grid == null){
+			grid = buildOccupancy();
+		}
+		return grid;
+	}
+	
+	// only published once it is complete, as it is read without locking
+	private synchronized OccupancyGrid buildOccupancy(){
+		if(occupancy == null){
+			OccupancyGrid grid = new OccupancyGrid(0, 0);
+			for(Entry<RoverName, Coord> entry : roverHash.entrySet()){
+				grid = place(grid, entry.getValue().xpos, entry.getValue().ypos, idOf(entry.getKey()));
+			}
+			for(Entry<Integer, Coord> entry : syntheticHash.entrySet()){
+				grid = place(grid, entry.getValue().xpos, entry.getValue().ypos, entry.getKey());
+			}
+			occupancy = grid;
+		}
+		return occupancy;
+	}
+	
+	// only called with the lock held, by putRover
+	private void setOccupant(int xloc, int yloc, int id){
+		occupancy = place(grid(), xloc, yloc, id);
+	}
+	
+	// returns grid, or the bigger grid to publish in its place if the location was off it
+	private static OccupancyGrid place(OccupancyGrid grid, int xloc, int yloc, int id){
+		if(xloc < 0 || yloc < 0){
+			return grid;
+		}
+		grid = grid.covering(xloc, yloc);
+		grid.addBlock(xloc, yloc).set(OccupancyGrid.cellIndex(xloc, yloc), id);
+		return grid;
 	}
 	
 	public RoverLocations clone(){
-		return new RoverLocations(this.roverHash);
+		RoverLocations copy = new RoverLocations(this.getHashMapClone());
+		OccupancyGrid grid = occupancy;
+		if(grid != null){
+			OccupancyGrid copyGrid = new OccupancyGrid(grid.width, grid.height);
+			for(Entry<RoverName, Coord> entry : copy.roverHash.entrySet()){
+				Coord loc = entry.getValue();
+				if(grid.contains(loc.xpos, loc.ypos)){
+					copyGrid = place(copyGrid, loc.xpos, loc.ypos, idOf(entry.getKey()));
+				}
+			}
+			copy.syntheticHash.putAll(syntheticHash);
+			for(Entry<Integer, Coord> entry : syntheticHash.entrySet()){
+				Coord loc = entry.getValue();
+				if(grid.contains(loc.xpos, loc.ypos)){
+					copyGrid = place(copyGrid, loc.xpos, loc.ypos, entry.getKey());
+				}
+			}
+			copy.occupancy = copyGrid;
+		}
+		return copy;
 	}
 	
 	
@@ -74,36 +357,36 @@ public class RoverLocations {
 	public void loadExampleTestRoverLocations(){
         // place all the rovers into the map in their initial positions
         // TODO - have initial positions loaded from a file instead of hard coded
-		roverHash.put(RoverName.ROVER_01, new Coord(1,1));
-		roverHash.put(RoverName.ROVER_02, new Coord(2,1));
-		roverHash.put(RoverName.ROVER_03, new Coord(3,1));
-		roverHash.put(RoverName.ROVER_04, new Coord(4,1));
-		roverHash.put(RoverName.ROVER_05, new Coord(5,1));
-		roverHash.put(RoverName.ROVER_06, new Coord(6,1));
-		roverHash.put(RoverName.ROVER_07, new Coord(7,1));
-		roverHash.put(RoverName.ROVER_08, new Coord(8,1));
-		roverHash.put(RoverName.ROVER_09, new Coord(9,1));
-		roverHash.put(RoverName.ROVER_10, new Coord(10,1));
-		roverHash.put(RoverName.ROVER_11, new Coord(11,1));
-		roverHash.put(RoverName.ROVER_12, new Coord(12,1));
-		roverHash.put(RoverName.ROVER_13, new Coord(13,1));
-		roverHash.put(RoverName.ROVER_14, new Coord(14,1));
-		roverHash.put(RoverName.ROVER_15, new Coord(15,1));
-		roverHash.put(RoverName.ROVER_16, new Coord(16,1));
-		roverHash.put(RoverName.ROVER_17, new Coord(17,1));
-		roverHash.put(RoverName.ROVER_18, new Coord(18,1));
-		roverHash.put(RoverName.ROVER_19, new Coord(19,1));
-		roverHash.put(RoverName.ROVER_20, new Coord(20,1));
+		putRover(RoverName.ROVER_01, new Coord(1,1));
+		putRover(RoverName.ROVER_02, new Coord(2,1));
+		putRover(RoverName.ROVER_03, new Coord(3,1));
+		putRover(RoverName.ROVER_04, new Coord(4,1));
+		putRover(RoverName.ROVER_05, new Coord(5,1));
+		putRover(RoverName.ROVER_06, new Coord(6,1));
+		putRover(RoverName.ROVER_07, new Coord(7,1));
+		putRover(RoverName.ROVER_08, new Coord(8,1));
+		putRover(RoverName.ROVER_09, new Coord(9,1));
+		putRover(RoverName.ROVER_10, new Coord(10,1));
+		putRover(RoverName.ROVER_11, new Coord(11,1));
+		putRover(RoverName.ROVER_12, new Coord(12,1));
+		putRover(RoverName.ROVER_13, new Coord(13,1));
+		putRover(RoverName.ROVER_14, new Coord(14,1));
+		putRover(RoverName.ROVER_15, new Coord(15,1));
+		putRover(RoverName.ROVER_16, new Coord(16,1));
+		putRover(RoverName.ROVER_17, new Coord(17,1));
+		putRover(RoverName.ROVER_18, new Coord(18,1));
+		putRover(RoverName.ROVER_19, new Coord(19,1));
+		putRover(RoverName.ROVER_20, new Coord(20,1));
 		
 		// test rovers
-		roverHash.put(RoverName.ROVER_00, new Coord(4,20));
-		roverHash.put(RoverName.ROVER_99, new Coord(4,7));
+		putRover(RoverName.ROVER_00, new Coord(4,20));
+		putRover(RoverName.ROVER_99, new Coord(4,7));
 	}
 	
 	public void loadSmallExampleTestRoverLocations(){
 		
 		// test rovers
-		roverHash.put(RoverName.ROVER_00, new Coord(4,20));
-		roverHash.put(RoverName.ROVER_99, new Coord(4,7));
+		putRover(RoverName.ROVER_00, new Coord(4,20));
+		putRover(RoverName.ROVER_99, new Coord(4,7));
 	}
 }
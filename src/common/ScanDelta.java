@@ -0,0 +1,211 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import enums.Terrain;
+
+/**
+ * The tiles of a scan window that changed since the previous scan sent to
+ * the same rover, used for SCAN replies once a rover has asked for them with
+ * "SCAN_FORMAT DELTA". Tiles are compared by their ScanMapCodec byte, so a
+ * change of terrain, science or rover occupancy is included, as is every
+ * tile that has just come into view. The first scan, or one after the edge
+ * size changed, is sent in full.
+ *
+ * Layout (big-endian):
+ *   byte    format version
+ *   byte    edge size
+ *   int     center x
+ *   int     center y
+ *   byte    flags - FULL if every tile of the window follows
+ *   full:   byte[] one byte per tile, column by column as in ScanMapCodec
+ *   delta:  short  number of changed tiles
+ *           then per tile: byte column, byte row (within the new window), byte tile
+ *
+ * On the wire the bytes are Base64 encoded so they fit on one line of the
+ * text protocol.
+ */
+public final class ScanDelta {
+	public static final byte VERSION = 1;
+	public static final int HEADER_SIZE = 11;
+	private static final int FLAG_FULL = 0x01;
+
+	private final Coord center;
+	private final int edgeSize;
+	private final boolean full;
+	private final int count;
+	// window column and row of each changed tile, and its ScanMapCodec byte
+	private final byte[] cols;
+	private final byte[] rows;
+	private final byte[] tiles;
+
+	private ScanDelta(Coord center, int edgeSize, boolean full, int count, byte[] cols, byte[] rows, byte[] tiles) {
+		this.center = center;
+		this.edgeSize = edgeSize;
+		this.full = full;
+		this.count = count;
+		this.cols = cols;
+		this.rows = rows;
+		this.tiles = tiles;
+	}
+
+	/**
+	 * Wraps a complete ScanMap, for servers that don't send deltas.
+	 */
+	public static ScanDelta fromScanMap(ScanMap scanMap) {
+		int edgeSize = scanMap.getEdgeSize();
+		MapTile[][] scanned = scanMap.getScanMap();
+		int count = edgeSize * edgeSize;
+		byte[] cols = new byte[count];
+		byte[] rows = new byte[count];
+		byte[] tiles = new byte[count];
+		int n = 0;
+		for (int i = 0; i < edgeSize; i++) {
+			for (int j = 0; j < edgeSize; j++) {
+				cols[n] = (byte) i;
+				rows[n] = (byte) j;
+				tiles[n] = ScanMapCodec.encodeTile(scanned[i][j]);
+				n++;
+			}
+		}
+		return new ScanDelta(scanMap.getCenterPoint(), edgeSize, true, count, cols, rows, tiles);
+	}
+
+	public Coord getCenterPoint() {
+		return center;
+	}
+
+	public int getEdgeSize() {
+		return edgeSize;
+	}
+
+	// true if every tile of the window is included
+	public boolean isFull() {
+		return full;
+	}
+
+	// number of tiles included
+	public int size() {
+		return count;
+	}
+
+	// map x coordinate of the n'th tile
+	public int getX(int n) {
+		return center.xpos - (edgeSize >> 1) + (cols[n] & 0xFF);
+	}
+
+	// map y coordinate of the n'th tile
+	public int getY(int n) {
+		return center.ypos - (edgeSize >> 1) + (rows[n] & 0xFF);
+	}
+
+	public Terrain getTerrain(int n) {
+		return ScanMapCodec.decodeTerrain(tiles[n]);
+	}
+
+	public boolean getHasRover(int n) {
+		return ScanMapCodec.decodeHasRover(tiles[n]);
+	}
+
+	public MapTile getTile(int n) {
+		return ScanMapCodec.decodeTile(tiles[n]);
+	}
+
+	// true if the map coordinate is inside the scan window, whether or not its tile is included
+	public boolean inWindow(int x, int y) {
+		int radius = edgeSize >> 1;
+		return Math.abs(x - center.xpos) <= radius && Math.abs(y - center.ypos) <= radius;
+	}
+
+	/**
+	 * Encodes the difference between two scan windows of ScanMapCodec tile bytes.
+	 * @param prevCenter center of the window last sent, or null if there wasn't one
+	 * @param prevTiles tiles last sent, or null if there weren't any
+	 */
+	public static byte[] encode(Coord center, int edgeSize, byte[] tiles, Coord prevCenter, byte[] prevTiles) {
+		int tileCount = edgeSize * edgeSize;
+		if (prevCenter == null || prevTiles == null || prevTiles.length != tileCount) {
+			return encodeFull(center, edgeSize, tiles);
+		}
+
+		// window offset of the new window within the old one
+		int shiftX = center.xpos - prevCenter.xpos;
+		int shiftY = center.ypos - prevCenter.ypos;
+
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + 2 + tileCount * 3);
+		putHeader(buf, center, edgeSize, 0);
+		buf.putShort((short) 0); // count, filled in below
+		int count = 0;
+		for (int i = 0; i < edgeSize; i++) {
+			int pi = i + shiftX;
+			for (int j = 0; j < edgeSize; j++) {
+				int pj = j + shiftY;
+				byte tile = tiles[i * edgeSize + j];
+				if (pi >= 0 && pi < edgeSize && pj >= 0 && pj < edgeSize && prevTiles[pi * edgeSize + pj] == tile) {
+					continue;
+				}
+				buf.put((byte) i).put((byte) j).put(tile);
+				count++;
+			}
+		}
+		// a delta that costs more than the whole window isn't worth it
+		if (count * 3 >= tileCount) {
+			return encodeFull(center, edgeSize, tiles);
+		}
+		buf.putShort(HEADER_SIZE, (short) count);
+		byte[] out = new byte[buf.position()];
+		System.arraycopy(buf.array(), 0, out, 0, out.length);
+		return out;
+	}
+
+	private static byte[] encodeFull(Coord center, int edgeSize, byte[] tiles) {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + edgeSize * edgeSize);
+		putHeader(buf, center, edgeSize, FLAG_FULL);
+		buf.put(tiles, 0, edgeSize * edgeSize);
+		return buf.array();
+	}
+
+	private static void putHeader(ByteBuffer buf, Coord center, int edgeSize, int flags) {
+		buf.put(VERSION);
+		buf.put((byte) edgeSize);
+		buf.putInt(center.xpos);
+		buf.putInt(center.ypos);
+		buf.put((byte) flags);
+	}
+
+	public static ScanDelta decode(byte[] data) {
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		byte version = buf.get();
+		if (version != VERSION) {
+			throw new IllegalArgumentException("unknown scan delta version " + version);
+		}
+		int edgeSize = buf.get() & 0xFF;
+		Coord center = new Coord(buf.getInt(), buf.getInt());
+		boolean full = (buf.get() & FLAG_FULL) != 0;
+
+		int count = full ? edgeSize * edgeSize : buf.getShort() & 0xFFFF;
+		byte[] cols = new byte[count];
+		byte[] rows = new byte[count];
+		byte[] tiles = new byte[count];
+		for (int n = 0; n < count; n++) {
+			if (full) {
+				cols[n] = (byte) (n / edgeSize);
+				rows[n] = (byte) (n % edgeSize);
+			} else {
+				cols[n] = buf.get();
+				rows[n] = buf.get();
+			}
+			tiles[n] = buf.get();
+		}
+		return new ScanDelta(center, edgeSize, full, count, cols, rows, tiles);
+	}
+
+	public static String encodeToString(Coord center, int edgeSize, byte[] tiles, Coord prevCenter, byte[] prevTiles) {
+		return Base64.getEncoder().encodeToString(encode(center, edgeSize, tiles, prevCenter, prevTiles));
+	}
+
+	public static ScanDelta decodeFromString(String data) {
+		return decode(Base64.getDecoder().decode(data));
+	}
+}
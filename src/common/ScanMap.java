@@ -63,4 +63,8 @@ public class ScanMap {
 	public int getEdgeSize(){
 		return edgeSize;
 	}
+	
+	public Coord getCenterPoint(){
+		return centerPoint;
+	}
 }
@@ -0,0 +1,107 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import enums.Science;
+import enums.Terrain;
+
+/**
+ * Compact binary form of a ScanMap, used instead of JSON for SCAN replies
+ * once a rover has asked for it with "SCAN_FORMAT BINARY".
+ *
+ * Layout (big-endian):
+ *   byte    format version
+ *   byte    edge size
+ *   int     center x
+ *   int     center y
+ *   byte[]  one byte per tile, column by column in scanArray[x][y] order
+ *
+ * Each tile byte holds the Terrain ordinal in bits 0-2, the Science ordinal
+ * in bits 3-5 and the hasRover flag in bit 6. On the wire the bytes are
+ * Base64 encoded so they fit on one line of the text protocol.
+ */
+public final class ScanMapCodec {
+	public static final byte VERSION = 1;
+	public static final int HEADER_SIZE = 10;
+
+	private static final int TERRAIN_MASK = 0x07;
+	private static final int SCIENCE_SHIFT = 3;
+	private static final int SCIENCE_MASK = 0x07;
+	private static final int ROVER_BIT = 0x40;
+
+	private static final Terrain[] TERRAINS = Terrain.values();
+	private static final Science[] SCIENCES = Science.values();
+
+	private ScanMapCodec() {
+	}
+
+	public static byte encodeTile(Terrain ter, Science sci, boolean hasRover) {
+		int b = ter.ordinal() | (sci.ordinal() << SCIENCE_SHIFT);
+		if (hasRover) {
+			b |= ROVER_BIT;
+		}
+		return (byte) b;
+	}
+
+	public static byte encodeTile(MapTile tile) {
+		return encodeTile(tile.getTerrain(), tile.getScience(), tile.getHasRover());
+	}
+
+	public static MapTile decodeTile(byte b) {
+		return new MapTile(TERRAINS[b & TERRAIN_MASK], SCIENCES[(b >> SCIENCE_SHIFT) & SCIENCE_MASK], 0,
+				(b & ROVER_BIT) != 0);
+	}
+
+	public static Terrain decodeTerrain(byte b) {
+		return TERRAINS[b & TERRAIN_MASK];
+	}
+
+	public static boolean decodeHasRover(byte b) {
+		return (b & ROVER_BIT) != 0;
+	}
+
+	public static byte[] encode(ScanMap scanMap) {
+		int edgeSize = scanMap.getEdgeSize();
+		MapTile[][] tiles = scanMap.getScanMap();
+		Coord center = scanMap.getCenterPoint();
+
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + edgeSize * edgeSize);
+		buf.put(VERSION);
+		buf.put((byte) edgeSize);
+		buf.putInt(center.xpos);
+		buf.putInt(center.ypos);
+		for (int i = 0; i < edgeSize; i++) {
+			for (int j = 0; j < edgeSize; j++) {
+				buf.put(encodeTile(tiles[i][j]));
+			}
+		}
+		return buf.array();
+	}
+
+	public static ScanMap decode(byte[] data) {
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		byte version = buf.get();
+		if (version != VERSION) {
+			throw new IllegalArgumentException("unknown scan format version " + version);
+		}
+		int edgeSize = buf.get() & 0xFF;
+		Coord center = new Coord(buf.getInt(), buf.getInt());
+
+		MapTile[][] tiles = new MapTile[edgeSize][edgeSize];
+		for (int i = 0; i < edgeSize; i++) {
+			for (int j = 0; j < edgeSize; j++) {
+				tiles[i][j] = decodeTile(buf.get());
+			}
+		}
+		return new ScanMap(tiles, edgeSize, center);
+	}
+
+	public static String encodeToString(ScanMap scanMap) {
+		return Base64.getEncoder().encodeToString(encode(scanMap));
+	}
+
+	public static ScanMap decodeFromString(String data) {
+		return decode(Base64.getDecoder().decode(data));
+	}
+}
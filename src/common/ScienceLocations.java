@@ -1,7 +1,12 @@
 package common;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BiFunction;
 
 import enums.RoverName;
 import enums.Science;
@@ -9,49 +14,201 @@ import enums.Science;
 public class ScienceLocations {
 	
 		// can only have one science at any single location
-		private HashMap<Coord, Science> scienceHash;
+		private ConcurrentHashMap<Coord, Science> scienceHash;
+		
+		// Per location copy of the same data - the Science ordinal of every location, stored in
+		// CHUNK_SIZE x CHUNK_SIZE blocks that are only allocated where there is science. This is the
+		// copy that counts during a match: takeScience claims a location's science with a
+		// compare-and-set of its cell to NONE, so exactly one rover gets it and gathers on different
+		// locations never wait for each other, and a scan window is answered with array lookups
+		// without copying or locking anything. scienceHash is kept up to date after it, from the
+		// cell itself (see syncHash), so the two agree however puts and takes interleave.
+		// Transient so the json form stays the same; it is rebuilt from scienceHash on first use.
+		private static final int CHUNK_SHIFT = 6;
+		private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+		private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+		private static final Science[] SCIENCES = Science.values();
+		private transient volatile ScienceGrid grid;
+		
+		// Only the cells of a grid ever change - a chunk is added by publishing a new grid that
+		// shares the existing chunks, so a claim made on either one is seen through both.
+		private static final class ScienceGrid {
+			final AtomicIntegerArray[][] chunks; // [chunk row][chunk column]
+			
+			ScienceGrid(AtomicIntegerArray[][] chunks){
+				this.chunks = chunks;
+			}
+			
+			// the chunk holding the location, or null if there has never been science in it
+			AtomicIntegerArray chunk(int xloc, int yloc){
+				if(xloc < 0 || yloc < 0){
+					return null;
+				}
+				int chunkRow = yloc >> CHUNK_SHIFT;
+				int chunkCol = xloc >> CHUNK_SHIFT;
+				if(chunkRow >= chunks.length){
+					return null;
+				}
+				AtomicIntegerArray[] row = chunks[chunkRow];
+				if(row == null || chunkCol >= row.length){
+					return null;
+				}
+				return row[chunkCol];
+			}
+			
+			// a copy of this grid with chunk added at the location
+			ScienceGrid with(int xloc, int yloc, AtomicIntegerArray chunk){
+				int chunkRow = yloc >> CHUNK_SHIFT;
+				int chunkCol = xloc >> CHUNK_SHIFT;
+				AtomicIntegerArray[][] copy = Arrays.copyOf(chunks, Math.max(chunks.length, chunkRow + 1));
+				AtomicIntegerArray[] row = copy[chunkRow];
+				row = (row == null) ? new AtomicIntegerArray[chunkCol + 1] : Arrays.copyOf(row, Math.max(row.length, chunkCol + 1));
+				row[chunkCol] = chunk;
+				copy[chunkRow] = row;
+				return new ScienceGrid(copy);
+			}
+		}
 
 		public ScienceLocations(){
-			scienceHash = new HashMap<Coord, Science>();
+			scienceHash = new ConcurrentHashMap<Coord, Science>();
 		}
 		
 		public ScienceLocations(HashMap<Coord, Science> sciHash){
-			scienceHash = (HashMap<Coord, Science>) sciHash.clone();
+			scienceHash = new ConcurrentHashMap<Coord, Science>(sciHash);
 		}
 		
 		
-		public synchronized boolean checkLocation(Coord loc){
-			return scienceHash.containsKey(loc);
+		public boolean checkLocation(Coord loc){
+			return indexGet(loc.xpos, loc.ypos) != Science.NONE;
 		}
 		
-		public synchronized Science scanLocation(Coord loc){
-			if(checkLocation(loc)){
-				return scienceHash.get(loc);
-			} else {
+		public Science scanLocation(Coord loc){
+			return indexGet(loc.xpos, loc.ypos);
+		}
+		
+		/**
+		 * Looks up the science at a location through the spatial index, only
+		 * reporting it if it is one of the visible kinds (i.e. the rover has the
+		 * matching sensor). Costs a few array lookups and does not copy anything.
+		 */
+		public Science scanLocation(int xloc, int yloc, Set<Science> visible){
+			Science sci = indexGet(xloc, yloc);
+			if(sci != Science.NONE && visible.contains(sci)){
+				return sci;
+			}
+			return Science.NONE;
+		}
+		
+		/**
+		 * Removes the science at loc and returns it, or returns NONE if there is
+		 * none. Safe to call from several threads at once without any outside
+		 * locking - when rovers gather the same science at the same time, only
+		 * one of them gets it.
+		 */
+		public Science takeScience(Coord loc){
+			AtomicIntegerArray chunk = grid().chunk(loc.xpos, loc.ypos);
+			if(chunk == null){
 				return Science.NONE;
 			}
+			int cell = cellIndex(loc.xpos, loc.ypos);
+			int sci;
+			while((sci = chunk.get(cell)) != Science.NONE.ordinal()){
+				if(chunk.compareAndSet(cell, sci, Science.NONE.ordinal())){
+					syncHash(loc, chunk, cell);
+					return SCIENCES[sci];
+				}
+			}
+			return Science.NONE;
 		}
 		
-		public synchronized Science takeScience(Coord loc){
-			if(checkLocation(loc)){
-				Science sci = scienceHash.get(loc);
-				this.removeLocation(loc);
-				return sci;
+		// Science is put while setting up a map, and by a ProceduralWorld as the match goes on, when a
+		// part of the world is first made - so a put can race a takeScience on the same location. The
+		// put just overwrites the cell: a take before it gets the old science, a take after it the new.
+		// Either way syncHash leaves scienceHash matching the cell. Only called by putScience, with the
+		// lock held, which keeps puts from getting in each other's way.
+		private void putLocation(Coord loc, Science sci){
+			if(grid == null){
+				// will be picked up from scienceHash when the index is built
+				hashPut(loc, sci);
+				return;
+			}
+			grid = indexPut(grid, loc.xpos, loc.ypos, sci);
+			AtomicIntegerArray chunk = grid.chunk(loc.xpos, loc.ypos);
+			if(chunk != null){
+				syncHash(loc, chunk, cellIndex(loc.xpos, loc.ypos));
 			} else {
+				// not indexed (off the map, or NONE where there has never been science)
+				hashPut(loc, sci);
+			}
+		}
+		
+		private void hashPut(Coord loc, Science sci){
+			if(sci == Science.NONE){
+				scienceHash.remove(loc);
+			} else {
+				scienceHash.put(loc, sci);
+			}
+		}
+		
+		// Sets scienceHash from the location's cell rather than from what the caller wrote to it. Done
+		// atomically for the location after every change to the cell, so whichever runs last sees the
+		// last change and leaves the hash matching the index.
+		private void syncHash(Coord loc, final AtomicIntegerArray chunk, final int cell){
+			scienceHash.compute(loc, new BiFunction<Coord, Science, Science>(){
+				public Science apply(Coord key, Science old){
+					int sci = chunk.get(cell);
+					return (sci == Science.NONE.ordinal()) ? null : SCIENCES[sci];
+				}
+			});
+		}
+		
+		private Science indexGet(int xloc, int yloc){
+			AtomicIntegerArray chunk = grid().chunk(xloc, yloc);
+			if(chunk == null){
 				return Science.NONE;
 			}
+			return SCIENCES[chunk.get(cellIndex(xloc, yloc))];
+		}
+		
+		// returns g, or the grid to publish in its place if a chunk had to be added
+		private static ScienceGrid indexPut(ScienceGrid g, int xloc, int yloc, Science sci){
+			if(xloc < 0 || yloc < 0){
+				return g;
+			}
+			AtomicIntegerArray chunk = g.chunk(xloc, yloc);
+			if(chunk != null){
+				chunk.set(cellIndex(xloc, yloc), sci.ordinal());
+			} else if(sci != Science.NONE){
+				chunk = new AtomicIntegerArray(CHUNK_SIZE * CHUNK_SIZE);
+				chunk.set(cellIndex(xloc, yloc), sci.ordinal());
+				g = g.with(xloc, yloc, chunk);
+			}
+			return g;
+		}
+		
+		private ScienceGrid grid(){
+			ScienceGrid g = grid;
+			return (g != null) ? g : buildIndex();
 		}
 		
-		private synchronized void putLocation(Coord loc, Science sci){
-			this.scienceHash.put(loc, sci);
+		// only published once it is complete, as it is read without locking
+		private synchronized ScienceGrid buildIndex(){
+			if(grid == null){
+				ScienceGrid g = new ScienceGrid(new AtomicIntegerArray[0][]);
+				for(Entry<Coord, Science> entry : scienceHash.entrySet()){
+					g = indexPut(g, entry.getKey().xpos, entry.getKey().ypos, entry.getValue());
+				}
+				grid = g;
+			}
+			return grid;
 		}
 		
-		private synchronized void removeLocation(Coord loc){
-			this.scienceHash.remove(loc);
+		private static int cellIndex(int xloc, int yloc){
+			return ((yloc & CHUNK_MASK) << CHUNK_SHIFT) | (xloc & CHUNK_MASK);
 		}
 		
-		public synchronized HashMap<Coord, Science> getHashMapClone(){	
-			return (HashMap<Coord, Science>) scienceHash.clone();
+		public HashMap<Coord, Science> getHashMapClone(){	
+			return new HashMap<Coord, Science>(scienceHash);
 		}
 		
 		public void printScience(){
@@ -63,7 +220,7 @@ public class ScienceLocations {
 		}
 		
 		public synchronized void putScience(Coord sloc, Science sci){	
-			scienceHash.put(sloc, sci);
+			putLocation(sloc, sci);
 		}
 		
 		
@@ -74,19 +231,19 @@ public class ScienceLocations {
 		
 		public void loadExampleTestScienceLocations(){
 			// put some sample science in the world
-			scienceHash.put(new Coord(20,14), Science.RADIOACTIVE);
-			scienceHash.put(new Coord(21,20), Science.CRYSTAL);
-			scienceHash.put(new Coord(7,3), Science.MINERAL);
-			scienceHash.put(new Coord(9,15), Science.ORGANIC);
-			scienceHash.put(new Coord(17,12), Science.RADIOACTIVE);
-			scienceHash.put(new Coord(10,11), Science.CRYSTAL);
-			scienceHash.put(new Coord(19,3), Science.MINERAL);
-			scienceHash.put(new Coord(12,24), Science.ORGANIC);
+			putScience(new Coord(20,14), Science.RADIOACTIVE);
+			putScience(new Coord(21,20), Science.CRYSTAL);
+			putScience(new Coord(7,3), Science.MINERAL);
+			putScience(new Coord(9,15), Science.ORGANIC);
+			putScience(new Coord(17,12), Science.RADIOACTIVE);
+			putScience(new Coord(10,11), Science.CRYSTAL);
+			putScience(new Coord(19,3), Science.MINERAL);
+			putScience(new Coord(12,24), Science.ORGANIC);
 		}
 		
 		public void loadSmallExampleTestScienceLocations(){
 			// put some sample science in the world
-			scienceHash.put(new Coord(20,20), Science.RADIOACTIVE);
+			putScience(new Coord(20,20), Science.RADIOACTIVE);
 		}
 		
 }
@@ -0,0 +1,56 @@
+package common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+
+/**
+ * The rover protocol over a TCP connection to a SwarmServer.
+ */
+public class SocketTransport implements Transport {
+	private final Socket socket;
+	private final BufferedReader in;
+	private final PrintWriter out;
+
+	public SocketTransport(String serverAddress, int port) throws IOException {
+		this(new Socket(serverAddress, port));
+	}
+
+	public SocketTransport(Socket socket) throws IOException {
+		this.socket = socket;
+		this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+		this.out = new PrintWriter(socket.getOutputStream(), true);
+	}
+
+	// for streams the caller has already opened, and closes itself
+	public SocketTransport(BufferedReader in, PrintWriter out) {
+		this.socket = null;
+		this.in = in;
+		this.out = out;
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		return in.readLine();
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		return in.ready();
+	}
+
+	@Override
+	public void send(String lines) {
+		out.print(lines);
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (socket != null) {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package common;
+
+import enums.Terrain;
+
+/**
+ * The terrain of a whole planet, one byte per tile.
+ *
+ * Each byte holds the Terrain ordinal in its low TERRAIN_BITS bits and the
+ * elevation above them, so a 10,000 x 10,000 map takes 100 MB rather than a
+ * MapTile object per tile.
+ *
+ * ArrayTerrainStore keeps every tile in one array (or a memory mapped map
+ * file); ChunkedTerrainStore only keeps the parts of the map in use, for
+ * worlds too big to hold at once.
+ */
+public abstract class TerrainStore {
+	static final int TERRAIN_BITS = 3;
+	static final int TERRAIN_MASK = (1 << TERRAIN_BITS) - 1;
+	public static final int MAX_ELEVATION = (1 << (8 - TERRAIN_BITS)) - 1;
+
+	private static final Terrain[] TERRAINS = Terrain.values();
+
+	protected final int width;
+	protected final int height;
+
+	protected TerrainStore(int width, int height) {
+		if (width < 0 || height < 0) {
+			throw new IllegalArgumentException("can't store a " + width + " x " + height + " map");
+		}
+		this.width = width;
+		this.height = height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public boolean contains(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < height;
+	}
+
+	public Terrain getTerrain(int x, int y) {
+		return terrainOf(getPacked(x, y));
+	}
+
+	public int getElevation(int x, int y) {
+		return elevationOf(getPacked(x, y));
+	}
+
+	public void set(int x, int y, Terrain ter, int elevation) {
+		setPacked(x, y, pack(ter, elevation));
+	}
+
+	/**
+	 * A copy of this store that can be changed without changing this one.
+	 */
+	public abstract TerrainStore copy();
+
+	// the packed byte, for reading terrain and elevation with one lookup
+	abstract byte getPacked(int x, int y);
+
+	abstract void setPacked(int x, int y, byte packed);
+
+	// copies one row of packed tiles, for writing them out
+	void getRow(int y, byte[] row) {
+		for (int x = 0; x < width; x++) {
+			row[x] = getPacked(x, y);
+		}
+	}
+
+	static Terrain terrainOf(byte packed) {
+		return TERRAINS[packed & TERRAIN_MASK];
+	}
+
+	static int elevationOf(byte packed) {
+		return (packed & 0xFF) >>> TERRAIN_BITS;
+	}
+
+	/**
+	 * The byte a tile is stored as, e.g. for a ChunkSource to fill a chunk with.
+	 */
+	public static byte pack(Terrain ter, int elevation) {
+		if (elevation < 0 || elevation > MAX_ELEVATION) {
+			throw new IllegalArgumentException("elevation " + elevation + " is outside 0.." + MAX_ELEVATION);
+		}
+		return (byte) (ter.ordinal() | (elevation << TERRAIN_BITS));
+	}
+}
@@ -0,0 +1,62 @@
+package common;
+
+/**
+ * Token bucket rate limiter. Tokens are added at a steady rate up to a maximum
+ * burst size and every request takes one; a request that finds the bucket
+ * empty is told how long to wait instead of being refused outright.
+ *
+ * Time comes from a GameClock so the limit scales along with a sped up game.
+ * Nothing is allocated per request.
+ */
+public class TokenBucket {
+	private final GameClock clock;
+	private final double tokensPerMilli;
+	private final double capacity;
+
+	private double tokens;
+	private long lastRefillTime;
+
+	private long acceptedCount = 0;
+	private long throttledCount = 0;
+
+	public TokenBucket(int ratePerSecond, int burstSize, GameClock clock) {
+		if (ratePerSecond <= 0 || burstSize <= 0) {
+			throw new IllegalArgumentException("rate and burst size must be positive: " + ratePerSecond + ", " + burstSize);
+		}
+		this.clock = clock;
+		this.tokensPerMilli = ratePerSecond / 1000.0;
+		this.capacity = burstSize;
+		this.tokens = burstSize;
+		this.lastRefillTime = clock.currentTimeMillis();
+	}
+
+	/**
+	 * Takes a token if there is one.
+	 * @return 0 if the request can go ahead, otherwise the number of milliseconds
+	 *         (game time) until the next token is available
+	 */
+	public synchronized long tryAcquire() {
+		long now = clock.currentTimeMillis();
+		if (now > lastRefillTime) {
+			tokens = Math.min(capacity, tokens + (now - lastRefillTime) * tokensPerMilli);
+			lastRefillTime = now;
+		}
+		if (tokens >= 1.0) {
+			tokens -= 1.0;
+			acceptedCount++;
+			return 0;
+		}
+		throttledCount++;
+		return Math.max(1, (long) Math.ceil((1.0 - tokens) / tokensPerMilli));
+	}
+
+	// number of requests that were let through
+	public synchronized long getAcceptedCount() {
+		return acceptedCount;
+	}
+
+	// number of times a request found the bucket empty and had to wait
+	public synchronized long getThrottledCount() {
+		return throttledCount;
+	}
+}
@@ -0,0 +1,31 @@
+package common;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Carries the lines of the rover protocol between a rover and the server.
+ * SocketTransport sends them over a TCP connection; a rover running in the
+ * same JVM as the server can use controlServer.InProcessTransport instead,
+ * which hands them to the server directly. Either way the rover sees the
+ * same lines - SUBMITNAME, replies and EVENTs - in the same order.
+ */
+public interface Transport extends Closeable {
+	/**
+	 * Waits for the next line from the server.
+	 * @return the line without its terminator, or null once the connection is closed
+	 */
+	String readLine() throws IOException;
+
+	/**
+	 * @return true if readLine() has a line it can return without waiting
+	 */
+	boolean ready() throws IOException;
+
+	/**
+	 * Sends one or more lines, each ending with '\n', to the server in one go.
+	 * Like a PrintWriter this doesn't fail - if the connection is gone that
+	 * shows up as readLine() returning null.
+	 */
+	void send(String lines);
+}
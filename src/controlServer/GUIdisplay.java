@@ -10,6 +10,7 @@ import common.Coord;
 import common.PlanetMap;
 import common.RoverLocations;
 import common.ScienceLocations;
+import enums.RoverName;
 import enums.Science;
 import enums.Terrain;
 
@@ -127,8 +128,9 @@ class MyGUIWorker extends SwingWorker<Void, String> {
 				Coord tcor = new Coord(i, j);
 				// first check for a rover and add to map if found
 				if(roverLoc.containsCoord(tcor)){
-					String rNum = roverLoc.getName(tcor).toString();
-					roverPrint.append("|" + rNum.substring(6));
+					RoverName rover = roverLoc.getName(tcor);
+					// synthetic rovers have no number
+					roverPrint.append("|" + (rover == RoverName.NONE ? "**" : rover.toString().substring(6)));
 				
 				// then check if there is a terrain feature (if not SOIL then display terrain)
 				} else if(planetMap.getTile(tcor).getTerrain() != Terrain.SOIL){
@@ -20,6 +20,7 @@ import common.LineSegment;
 import common.PlanetMap;
 import common.RoverLocations;
 import common.ScienceLocations;
+import enums.RoverName;
 import enums.Terrain;
 
 // Thanks to this posting for the seed this was constructed from:
@@ -213,9 +214,9 @@ class MyGUIWorker2 extends SwingWorker<Void, String> {
 				GraphicTile gtile = new GraphicTile(tcor.xpos, tcor.ypos);
 				// first check for a rover and add to graphicTile if found
 				if (roverLoc.containsCoord(tcor)) {
-					String rNum = roverLoc.getName(tcor).toString();
-					// make a tile with rover number
-					gtile.setRoverName(rNum.substring(6));	
+					RoverName rover = roverLoc.getName(tcor);
+					// make a tile with rover number, or just the marker for a synthetic rover
+					gtile.setRoverName(rover == RoverName.NONE ? "" : rover.toString().substring(6));	
 					// then check if there is a terrain feature (if not SOIL
 					// then add terrain to graphicTile )
 				}
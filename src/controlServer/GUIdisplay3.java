@@ -5,9 +5,13 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
 import java.util.List;
 
 import javax.swing.BoxLayout;
@@ -16,29 +20,44 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 import javax.swing.Timer;
 
 import common.Coord;
+import common.GameClock;
 import common.GraphicTile;
 import common.LineSegment;
 import common.PlanetMap;
 import common.RoverLocations;
 import common.ScienceLocations;
+import enums.RoverName;
 import enums.Science;
 import enums.Terrain;
 
 public class GUIdisplay3 extends JPanel implements MyGUIAppendable3 {
 	public static final int TILE_SIZE = 20;
 	public final int FONT_SIZE = 18;
+	// changed tiles are collected and repainted at most this many times a second
+	public static final int FRAME_RATE = 20;
+	private static final EnumSet<Science> ALL_SCIENCE = EnumSet.allOf(Science.class);
 
 	private JTextArea area;
 	private int width;
 	private int height;
 	private int pixelWidth;
 	private int pixelHeight;
-	private List<GraphicTile> graphicTiles;
-	private List<LineSegment> lineSegments;
+	// live game state - rovers and science are read from these whenever a tile is painted
+	private RoverLocations roverLoc;
+	private ScienceLocations sciloc;
+	// terrain, grid lines and start/target outlines never change during a match, so they are
+	// rendered once into this image instead of on every repaint
+	private BufferedImage mapLayer;
+	// tiles (y * width + x) that changed since the last frame - guarded by its own lock since
+	// rover handler threads mark them while the event dispatch thread paints them
+	private final BitSet dirtyTiles = new BitSet();
+	private final BitSet paintTiles = new BitSet();
+	private Timer frameTimer;
 	private JTextField countdownClock;
 	private JTextField countdownTitle;
 	private Timer timer;
@@ -52,13 +71,15 @@ public class GUIdisplay3 extends JPanel implements MyGUIAppendable3 {
 	}
 
 	public GUIdisplay3(int width, int height, long timeLimit) {
+		this(width, height, timeLimit, GameClock.REAL, GameClock.REAL.currentTimeMillis());
+	}
+
+	public GUIdisplay3(int width, int height, long timeLimit, GameClock clock, long startTime) {
 		this.width = width;
 		this.height = height;
 		this.pixelWidth = (this.width * TILE_SIZE);
 		this.pixelHeight = (this.height * TILE_SIZE);
-		graphicTiles = new ArrayList<>();
-		lineSegments = new ArrayList<>();
-		countDownClock(timeLimit);
+		countDownClock(timeLimit, clock, startTime);
 		displayScoreTextInit();
 	}
 
@@ -95,7 +116,7 @@ public class GUIdisplay3 extends JPanel implements MyGUIAppendable3 {
 	 * to-zero-by-swing-timer
 	 */
 
-	private void countDownClock(long timeLimit) {
+	private void countDownClock(long timeLimit, GameClock clock, long startTime) {
 		// Count down clock
 		countdownTitle = new JTextField();
 		countdownTitle.setFont(new Font("sansserif", Font.PLAIN, FONT_SIZE));
@@ -113,19 +134,15 @@ public class GUIdisplay3 extends JPanel implements MyGUIAppendable3 {
 
 		// create a 1 seconds delay
 		timer = new Timer(1000, new ActionListener() {
-			// private long time = 60 * 1000; //60 seconds
-			private long time = timeLimit; // 10 minutes
-
 			public void actionPerformed(ActionEvent e) {
-				if (time >= 0) {
-					long s = ((time / 1000) % 60);
-					long m = (((time / 1000) / 60) % 60);
-					long h = ((((time / 1000) / 60) / 60) % 60);
-					// countdownClock.setText(h + " h " + m + " m " + s + " s");
-					countdownTitle.setText("Time Remaining");
-					countdownClock.setText(m + " mins " + s + " s");
-					time -= 1000;
-				}
+				// time left on the game clock, which may be running faster than real time
+				long time = Math.max(0, timeLimit - (clock.currentTimeMillis() - startTime));
+				long s = ((time / 1000) % 60);
+				long m = (((time / 1000) / 60) % 60);
+				long h = ((((time / 1000) / 60) / 60) % 60);
+				// countdownClock.setText(h + " h " + m + " m " + s + " s");
+				countdownTitle.setText("Time Remaining");
+				countdownClock.setText(m + " mins " + s + " s");
 			}
 		});
 		timer.start();
@@ -155,24 +172,71 @@ public class GUIdisplay3 extends JPanel implements MyGUIAppendable3 {
 	}
 
 	@Override
-	public void drawThisGraphicTileArray(ArrayList<GraphicTile> gtarraylist,
-			ArrayList<LineSegment> lineSegmentArrayList) {
-		this.graphicTiles = gtarraylist;
-		this.lineSegments = lineSegmentArrayList;
+	public void drawMap(final RoverLocations roverLoc, final ScienceLocations sciloc, final PlanetMap planetMap,
+			final ArrayList<LineSegment> lineSegmentArrayList) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					drawMap(roverLoc, sciloc, planetMap, lineSegmentArrayList);
+				}
+			});
+			return;
+		}
+		this.roverLoc = roverLoc;
+		this.sciloc = sciloc;
+		this.mapLayer = renderMapLayer(planetMap, lineSegmentArrayList);
+		if (frameTimer == null) {
+			frameTimer = new Timer(1000 / FRAME_RATE, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					paintDirtyTiles();
+				}
+			});
+			frameTimer.start();
+		}
 		repaint();
 	}
 
-	/**
-	 * got the idea from:
-	 * http://stackoverflow.com/questions/15870608/creating-a-draw-rectangle-
-	 * filled-with-black-color-function-in-java-for-a-grid
-	 * 
-	 **/
 	@Override
-	protected void paintComponent(Graphics g) {
-		super.paintComponent(g);
-		for (GraphicTile graphicTile : graphicTiles) {
-			graphicTile.drawTile(g);
+	public void markDirty(int xloc, int yloc) {
+		if (xloc < 0 || yloc < 0 || xloc >= width || yloc >= height) {
+			return;
+		}
+		synchronized (dirtyTiles) {
+			dirtyTiles.set(yloc * width + xloc);
+		}
+	}
+
+	// runs on the event dispatch thread once per frame
+	private void paintDirtyTiles() {
+		synchronized (dirtyTiles) {
+			if (dirtyTiles.isEmpty()) {
+				return;
+			}
+			paintTiles.clear();
+			paintTiles.or(dirtyTiles);
+			dirtyTiles.clear();
+		}
+		// paint each tile on its own - repaint() would merge them into one rectangle covering all of them
+		for (int n = paintTiles.nextSetBit(0); n >= 0; n = paintTiles.nextSetBit(n + 1)) {
+			paintImmediately((n % width) * TILE_SIZE, (n / width) * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+		}
+	}
+
+	private BufferedImage renderMapLayer(PlanetMap planetMap, ArrayList<LineSegment> lineSegmentArrayList) {
+		// the outlines can reach one tile past the edge of the map
+		BufferedImage image = new BufferedImage(pixelWidth + TILE_SIZE + 1, pixelHeight + TILE_SIZE + 1,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics g = image.createGraphics();
+		// SOIL is left transparent so the panel background shows through, as before
+		for (int j = 0; j < planetMap.getHeight(); j++) {
+			for (int i = 0; i < planetMap.getWidth(); i++) {
+				Terrain ter = planetMap.getTile(i, j).getTerrain();
+				if (ter != Terrain.SOIL) {
+					GraphicTile gtile = new GraphicTile(i, j);
+					gtile.setTerrain(ter);
+					gtile.drawTile(g);
+				}
+			}
 		}
 		g.setColor(EXTRA_LIGHT_GREY);
 		// Draw all the grid squares TILE_SIZE x TILE_SIZE pixels
@@ -184,11 +248,58 @@ public class GUIdisplay3 extends JPanel implements MyGUIAppendable3 {
 			g.drawLine(0, i, pixelWidth, i);
 		}
 		// draw the start and target location outlines
-		for (LineSegment lineSegment : lineSegments) {
+		for (LineSegment lineSegment : lineSegmentArrayList) {
 			g.setColor(lineSegment.lineColor);
 			g.drawLine(lineSegment.X1, lineSegment.Y1, lineSegment.X2, lineSegment.Y2);
 		}
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * got the idea from:
+	 * http://stackoverflow.com/questions/15870608/creating-a-draw-rectangle-
+	 * filled-with-black-color-function-in-java-for-a-grid
+	 * 
+	 **/
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		if (mapLayer == null) {
+			return;
+		}
+		g.drawImage(mapLayer, 0, 0, null);
 
+		// only the science and rovers on the tiles inside the area being painted need drawing
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, pixelWidth, pixelHeight);
+		}
+		int minX = Math.max(clip.x / TILE_SIZE, 0);
+		int minY = Math.max(clip.y / TILE_SIZE, 0);
+		int maxX = Math.min((clip.x + clip.width) / TILE_SIZE, width - 1);
+		int maxY = Math.min((clip.y + clip.height) / TILE_SIZE, height - 1);
+		for (int j = minY; j <= maxY; j++) {
+			for (int i = minX; i <= maxX; i++) {
+				RoverName rover = roverLoc.getName(i, j);
+				Science science = sciloc.scanLocation(i, j, ALL_SCIENCE);
+				if (rover == null && science == Science.NONE) {
+					continue;
+				}
+				GraphicTile gtile = new GraphicTile(i, j);
+				if (science != Science.NONE) {
+					gtile.setScience(science);
+				}
+				if (rover == RoverName.NONE) {
+					// a synthetic rover has no number - just the marker
+					gtile.setRoverName("");
+				} else if (rover != null) {
+					// make a tile with rover number
+					gtile.setRoverName(rover.toString().substring(6));
+				}
+				gtile.drawTile(g);
+			}
+		}
 	}
 
 	// Set the size of the map display
@@ -270,36 +381,12 @@ class MyGUIWorker3 extends SwingWorker<Void, String> {
 		myAppendable.clearDisplay();
 	}
 
+	/**
+	 * Sets up the display for a match. The map is drawn once here, after that only the tiles
+	 * passed to displayRoverMove and displayScienceRemoved are repainted, reading the current
+	 * state straight from roverLoc and sciloc - so pass the live objects, not copies.
+	 */
 	public void displayGraphicMap(RoverLocations roverLoc, ScienceLocations sciloc, PlanetMap planetMap) {
-		int mWidth = planetMap.getWidth();
-		int mHeight = planetMap.getHeight();
-
-		ArrayList<GraphicTile> graphicTiles = new ArrayList<GraphicTile>();
-
-		// make the graphic tiles and place in array
-		for (int j = 0; j < mHeight; j++) {
-			for (int i = 0; i < mWidth; i++) {
-				// scan through the map - left to right, top to bottom
-				Coord tcor = new Coord(i, j);
-				GraphicTile gtile = new GraphicTile(tcor.xpos, tcor.ypos);
-				// first check for a rover and add to graphicTile if found
-				if (roverLoc.containsCoord(tcor)) {
-					String rNum = roverLoc.getName(tcor).toString();
-					// make a tile with rover number
-					gtile.setRoverName(rNum.substring(6));
-					// then check if there is a terrain feature (if not SOIL
-					// then add terrain to graphicTile )
-				}
-				if (planetMap.getTile(tcor).getTerrain() != Terrain.SOIL) {
-					gtile.setTerrain(planetMap.getTile(tcor).getTerrain());
-				}
-				if (sciloc.checkLocation(tcor)) {
-					gtile.setScience(sciloc.scanLocation(tcor));
-				}
-				graphicTiles.add(gtile);
-			}
-		}
-
 		// Load array with target and start location outline lineSegments
 		ArrayList<LineSegment> lineSegmentArrayList = new ArrayList<LineSegment>();
 		int tileSize = GUIdisplay3.TILE_SIZE;
@@ -358,7 +445,17 @@ class MyGUIWorker3 extends SwingWorker<Void, String> {
 				.add(new LineSegment((maxSafePos_x * tileSize) + tileSize, (maxSafePos_x * tileSize) + tileSize,
 						minSafePos_y * tileSize, (maxSafePos_y * tileSize) + tileSize, boxColor));
 
-		myAppendable.drawThisGraphicTileArray(graphicTiles, lineSegmentArrayList);
+		myAppendable.drawMap(roverLoc, sciloc, planetMap, lineSegmentArrayList);
+	}
+
+	// safe to call from any thread - the tiles are repainted on the next frame
+	public void displayRoverMove(Coord from, Coord to) {
+		myAppendable.markDirty(from.xpos, from.ypos);
+		myAppendable.markDirty(to.xpos, to.ypos);
+	}
+
+	public void displayScienceRemoved(Coord loc) {
+		myAppendable.markDirty(loc.xpos, loc.ypos);
 	}
 
 	public void displayFullMap(RoverLocations roverLoc, ScienceLocations sciloc, PlanetMap planetMap) {
@@ -372,18 +469,17 @@ class MyGUIWorker3 extends SwingWorker<Void, String> {
 		}
 	}
 
-	public void displayScore(ArrayList<ArrayList<Science>> corpCollectedScience) {
-		String tempBlueScore = Integer.toString(corpCollectedScience.get(1).size());
-		String tempGreenScore = Integer.toString(corpCollectedScience.get(2).size());
-		String tempSampleScore = Integer.toString(corpCollectedScience.get(0).size());
-		myAppendable.setScores(tempBlueScore, tempGreenScore, tempSampleScore);
+	public void displayScore(int blueScore, int greenScore, int sampleScore) {
+		myAppendable.setScores(Integer.toString(blueScore), Integer.toString(greenScore), Integer.toString(sampleScore));
 	}
 }
 
 interface MyGUIAppendable3 {
-	public void drawThisGraphicTileArray(ArrayList<GraphicTile> graphicTileArraylist,
+	public void drawMap(RoverLocations roverLoc, ScienceLocations sciloc, PlanetMap planetMap,
 			ArrayList<LineSegment> lineSegmentArrayList);
 
+	public void markDirty(int xloc, int yloc);
+
 	public void append(String text);
 
 	public void setText(String text);
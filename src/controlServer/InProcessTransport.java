@@ -0,0 +1,189 @@
+package controlServer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import common.Transport;
+
+/**
+ * A connection to the SwarmServer running in this JVM that doesn't go
+ * through a socket, for simulations that run the rovers next to the server,
+ * e.g. a Tournament. The lines a rover sends are run by its RoverSession
+ * straight away, on the rover's own thread, and the replies and EVENTs come
+ * back through a lock-free queue - so there is no loopback, no event loop
+ * and no thread switch between the rover and the server.
+ *
+ * Otherwise it behaves just like a connection to a SelectorServer or a
+ * Handler: it starts with SUBMITNAME, the rover answers with its name and
+ * optionally the match to play in, commands are held to the same request
+ * rate and drive cooldowns, and the connection is closed when the match is
+ * over.
+ */
+public class InProcessTransport implements Transport {
+	// replies and events for the rover - each a run of whole lines
+	private final ConcurrentLinkedQueue<String> inbound = new ConcurrentLinkedQueue<String>();
+	// the rover's thread while it waits in readLine, to be woken when something arrives
+	private volatile Thread reader;
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	// the lines the reader hasn't had yet from the last run it took off the queue
+	private String chunk;
+	private int chunkStart;
+
+	// set once the rover has sent its name; guarded by this, as are the commands run against it
+	private volatile RoverSession session;
+	private final StringBuilder reply = new StringBuilder();
+
+	private final RoverSession.EventSink events = new RoverSession.EventSink() {
+		public void push(String line) {
+			deliver(line);
+		}
+
+		public void disconnect() {
+			close();
+		}
+	};
+
+	/**
+	 * Connects to this JVM's SwarmServer, whose matches must already be
+	 * running.
+	 */
+	public InProcessTransport() {
+		SwarmServer.metrics.connectionOpened();
+		deliver("SUBMITNAME\n");
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		while (true) {
+			if (chunk != null) {
+				int end = chunk.indexOf('\n', chunkStart);
+				String line = chunk.substring(chunkStart, end);
+				chunkStart = end + 1;
+				if (chunkStart == chunk.length()) {
+					chunk = null;
+				}
+				return line;
+			}
+			chunk = inbound.poll();
+			chunkStart = 0;
+			if (chunk == null) {
+				if (closed.get()) {
+					// anything delivered just before the close is still read
+					chunk = inbound.poll();
+					if (chunk == null) {
+						return null;
+					}
+				} else {
+					awaitDelivery();
+				}
+			}
+		}
+	}
+
+	private void awaitDelivery() throws InterruptedIOException {
+		reader = Thread.currentThread();
+		try {
+			while (inbound.isEmpty() && !closed.get()) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted waiting for the server");
+				}
+			}
+		} finally {
+			reader = null;
+		}
+	}
+
+	private void deliver(String lines) {
+		inbound.offer(lines);
+		Thread waiting = reader;
+		if (waiting != null) {
+			LockSupport.unpark(waiting);
+		}
+	}
+
+	@Override
+	public boolean ready() {
+		return chunk != null || !inbound.isEmpty();
+	}
+
+	@Override
+	public synchronized void send(String lines) {
+		int start = 0;
+		while (start < lines.length() && !closed.get()) {
+			int end = lines.indexOf('\n', start);
+			if (end < 0) {
+				end = lines.length();
+			}
+			// as BufferedReader.readLine would on the server, take off a '\r' before the '\n'
+			int lineEnd = (end > start && lines.charAt(end - 1) == '\r') ? end - 1 : end;
+			receive(lines.substring(start, lineEnd));
+			start = end + 1;
+		}
+	}
+
+	// what SwarmServer.Handler does with each line it reads from its socket
+	private void receive(String input) {
+		try {
+			if (session == null) {
+				System.out.println(input + " has connected to server");
+				session = RoverSession.connect(input);
+				session.setEventSink(events);
+				return;
+			}
+			Match match = session.getMatch();
+			if (!match.roversAreGO) {
+				close();
+				return;
+			}
+
+			// a rover over its request rate is held back here rather than disconnected
+			long throttleDelay;
+			while ((throttleDelay = session.tryAcquireRequest()) > 0) {
+				match.clock.sleep(throttleDelay);
+			}
+
+			reply.setLength(0);
+			boolean keepConnection = session.handle(input, reply);
+			if (reply.length() > 0) {
+				deliver(reply.toString());
+			}
+			if (!keepConnection) {
+				close();
+			}
+		} catch (IOException e) {
+			System.out.println(e);
+			close();
+		} catch (Exception e) {
+			e.printStackTrace();
+			close();
+		}
+	}
+
+	/**
+	 * Drops the connection. The rover reads whatever was already sent to it,
+	 * then null.
+	 */
+	@Override
+	public void close() {
+		if (!closed.compareAndSet(false, true)) {
+			return;
+		}
+		Thread waiting = reader;
+		if (waiting != null) {
+			LockSupport.unpark(waiting);
+		}
+		// once any command still running has finished
+		synchronized (this) {
+			if (session != null) {
+				session.close();
+			}
+		}
+		SwarmServer.metrics.connectionClosed();
+	}
+}
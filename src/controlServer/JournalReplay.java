@@ -0,0 +1,156 @@
+package controlServer;
+
+import common.Coord;
+import common.GameClock;
+import common.MatchJournal;
+import enums.MoveDirection;
+import enums.RoverName;
+import enums.Science;
+
+/**
+ * Plays a match back from the journal written by a server started with
+ * -journal=file, without any rovers or network connections.
+ *
+ * Every recorded command is run again through a RoverSession on the same
+ * map, with the game clock set to the time the command was originally run
+ * at, so the game rules give the same results. After each command the
+ * rover's position, and anything a GATHER picked up, is checked against the
+ * journal. A difference is reported and the rover is put back where the
+ * journal has it, so one difference doesn't spoil the rest of the replay.
+ * Differences can happen when two rovers went for the same tile at the same
+ * moment, as the journal only has the order in which the commands finished.
+ *
+ * Also useful as a benchmark of the command logic on its own: the end of the
+ * run prints how fast the commands were replayed and the server metrics.
+ *
+ * usage: JournalReplay journalFile [mapFile]
+ * the map file recorded in the journal is used if none is given
+ */
+public class JournalReplay {
+
+	// game time is whatever the journal says it is
+	static class ReplayClock extends GameClock {
+		private volatile long now;
+
+		ReplayClock(long startTime) {
+			now = startTime;
+		}
+
+		void setTime(long time) {
+			now = time;
+		}
+
+		@Override
+		public long currentTimeMillis() {
+			return now;
+		}
+
+		@Override
+		public void sleep(long millis) {
+			// nothing has to wait during a replay
+		}
+
+		@Override
+		public String toString() {
+			return "replay time";
+		}
+	}
+
+	private static final RoverSession.ScanFormat[] SCAN_FORMATS = RoverSession.ScanFormat.values();
+	private static final MoveDirection[] MOVE_DIRECTIONS = MoveDirection.values();
+	private static final RoverName[] ROVER_NAMES = RoverName.values();
+	private static final Science[] SCIENCES = Science.values();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("usage: JournalReplay journalFile [mapFile]");
+			System.exit(2);
+		}
+		MatchJournal.Reader journal = new MatchJournal.Reader(args[0]);
+		String mapFile = (args.length > 1) ? args[1] : journal.getMapFileName();
+
+		ReplayClock clock = new ReplayClock(journal.getStartTime());
+		SwarmServer.headless = true;
+		SwarmServer.clock = clock;
+		Match match = SwarmServer.loadGame(SwarmServer.DEFAULT_MATCH, mapFile, clock, journal.getStartTime());
+
+		RoverSession[] sessions = new RoverSession[ROVER_NAMES.length];
+		StringBuilder reply = new StringBuilder();
+		long records = 0;
+		long divergences = 0;
+		long begin = System.nanoTime();
+
+		while (journal.next()) {
+			records++;
+			clock.setTime(journal.getTime());
+			RoverName roverName = ROVER_NAMES[journal.getRover()];
+			MatchJournal.Command command = journal.getCommand();
+
+			if (command == MatchJournal.Command.CONNECT) {
+				// a rover that connects again starts over with a new session, as it does on the server
+				sessions[journal.getRover()] = new RoverSession(match, roverName.toString());
+				continue;
+			}
+			RoverSession session = sessions[journal.getRover()];
+			String line = commandLine(command, journal.getArg());
+			if (session == null || line == null) {
+				continue;
+			}
+
+			int cargoBefore = session.getRover().scienceCargo.size();
+			reply.setLength(0);
+			session.handle(line, reply);
+
+			Coord pos = match.roverLocations.getLocation(roverName);
+			if (pos.xpos != journal.getX() || pos.ypos != journal.getY()) {
+				divergences++;
+				System.out.println("JournalReplay: record " + records + " " + roverName + " " + line + " ended at "
+						+ pos.xpos + "," + pos.ypos + " but the journal has " + journal.getX() + "," + journal.getY());
+				match.roverLocations.putRover(roverName, new Coord(journal.getX(), journal.getY()));
+			}
+			Science gathered = Science.NONE;
+			if (session.getRover().scienceCargo.size() > cargoBefore) {
+				gathered = session.getRover().scienceCargo.get(cargoBefore);
+			}
+			if (gathered.ordinal() != journal.getScience()) {
+				divergences++;
+				System.out.println("JournalReplay: record " + records + " " + roverName + " gathered " + gathered
+						+ " but the journal has " + SCIENCES[journal.getScience()]);
+			}
+		}
+		long elapsed = System.nanoTime() - begin;
+		journal.close();
+
+		System.out.println("JournalReplay: " + records + " records from " + args[0] + " on " + mapFile);
+		System.out.println("JournalReplay: replayed in " + (elapsed / 1000000) + " ms, "
+				+ (long) (records / (elapsed / 1e9)) + " records/s");
+		System.out.println("JournalReplay: " + divergences + " divergences");
+		StringBuilder report = new StringBuilder();
+		SwarmServer.metrics.report(report);
+		System.out.print(report);
+		System.exit(divergences == 0 ? 0 : 1);
+	}
+
+	// the command line that gives the recorded command, or null for one that doesn't change or read the game
+	private static String commandLine(MatchJournal.Command command, int arg) {
+		switch (command) {
+		case MOVE:
+			return "MOVE " + MOVE_DIRECTIONS[arg];
+		case SCAN_FORMAT:
+			return "SCAN_FORMAT " + SCAN_FORMATS[arg];
+		case LOC:
+		case START_LOC:
+		case TARGET_LOC:
+		case SCAN:
+		case TIMER:
+		case GATHER:
+		case CARGO:
+		case EQUIPMENT:
+			return command.name();
+		default:
+			// SUBSCRIBE and UNSUBSCRIBE only change what is pushed to a connection that isn't there,
+			// STATS only reads the metrics and OTHER does nothing
+			return null;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package controlServer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import common.Coord;
+import common.GameClock;
+import common.LatencyHistogram;
+import common.MatchJournal;
+import common.PlanetMap;
+import common.Rover;
+import common.RoverLocations;
+import common.ScienceLocations;
+import common.TokenBucket;
+import enums.MoveDirection;
+import enums.Science;
+
+/**
+ * The game state of one match - its map, where the rovers and the science
+ * are, what each corporation has collected and whether the match is still
+ * running. A SwarmServer hosts any number of these side by side, each played
+ * by its own rovers, which pick the match they are in when they connect (see
+ * SwarmServer.findMatch). The connections, the scheduler and the metrics are
+ * shared by every match on the server.
+ *
+ * Matches played on the same map file share its terrain, which doesn't change
+ * during a match; each gets its own copy of the rovers and the science.
+ */
+class Match {
+	private final String id;
+	private final String mapName;
+
+	final PlanetMap planetMap;
+	final RoverLocations roverLocations;
+	// GATHER needs no lock either - ScienceLocations.takeScience claims the science atomically
+	final ScienceLocations scienceLocations;
+	// the science each corporation has gathered, [SwarmServer.getCorpNumber][Science ordinal] - counted
+	// without locks, so rovers gathering at the same time don't wait for each other to score
+	private final LongAdder[][] corpScience = new LongAdder[3][Science.values().length];
+
+	// every timer in the match reads this clock
+	final GameClock clock;
+	final long startTime;
+	volatile boolean roversAreGO = true;
+
+	// every command run and its outcome, if this match is being journaled - see JournalReplay
+	volatile MatchJournal journal = null;
+	// how long the commands of this match's rovers took to run - SwarmServer.metrics has the detail for the server
+	final LatencyHistogram commandLatency = new LatencyHistogram();
+
+	// the rovers connected to this match, so they can be disconnected when it is over
+	private final Set<RoverSession> sessions = ConcurrentHashMap.newKeySet();
+
+	Match(String id, String mapName, PlanetMap planetMap, RoverLocations roverLocations,
+			ScienceLocations scienceLocations, GameClock clock, long startTime) {
+		this.id = id;
+		this.mapName = mapName;
+		this.planetMap = planetMap;
+		this.roverLocations = roverLocations;
+		this.scienceLocations = scienceLocations;
+		this.clock = clock;
+		this.startTime = startTime;
+		for (int corp = 0; corp < corpScience.length; corp++) {
+			for (int sci = 0; sci < corpScience[corp].length; sci++) {
+				corpScience[corp][sci] = new LongAdder();
+			}
+		}
+	}
+
+	String getId() {
+		return id;
+	}
+
+	String getMapName() {
+		return mapName;
+	}
+
+	int getMapWidth() {
+		return planetMap.getWidth();
+	}
+
+	int getMapHeight() {
+		return planetMap.getHeight();
+	}
+
+	boolean isTimeUp() {
+		return clock.currentTimeMillis() - startTime >= SwarmServer.MAXIMUM_ACTIVITY_TIME_LIMIT;
+	}
+
+	// ends the match and disconnects its rovers
+	void stop() {
+		roversAreGO = false;
+		closeJournal();
+		for (RoverSession session : sessions) {
+			session.disconnect();
+		}
+	}
+
+	void addSession(RoverSession session) {
+		sessions.add(session);
+	}
+
+	void removeSession(RoverSession session) {
+		sessions.remove(session);
+	}
+
+	void recordGathered(int corp, Science science) {
+		corpScience[corp][science.ordinal()].increment();
+	}
+
+	/**
+	 * Appends a "match rover accepted throttled" line for each rover connected
+	 * to this match - how many of its commands its request rate limit let
+	 * through, and how many times it held one back. Synthetic rovers are added
+	 * up into one line.
+	 */
+	void reportRequestLimits(StringBuilder out) {
+		Map<String, long[]> counts = new TreeMap<String, long[]>();
+		for (RoverSession session : sessions) {
+			String name = session.getRover().isSynthetic() ? "synthetic" : session.getRoverNameString();
+			long[] count = counts.get(name);
+			if (count == null) {
+				count = new long[2];
+				counts.put(name, count);
+			}
+			TokenBucket limiter = session.getRequestLimiter();
+			count[0] += limiter.getAcceptedCount();
+			count[1] += limiter.getThrottledCount();
+		}
+		for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+			out.append(id).append(' ').append(entry.getKey()).append(' ').append(entry.getValue()[0]).append(' ')
+					.append(entry.getValue()[1]).append('\n');
+		}
+	}
+
+	// the number of science the corporation has gathered so far
+	int getCorpScore(int corp) {
+		long score = 0;
+		for (LongAdder gathered : corpScience[corp]) {
+			score += gathered.sum();
+		}
+		return (int) score;
+	}
+
+	// the number of one kind of science the corporation has gathered so far
+	int getCorpScore(int corp, Science science) {
+		return (int) corpScience[corp][science.ordinal()].sum();
+	}
+
+	void startJournal(String fileName) throws IOException {
+		journal = new MatchJournal(fileName, mapName, startTime);
+	}
+
+	void closeJournal() {
+		MatchJournal j = journal;
+		if (j != null) {
+			try {
+				j.close();
+			} catch (IOException e) {
+				System.err.println("SwarmServer: could not close the journal of match " + id + " - " + e.getMessage());
+			}
+		}
+	}
+
+	// MOVE changes roverLocations without taking a lock - RoverLocations.moveRover claims the
+	// destination atomically and only succeeds if the rover is still where we found it, so rovers
+	// in different parts of the map move in parallel and two rovers never share a location.
+	// Which terrain each drive type can cross is looked up in MovementRules.
+	// now is the game time the command is run at, which is also what the journal records
+	Coord doMove(Rover thisRover, MoveDirection requestedMoveDir, long now) {
+		return MovementRules.move(thisRover, requestedMoveDir, now, planetMap, roverLocations);
+	}
+
+	boolean checkValidLocation(Coord loc) {
+		return planetMap.getTerrainStore().contains(loc.xpos, loc.ypos);
+	}
+
+	@Override
+	public String toString() {
+		return id + " on " + mapName;
+	}
+}
@@ -0,0 +1,40 @@
+package controlServer;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+/**
+ * Run periodically by SwarmServer.scheduler when started with -metrics=file - appends a time stamped
+ * ServerMetrics report to the file so runs before and after a change can be compared.
+ */
+class MetricsDump implements Runnable {
+	private final String fileName;
+
+	MetricsDump(String fileName) {
+		this.fileName = fileName;
+	}
+
+	public void run() {
+		StringBuilder report = new StringBuilder();
+		report.append("# ").append(new Date()).append('\n');
+		SwarmServer.metrics.report(report);
+		report.append('\n');
+
+		Writer out = null;
+		try {
+			out = new FileWriter(fileName, true);
+			out.write(report.toString());
+		} catch (IOException e) {
+			System.err.println("SwarmServer: could not write metrics to " + fileName + " - " + e.getMessage());
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+}
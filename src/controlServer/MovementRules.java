@@ -0,0 +1,119 @@
+package controlServer;
+
+import common.Coord;
+import common.PlanetMap;
+import common.Rover;
+import common.RoverLocations;
+import enums.MoveDirection;
+import enums.RoverDriveType;
+import enums.Terrain;
+
+/**
+ * The rules for moving a rover one square, kept as lookup tables built once
+ * instead of a branch per drive type and direction.
+ *
+ * CAN_MOVE[drive][current terrain][destination terrain] says whether a rover
+ * with that drive may make the move, and TIME_PER_SQUARE[drive] is how long
+ * it has to wait between moves. A new drive type or terrain only needs a line
+ * in the static block below.
+ *
+ * The game state is passed in rather than taken from SwarmServer, so the same
+ * rules can be applied to any map.
+ */
+public final class MovementRules {
+	private static final int DRIVE_COUNT = RoverDriveType.values().length;
+	private static final int TERRAIN_COUNT = Terrain.values().length;
+
+	private static final boolean[][][] CAN_MOVE = new boolean[DRIVE_COUNT][TERRAIN_COUNT][TERRAIN_COUNT];
+	private static final long[] TIME_PER_SQUARE = new long[DRIVE_COUNT];
+
+	static {
+		// wheels get stuck in sand and can't climb onto rocks
+		addDrive(RoverDriveType.WHEELS, SwarmServer.WHEELS_TIME_PER_SQUARE,
+				new Terrain[] { Terrain.SAND },
+				new Terrain[] { Terrain.ROCK, Terrain.NONE });
+		// treads get stuck on rocks
+		addDrive(RoverDriveType.TREADS, SwarmServer.TREADS_TIME_PER_SQUARE,
+				new Terrain[] { Terrain.ROCK },
+				new Terrain[] { Terrain.NONE });
+		// walkers also get stuck in sand
+		addDrive(RoverDriveType.WALKER, SwarmServer.WALKER_TIME_PER_SQUARE,
+				new Terrain[] { Terrain.SAND },
+				new Terrain[] { Terrain.NONE });
+		// RoverDriveType.NONE has no entries and never moves
+	}
+
+	private MovementRules() {
+	}
+
+	private static void addDrive(RoverDriveType drive, long timePerSquare, Terrain[] stuckOn, Terrain[] cannotEnter) {
+		TIME_PER_SQUARE[drive.ordinal()] = timePerSquare;
+		for (Terrain from : Terrain.values()) {
+			for (Terrain to : Terrain.values()) {
+				CAN_MOVE[drive.ordinal()][from.ordinal()][to.ordinal()] = !contains(stuckOn, from) && !contains(cannotEnter, to);
+			}
+		}
+	}
+
+	private static boolean contains(Terrain[] terrains, Terrain ter) {
+		for (Terrain t : terrains) {
+			if (t == ter) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static boolean canMove(RoverDriveType drive, Terrain from, Terrain to) {
+		return CAN_MOVE[drive.ordinal()][from.ordinal()][to.ordinal()];
+	}
+
+	public static long getTimePerSquare(RoverDriveType drive) {
+		return TIME_PER_SQUARE[drive.ordinal()];
+	}
+
+	/**
+	 * @return the first time at which the rover's drive has cooled down from its last move
+	 */
+	public static long getReadyTime(Rover rover) {
+		return rover.getRoverLastMoveTime() + TIME_PER_SQUARE[rover.getRoverDrive().ordinal()] + 1;
+	}
+
+	/**
+	 * Tries to move the rover one square in the given direction.
+	 *
+	 * @param now the current time, compared against the rover's last move time
+	 * @return the rover position after the attempt
+	 */
+	public static Coord move(Rover rover, MoveDirection dir, long now, PlanetMap planetMap, RoverLocations roverLocations) {
+		Coord roverPos = roverLocations.getLocation(rover.getId());
+		int drive = rover.getRoverDrive().ordinal();
+
+		// too soon after the last move
+		if (rover.getRoverLastMoveTime() + TIME_PER_SQUARE[drive] >= now || dir == MoveDirection.NONE) {
+			return roverPos;
+		}
+
+		int xpos = roverPos.xpos + dir.getXOffset();
+		int ypos = roverPos.ypos + dir.getYOffset();
+		if (xpos < 0 || ypos < 0 || xpos >= planetMap.getWidth() || ypos >= planetMap.getHeight()) {
+			// On the edge, returns rovers current position unchanged
+			return roverPos;
+		}
+
+		Terrain from = planetMap.getTerrain(roverPos);
+		Terrain to = planetMap.getTerrain(xpos, ypos);
+		if (!CAN_MOVE[drive][from.ordinal()][to.ordinal()]) {
+			return roverPos;
+		}
+
+		// Move to the new map square, unless occupied by another rover
+		Coord dest = new Coord(xpos, ypos);
+		if (roverLocations.moveRover(rover.getId(), roverPos, dest)) {
+			// if moveRover call is successful then update latest move time value
+			rover.updateMoveTime(now);
+			return dest;
+		}
+		return roverPos;
+	}
+}
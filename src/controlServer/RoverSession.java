@@ -0,0 +1,703 @@
+package controlServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import common.Coord;
+import common.MatchJournal;
+import common.Rover;
+import common.ScanDelta;
+import common.ScanMap;
+import common.ScanMapCodec;
+import common.ScienceLocations;
+import common.TokenBucket;
+import enums.MoveDirection;
+import enums.RoverName;
+import enums.RoverToolType;
+import enums.Science;
+import enums.Terrain;
+
+/**
+ * Holds the state of one connected rover and runs its commands against the
+ * game state of the Match it is playing in.
+ *
+ * This is independent of how the rover is connected, so the same command
+ * logic is used by the blocking Handlers and by the SelectorServer
+ * event loops. Replies are appended to a StringBuilder as newline terminated
+ * lines and it is up to the caller to put them on the wire.
+ *
+ * EVENT lines for the topics a rover has SUBSCRIBEd to are not replies to a
+ * command, and may be raised on other threads, so they go out through an
+ * EventSink supplied by the connection instead.
+ */
+class RoverSession {
+	/**
+	 * Where a connection takes the EVENT lines pushed to its rover. Must be safe
+	 * to call from any thread, and must not wait on the rover - READY events are
+	 * pushed from SwarmServer.eventScheduler, which every rover shares.
+	 */
+	interface EventSink {
+		// line ends with '\n'
+		void push(String line);
+
+		// drops the connection, once the match is over
+		void disconnect();
+	}
+
+	// what a rover can add after its name when it answers SUBMITNAME, to pick the match it plays in
+	static final String MATCH_KEYWORD = "MATCH";
+
+	private final Match match;
+
+	//currently using these as the Rover Object attributes
+	// this should be replaced with a Rover Object
+	private String roverNameString;
+	private Rover rover;
+	// SwarmServer.getCorpNumber, worked out once for the metrics
+	private final int corpNumber;
+	// what the metrics count this rover's commands under - synthetic rovers all go under NONE
+	private final RoverName metricsName;
+
+	// keeps track of Rover's current location
+	private int xpos = 0;
+	private int ypos = 0;
+
+	// SCAN replies are JSON unless the rover negotiates the compact binary form or deltas
+	enum ScanFormat { JSON, BINARY, DELTA }
+	private ScanFormat scanFormat = ScanFormat.JSON;
+
+	// the last window sent in DELTA mode, and a spare buffer for the next one
+	private Coord lastScanCenter = null;
+	private byte[] lastScanTiles = null;
+	private byte[] scanTiles = null;
+
+	// allows CALLS_PER_SECOND_LIMIT commands a second, with bursts of up to the same number
+	private final TokenBucket requestLimiter;
+
+	// replies to the commands between BATCH and BATCH_END are held here and sent together
+	static final int MAX_BATCH_SIZE = 100;
+	private final StringBuilder batchReply = new StringBuilder();
+	private boolean inBatch = false;
+	private int batchSize = 0;
+	// the batch went over MAX_BATCH_SIZE - the rest of it, up to its BATCH_END, is thrown away
+	private boolean skippingBatch = false;
+
+	// SUBSCRIBE topics - LOC: rover moved, MOVE: result of every MOVE, READY: drive has cooled down
+	private volatile EventSink eventSink = null;
+	private volatile boolean subscribedLoc = false;
+	private volatile boolean subscribedMove = false;
+	private volatile boolean subscribedReady = false;
+	// set while a READY event is waiting on the scheduler, so there is only ever one
+	private final AtomicBoolean readyPending = new AtomicBoolean(false);
+	private volatile boolean closed = false;
+
+	// game time the command being run was received at - every rule it checks uses this one time,
+	// so replaying the journal gives the same results
+	private long commandTime;
+
+
+	/**
+	 * Starts the session for a rover that has answered SUBMITNAME, either with
+	 * its name alone, to play in the default match, or with its name followed by
+	 * MATCH and a match id, e.g. "ROVER_07 MATCH final-3".
+	 *
+	 * @throws IOException if there is no such match and another can't be started,
+	 *         or the match is already over
+	 */
+	static RoverSession connect(String submitted) throws Exception {
+		String[] parts = submitted.trim().split("\\s+");
+		String matchId = null;
+		if (parts.length == 3 && parts[1].equals(MATCH_KEYWORD)) {
+			matchId = parts[2];
+		} else if (parts.length != 1) {
+			throw new IOException("expected a rover name, optionally followed by " + MATCH_KEYWORD + " and a match id, not " + submitted);
+		}
+		Match match = SwarmServer.findMatch(matchId);
+		if (!match.roversAreGO) {
+			throw new IOException("match " + match.getId() + " is over");
+		}
+		return new RoverSession(match, parts[0]);
+	}
+
+	RoverSession(Match match, String roverNameString) throws IOException {
+		this.match = match;
+		this.roverNameString = roverNameString;
+
+		// TODO check to see if this rover thread already exists.
+		// if exists and is active - refuse connection
+		// if exists and socket is not active - reconnect to that socket
+		// enforce time limit between reconnection to minimize spamming
+
+		// make and instantiate a Rover object connected to this session
+		RoverName rname = RoverName.getEnum(roverNameString);
+		int synthetic = SyntheticRovers.parse(roverNameString, SwarmServer.syntheticRoverLimit);
+		if (synthetic >= 0) {
+			this.rover = SyntheticRovers.create(synthetic, match);
+		} else {
+			this.rover = new Rover(rname, match.clock);
+		}
+		this.corpNumber = SwarmServer.getCorpNumber(rover);
+		this.metricsName = rover.isSynthetic() ? RoverName.NONE : rname;
+		this.requestLimiter = new TokenBucket(SwarmServer.CALLS_PER_SECOND_LIMIT, SwarmServer.CALLS_PER_SECOND_LIMIT, match.clock);
+
+		match.addSession(this);
+
+		MatchJournal journal = match.journal;
+		if (journal != null && !rover.isSynthetic()) {
+			Coord pos = match.roverLocations.getLocation(rname);
+			// the rover's first move is timed from when it connected
+			journal.append(MatchJournal.Command.CONNECT, rname.ordinal(), 0, Science.NONE.ordinal(),
+					rover.getRoverLastMoveTime(), pos.xpos, pos.ypos);
+		}
+	}
+
+	Match getMatch() {
+		return match;
+	}
+
+	String getRoverNameString() {
+		return roverNameString;
+	}
+
+	Rover getRover() {
+		return rover;
+	}
+
+	TokenBucket getRequestLimiter() {
+		return requestLimiter;
+	}
+
+	void setEventSink(EventSink eventSink) {
+		this.eventSink = eventSink;
+	}
+
+	/**
+	 * Called by the connection once the rover has gone, so no more events are sent.
+	 */
+	void close() {
+		closed = true;
+		eventSink = null;
+		match.removeSession(this);
+		if (rover.isSynthetic()) {
+			match.roverLocations.removeSyntheticRover(rover.getId());
+		}
+	}
+
+	/**
+	 * Called by the match when it is over - the connection is dropped, and
+	 * closes the session as it goes.
+	 */
+	void disconnect() {
+		EventSink sink = eventSink;
+		if (sink != null) {
+			sink.disconnect();
+		}
+	}
+
+	/**
+	 * Takes one command from this rover's request rate limit. Rovers that go over the
+	 * limit are slowed down rather than disconnected - the caller waits and tries again.
+	 *
+	 * @return 0 if the next command can be run now, otherwise how many milliseconds
+	 *         of game time to wait before trying again
+	 */
+	long tryAcquireRequest() {
+		long delay = requestLimiter.tryAcquire();
+		if (delay > 0) {
+			SwarmServer.metrics.recordThrottled(metricsName, corpNumber);
+		}
+		return delay;
+	}
+
+	/**
+	 * Runs a single command line received from the rover.
+	 *
+	 * The commands sent between a "BATCH" line and a "BATCH_END" line are run one at a
+	 * time as they arrive, but their replies are only sent when BATCH_END is received,
+	 * in order and wrapped in BATCH / BATCH_END lines, so a rover can pipeline several
+	 * commands and pay for a single round trip.
+	 *
+	 * A batch may hold at most MAX_BATCH_SIZE commands. The command that goes over is
+	 * answered with a single "BATCH_ERROR" line in place of the batch's replies, and it
+	 * and the rest of the batch, up to and including its BATCH_END, are not run. The
+	 * commands before it have been run, but their replies are dropped. As a SCAN among
+	 * them may have been a delta the rover never got, the next SCAN is sent as a full
+	 * window, the same as after a SCAN_FORMAT.
+	 *
+	 * @param input the command line without its line terminator, may be null
+	 * @param reply the reply lines are appended here, each ending with '\n'
+	 * @return false if the connection to this rover should be dropped
+	 */
+	boolean handle(String input, StringBuilder reply) throws Exception {
+		//condition the input to empty string if null
+		if (input == null) {
+			input = "";
+		}
+
+		if (skippingBatch) {
+			skippingBatch = !input.equals("BATCH_END");
+			return true;
+		}
+		if (input.equals("BATCH")) {
+			// a BATCH inside a batch is ignored
+			inBatch = true;
+			return true;
+		}
+		if (!inBatch) {
+			return timeCommand(input, reply);
+		}
+		if (input.equals("BATCH_END")) {
+			endBatch(reply);
+			return true;
+		}
+		if (batchSize >= MAX_BATCH_SIZE) {
+			// sent straight away, so the rover doesn't wait for replies that aren't coming
+			reply.append("BATCH_ERROR\n");
+			batchReply.setLength(0);
+			lastScanCenter = null;
+			lastScanTiles = null;
+			batchSize = 0;
+			inBatch = false;
+			skippingBatch = true;
+			return true;
+		}
+		batchSize++;
+		return timeCommand(input, batchReply);
+	}
+
+	private void endBatch(StringBuilder reply) {
+		reply.append("BATCH\n").append(batchReply).append("BATCH_END\n");
+		batchReply.setLength(0);
+		batchSize = 0;
+		inBatch = false;
+	}
+
+	// runs the command and records how long it took in SwarmServer.metrics, and what it did in the match journal
+	private boolean timeCommand(String input, StringBuilder reply) throws Exception {
+		long start = System.nanoTime();
+		commandTime = match.clock.currentTimeMillis();
+		try {
+			// synthetic rovers can't be replayed, so are left out
+			MatchJournal journal = rover.isSynthetic() ? null : match.journal;
+			if (journal == null) {
+				return runCommand(input, reply);
+			}
+			int cargoBefore = rover.scienceCargo.size();
+			boolean keepConnection = runCommand(input, reply);
+			journalCommand(journal, input, cargoBefore);
+			return keepConnection;
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			SwarmServer.metrics.recordCommand(metricsName, corpNumber, input, elapsed);
+			match.commandLatency.record(elapsed);
+		}
+	}
+
+	private boolean runCommand(String input, StringBuilder reply) throws Exception {
+		// debug checking
+		//System.out.println("SWARM_SERVER_"+roverNameString+ "_thread: recieved command " + input);
+
+
+
+		/**
+		 * ******************** MOVE **********************
+		 */
+		if (input.startsWith("MOVE")){
+			//System.out.println("SWARM: ------ MOVE ------"); //debug test input parsing
+			// trim header off of input string and decode the direction once
+			MoveDirection dir = MoveDirection.getEnum(input.substring(5));
+
+			// invoke the doMove method to update the Rover position in the match's RoverLocations (roverLocations)
+			// this method also returns a Coord with the Rover position after the move attempt.
+			Coord fromPos = match.roverLocations.getLocation(rover.getId());
+			boolean coolingDown = commandTime < MovementRules.getReadyTime(rover);
+			Coord toPos = match.doMove(rover, dir, commandTime);
+			boolean moved = !toPos.equals(fromPos);
+
+			// Update the two tiles on the GUI display if the rover did move
+			if (moved) {
+				if (!rover.isSynthetic()) {
+					SwarmServer.roverMovedDisplayUpdate(match, fromPos, toPos);
+				}
+				if (subscribedLoc) {
+					pushEvent("EVENT LOC " + toPos.xpos + " " + toPos.ypos + "\n");
+				}
+			}
+			if (!moved && !coolingDown && match.roverLocations.containsCoord(fromPos.xpos + dir.getXOffset(), fromPos.ypos + dir.getYOffset())) {
+				// another rover held the destination, or took it first
+				SwarmServer.metrics.recordMoveClaimFailed();
+			}
+			if (subscribedMove) {
+				String result = moved ? "ACCEPTED" : coolingDown ? "COOLDOWN" : "BLOCKED";
+				pushEvent("EVENT MOVE " + result + " " + toPos.xpos + " " + toPos.ypos + "\n");
+			}
+			// every MOVE is followed by a READY, straight away if the rover could move again now
+			if (subscribedReady) {
+				scheduleReady();
+			}
+
+
+
+		/**
+		 * ******************** LOC **********************
+		 */
+		// gets the current position of the rover
+		} else if (input.startsWith("LOC")){
+			//System.out.println("SWARM: ------ LOC ------"); //debug test input parsing
+			// does not need to synchronize-lock scienceLocations because not changing any values
+			Coord roverPos = match.roverLocations.getLocation(rover.getId());
+			xpos = roverPos.xpos;
+			ypos = roverPos.ypos;
+			reply.append("LOC ").append(xpos).append(' ').append(ypos).append('\n');
+
+
+
+		/**
+		 * ***************** START_LOC *******************
+		 */
+		// gets the current position of the rover
+		} else if (input.startsWith("START_LOC")){
+			//System.out.println("SWARM: ------ START_LOC ------"); //debug test input parsing
+			// does not need to synchronize-lock scienceLocations because not changing any values
+			Coord startPos = match.planetMap.getStartPosition();
+			reply.append("START_LOC ").append(startPos.xpos).append(' ').append(startPos.ypos).append('\n');
+
+
+
+
+		/**
+		 * **************** TARGET_LOC ********************
+		 */
+		// gets the current position of the rover
+		} else if (input.startsWith("TARGET_LOC")){
+			//System.out.println("SWARM: ------ TARGET_LOC ------"); //debug test input parsing
+			// does not need to synchronize-lock scienceLocations because not changing any values
+			Coord targetPos = match.planetMap.getTargetPosition();
+			reply.append("TARGET_LOC ").append(targetPos.xpos).append(' ').append(targetPos.ypos).append('\n');
+
+
+
+
+		/**
+		 * ***************** SCAN_FORMAT *******************
+		 */
+		// selects the encoding of SCAN replies - "SCAN_FORMAT BINARY", "SCAN_FORMAT DELTA" or "SCAN_FORMAT JSON"
+		// replies with the format now in use; bots that never send this keep getting JSON
+		} else if (input.startsWith("SCAN_FORMAT")){
+			String format = input.substring(11).trim();
+			if (format.equals("BINARY")) {
+				scanFormat = ScanFormat.BINARY;
+			} else if (format.equals("DELTA")) {
+				scanFormat = ScanFormat.DELTA;
+			} else {
+				scanFormat = ScanFormat.JSON;
+			}
+			// the next delta starts again from a full window
+			lastScanCenter = null;
+			lastScanTiles = null;
+			reply.append("SCAN_FORMAT ").append(scanFormat.name()).append('\n');
+
+
+
+		/**
+		 * ******************** SCAN **********************
+		 */
+		// return json array of map area close around the rover
+		// may check rover tool for mastcam to increase range  of map results - maybe
+		} else if (input.startsWith("SCAN")){
+
+			if (scanFormat == ScanFormat.DELTA) {
+				// single line - only the tiles that changed since the last SCAN, Base64 encoded ScanDelta bytes
+				reply.append("SCAN_DELTA ").append(retriveScanDelta(rover)).append('\n');
+			} else if (scanFormat == ScanFormat.BINARY) {
+				// single line - header and Base64 encoded ScanMapCodec bytes
+				reply.append("SCAN_BIN ").append(ScanMapCodec.encodeToString(buildScanMap(rover))).append('\n');
+			} else {
+				String jsonScanMap = retriveScanMap(rover);
+
+				reply.append("SCAN\n"); //returns command header as check
+
+				//return json string to Rover
+				reply.append(jsonScanMap).append('\n');
+
+				//to mark the end of the json string
+				reply.append("SCAN_END\n");
+			}
+
+
+
+		/**
+		 * ******************** TIMER **********************
+		 */
+		// returns the total number of seconds remaining on the countdown timer
+		} else if (input.startsWith("TIMER")){
+			int timeRemaining = 0;
+			timeRemaining = (SwarmServer.MAXIMUM_ACTIVITY_TIME_LIMIT - (int)(commandTime - match.startTime)) / 1000;
+			reply.append("TIMER ").append(timeRemaining).append('\n');
+
+
+
+		/**
+		 * ******************* GATHER ***********************
+		 */
+		// collect the science using either a drill or harvester
+		// GATHER is a command with no return response
+		} else if(input.startsWith("GATHER")) {
+
+			// does not need to synchronize-lock roverLocations because not changing any values
+			Coord roverPos = match.roverLocations.getLocation(rover.getId());
+			ScienceLocations scienceLocations = match.scienceLocations;
+
+			// no lock - takeScience claims the science atomically, so if two rovers gather the
+			// same science at once only one of them gets it, and gathers elsewhere never wait
+			// true if this coordinate has science and gather cooldown has been satisfied
+			if(scienceLocations.checkLocation(roverPos)
+					&& (rover.getRoverLastGatherTime() + SwarmServer.GATHER_TIME_PER_TILE < commandTime)){
+
+				boolean canDrill = (rover.getTool_1() == RoverToolType.DRILL || (rover.getTool_2() == RoverToolType.DRILL)
+						 && (match.planetMap.getTerrain(roverPos) == Terrain.ROCK || match.planetMap.getTerrain(roverPos) == Terrain.GRAVEL));
+				boolean canExcavate = (rover.getTool_1() == RoverToolType.EXCAVATOR || (rover.getTool_2() == RoverToolType.EXCAVATOR)
+						 && (match.planetMap.getTerrain(roverPos) == Terrain.SOIL || match.planetMap.getTerrain(roverPos) == Terrain.SAND));
+
+				if(canDrill || canExcavate){
+					// remove the science from scienceLocations and store in rover scienceCargo
+					Science foundScience = scienceLocations.takeScience(roverPos);
+					if(foundScience == Science.NONE){
+						// another rover got to it first
+						SwarmServer.metrics.recordGatherClaimFailed();
+					} else {
+						int corp = SwarmServer.getCorpNumber(rover);
+						rover.scienceCargo.add(foundScience);
+						if (!rover.isSynthetic()) {
+							SwarmServer.scienceRemovedDisplayUpdate(match, roverPos);
+						}
+						match.recordGathered(corp, foundScience);
+						System.out.println("SwarmServer: match " + match.getId() + " corp " + corp + " total science = " + match.getCorpScore(corp));
+					}
+				}
+			}
+			SwarmServer.scoreDisplayUpdate(match);
+
+
+
+
+		/**
+		 * ******************* CARGO ***********************
+		 */
+		} else if(input.startsWith("CARGO")) {
+		// Check to see what is in the rovers cargo hold (collected science).
+			Gson gson = new GsonBuilder()
+					.setPrettyPrinting()
+					.enableComplexMapKeySerialization()
+					.create();
+			// return contents of scienceCargo
+			String jsonCargoList = gson.toJson(rover.scienceCargo);
+
+			reply.append("CARGO\n"); //returns command header as check
+
+			// return an ArrayList of rover equipment - json string?
+			reply.append(jsonCargoList).append('\n');
+
+			reply.append("CARGO_END\n");
+
+
+
+
+		/**
+		 * ******************* EQUIPMENT ***********************
+		 */
+		} else if(input.startsWith("EQUIPMENT")) {
+			Gson gson = new GsonBuilder()
+					.setPrettyPrinting()
+					.enableComplexMapKeySerialization()
+					.create();
+			ArrayList<String> eqList = new ArrayList<String>();
+
+			eqList.add(rover.getRoverDrive().toString());
+			eqList.add(rover.getTool_1().toString());
+			eqList.add(rover.getTool_2().toString());
+
+			String jsonEqList = gson.toJson(eqList);
+
+			//System.out.println("SWARM_"+roverNameString+ "_thread: returning work EQUIPMENT");
+			reply.append("EQUIPMENT\n"); //returns command header as check
+
+			// return an ArrayList of rover equipment - json string?
+			reply.append(jsonEqList).append('\n');
+
+			reply.append("EQUIPMENT_END\n");
+
+
+
+
+		/**
+		 * ******************** STATS **********************
+		 */
+		// returns the server's metrics as text lines, ended by STATS_END
+		} else if (input.startsWith("STATS")){
+			reply.append("STATS\n");
+			SwarmServer.metrics.report(reply);
+			reply.append("STATS_END\n");
+
+
+
+		/**
+		 * ****************** SUBSCRIBE ********************
+		 */
+		// "SUBSCRIBE LOC", "SUBSCRIBE MOVE" or "SUBSCRIBE READY" - from then on the server pushes
+		// "EVENT LOC x y" when the rover moves, "EVENT MOVE ACCEPTED|COOLDOWN|BLOCKED x y" after every MOVE
+		// and "EVENT READY" once the drive has cooled down; replies with the topic, or an empty line if unknown
+		} else if (input.startsWith("SUBSCRIBE") || input.startsWith("UNSUBSCRIBE")){
+			boolean subscribe = input.startsWith("SUBSCRIBE");
+			String topic = input.substring(subscribe ? 9 : 11).trim();
+			if (topic.equals("LOC")) {
+				subscribedLoc = subscribe;
+			} else if (topic.equals("MOVE")) {
+				subscribedMove = subscribe;
+			} else if (topic.equals("READY")) {
+				subscribedReady = subscribe;
+			} else {
+				topic = null;
+			}
+
+			if (topic == null) {
+				reply.append('\n');
+			} else {
+				reply.append(subscribe ? "SUBSCRIBE " : "UNSUBSCRIBE ").append(topic).append('\n');
+			}
+			// tells a new READY subscriber when it can make its first move
+			if (subscribe && "READY".equals(topic)) {
+				scheduleReady();
+			}
+
+
+
+		/**
+		 * *********** DEFAULT - no recognizable command received ****************
+		 */
+		} else {
+			//default response
+			reply.append('\n');
+		}
+		return true;
+	}
+
+
+	// ########################################################################################################
+	// support methods
+
+
+	// *** JOURNAL ***
+	// records the command with the rover's position afterwards and anything it gathered
+	private void journalCommand(MatchJournal journal, String input, int cargoBefore) throws IOException {
+		MatchJournal.Command command = MatchJournal.Command.fromLine(input);
+		int arg = 0;
+		if (command == MatchJournal.Command.MOVE) {
+			arg = MoveDirection.getEnum(input.substring(5)).ordinal();
+		} else if (command == MatchJournal.Command.SCAN || command == MatchJournal.Command.SCAN_FORMAT) {
+			arg = scanFormat.ordinal();
+		}
+		Science gathered = Science.NONE;
+		if (rover.scienceCargo.size() > cargoBefore) {
+			gathered = rover.scienceCargo.get(rover.scienceCargo.size() - 1);
+		}
+		Coord pos = match.roverLocations.getLocation(rover.getId());
+		journal.append(command, rover.getRoverName().ordinal(), arg, gathered.ordinal(), commandTime, pos.xpos, pos.ypos);
+	}
+
+	// *** EVENTS ***
+	private void pushEvent(String line) {
+		EventSink sink = eventSink;
+		if (sink != null) {
+			sink.push(line);
+		}
+	}
+
+	// sends READY now if the drive has cooled down, otherwise has the scheduler send it when it does
+	private void scheduleReady() {
+		if (!readyPending.compareAndSet(false, true)) {
+			return; // one is already on its way
+		}
+		long wait = MovementRules.getReadyTime(rover) - match.clock.currentTimeMillis();
+		if (wait <= 0) {
+			readyPending.set(false);
+			pushEvent("EVENT READY\n");
+		} else {
+			SwarmServer.eventScheduler.schedule(readyCheck, match.clock.toRealMillis(wait), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// run on the scheduler - checks the game clock again, which may not run along with real time
+	private final Runnable readyCheck = new Runnable() {
+		public void run() {
+			if (closed) {
+				return;
+			}
+			long wait = MovementRules.getReadyTime(rover) - match.clock.currentTimeMillis();
+			if (wait > 0) {
+				SwarmServer.eventScheduler.schedule(this, Math.max(1, match.clock.toRealMillis(wait)), TimeUnit.MILLISECONDS);
+				return;
+			}
+			readyPending.set(false);
+			if (subscribedReady) {
+				pushEvent("EVENT READY\n");
+			}
+		}
+	};
+
+	// *** SCAN ***
+	private String retriveScanMap(Rover thisRover) {
+		//System.out.println("SWARM: ------ SCAN ------"); //debug test input parsing
+		Gson gson = new GsonBuilder()
+				.setPrettyPrinting()
+				.enableComplexMapKeySerialization()
+				.create();
+
+		// convert scanMap object to json and return to rover
+		String jsonScanMap = gson.toJson(buildScanMap(thisRover));
+
+		return jsonScanMap;
+	}
+
+	private ScanMap buildScanMap(Rover thisRover) {
+		Coord roverPos = match.roverLocations.getLocation(thisRover.getId());
+
+		// pass parameters to PlanetMap class to get a subset map of the surrounding area
+		// science is filtered by the sensors the Rover is equipped with
+		return match.planetMap.getScanMap(roverPos, scanRange(thisRover), match.roverLocations, match.scienceLocations, thisRover.getVisibleScience());
+	}
+
+	// *** SCAN_DELTA ***
+	// compares the window with the one last sent to this rover and encodes only what differs
+	private String retriveScanDelta(Rover thisRover) {
+		Coord roverPos = match.roverLocations.getLocation(thisRover.getId());
+		int scanRange = scanRange(thisRover);
+		if (scanTiles == null || scanTiles.length != scanRange * scanRange) {
+			scanTiles = new byte[scanRange * scanRange];
+		}
+		match.planetMap.getScanTiles(roverPos, scanRange, match.roverLocations, match.scienceLocations, thisRover.getVisibleScience(), scanTiles);
+
+		String delta = ScanDelta.encodeToString(roverPos, scanRange, scanTiles, lastScanCenter, lastScanTiles);
+
+		// what was just sent becomes the base for the next delta, and the old base the next buffer
+		byte[] spare = lastScanTiles;
+		lastScanTiles = scanTiles;
+		scanTiles = spare;
+		lastScanCenter = roverPos;
+		return delta;
+	}
+
+	// length of a side of the scan map array !!! must be odd number !!!
+	private int scanRange(Rover thisRover) {
+		// Adjust scanMap range with use of scan range booster
+		if(thisRover.getTool_1() == RoverToolType.RANGE_BOOTER || thisRover.getTool_2() == RoverToolType.RANGE_BOOTER){
+			return SwarmServer.BOOSTED_SCANMAP_RANGE;
+		}
+		return SwarmServer.STANDARD_SCANMAP_RANGE;
+	}
+}
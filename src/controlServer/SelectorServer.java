@@ -0,0 +1,424 @@
+package controlServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import common.GameClock;
+
+/**
+ * Non-blocking alternative to spawning one Handler thread per rover.
+ *
+ * The calling thread accepts connections and hands them round-robin to a fixed number of event loops. Each loop
+ * owns a Selector, splits the incoming bytes into protocol lines and runs them through a RoverSession, so the
+ * number of server threads stays bounded no matter how many rovers connect.
+ */
+class SelectorServer {
+    // lines longer than this are not part of the rover protocol; drop the connection instead of buffering forever
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    // stop reading from a rover that is not draining its replies once this much output is queued
+    static final int MAX_QUEUED_OUTPUT = 1024 * 1024;
+
+    private final ServerSocketChannel serverSocket;
+    private final EventLoop[] loops;
+    private int nextLoop = 0;
+
+    private final int DEBUG_LEVEL = 0;
+    private final String DEBUG_PREFIX = "[SelectorServer] ";
+    private void log(int level, String str) {
+        if (level <= DEBUG_LEVEL) {
+            System.out.println(DEBUG_PREFIX + str);
+        }
+    }
+
+    SelectorServer(int port, int loopCount) throws IOException {
+        serverSocket = ServerSocketChannel.open();
+        serverSocket.bind(new InetSocketAddress(port));
+
+        loops = new EventLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+            loops[i].start();
+        }
+        log(0, "listening on " + serverSocket.getLocalAddress() + " with " + loops.length + " event loops");
+    }
+
+    /**
+     * Accepts connections until the server socket is closed. Accepting is done with a blocking channel on the calling
+     * thread since it is the only thing that thread does.
+     */
+    void run() throws IOException {
+        try {
+            while (true) {
+                SocketChannel client = serverSocket.accept();
+                client.configureBlocking(false);
+                client.socket().setTcpNoDelay(true);
+                loops[nextLoop].register(client);
+                nextLoop = (nextLoop + 1) % loops.length;
+            }
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Per-connection state attached to the SelectionKey.
+     */
+    private static class Connection {
+        private final SocketChannel channel;
+        private final Queue<ByteBuffer> out = new ArrayDeque<>();
+        private final StringBuilder reply = new StringBuilder();
+        private byte[] in = new byte[256];
+        private int inLength = 0;
+        private int queuedBytes = 0;
+        private RoverSession session; // null until the rover has answered SUBMITNAME
+        private boolean paused = false; // over its request rate - not read from until resumeTime
+        private long resumeTime;        // on the clock of the rover's match
+        private final Queue<String> events = new ConcurrentLinkedQueue<>(); // pushed from other threads
+        private volatile boolean disconnectRequested = false; // from another thread, e.g. at the end of the match
+        private boolean closed = false;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * One selector thread. Channels are handed over through a queue because they can only be registered safely from
+     * the thread that is running select().
+     */
+    private class EventLoop extends Thread {
+        private final Selector selector;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(16 * 1024);
+        private final Queue<SocketChannel> toRegister = new ConcurrentLinkedQueue<>();
+        private final Queue<SelectionKey> pausedKeys = new ArrayDeque<>();
+        private final Queue<SelectionKey> toNotify = new ConcurrentLinkedQueue<>();
+
+        EventLoop(int index) throws IOException {
+            super("SwarmServer-loop-" + index);
+            selector = Selector.open();
+        }
+
+        void register(SocketChannel client) {
+            toRegister.add(client);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                // register channels accepted since the last pass and ask them for their name
+                SocketChannel client;
+                while ((client = toRegister.poll()) != null) {
+                    Connection conn = new Connection(client);
+                    SelectionKey key = null;
+                    try {
+                        key = client.register(selector, SelectionKey.OP_READ, conn);
+                        SwarmServer.metrics.connectionOpened();
+                        conn.reply.append("SUBMITNAME\n");
+                        flushReply(key, conn);
+                    } catch (IOException e) {
+                        log(1, "failed to register " + client + ": " + e.getMessage());
+                        if (key != null) {
+                            close(key, conn);
+                        } else {
+                            closeQuietly(client);
+                        }
+                    }
+                }
+
+                sendEvents();
+
+                try {
+                    if (pausedKeys.isEmpty()) {
+                        selector.select(); // blocks until a channel is ready or wakeup()
+                    } else {
+                        // also wake up in time to resume the throttled rovers
+                        selector.select(Math.max(1, realMillisToNextResume()));
+                    }
+                } catch (IOException e) {
+                    System.err.println(DEBUG_PREFIX + "IOException in select(): " + e.getMessage());
+                    break;
+                }
+
+                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                while (iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove(); // remove to avoid reprocessing
+
+                    if (!key.isValid()) continue;
+
+                    Connection conn = (Connection)key.attachment();
+                    try {
+                        if (key.isWritable()) {
+                            write(key, conn);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key, conn);
+                        }
+                    } catch (Exception e) {
+                        // any failure on one connection only takes down that connection
+                        log(1, "closing " + conn.channel + " - reason: " + e);
+                        close(key, conn);
+                    }
+                }
+
+                resumePaused();
+            }
+        }
+
+        /**
+         * Queues the events other threads have pushed to rovers on this loop since the last pass.
+         */
+        private void sendEvents() {
+            SelectionKey key;
+            while ((key = toNotify.poll()) != null) {
+                if (!key.isValid()) continue;
+
+                Connection conn = (Connection)key.attachment();
+                String line;
+                while ((line = conn.events.poll()) != null) {
+                    conn.reply.append(line);
+                }
+                if (conn.disconnectRequested) {
+                    close(key, conn);
+                    continue;
+                }
+                try {
+                    flushReply(key, conn);
+                } catch (IOException e) {
+                    log(1, "closing " + conn.channel + " - reason: " + e);
+                    close(key, conn);
+                }
+            }
+        }
+
+        // select() waits in real time, while each rover's resumeTime is on the clock of its match
+        private long realMillisToNextResume() {
+            long next = Long.MAX_VALUE;
+            for (SelectionKey key : pausedKeys) {
+                Connection conn = (Connection)key.attachment();
+                GameClock clock = conn.session.getMatch().clock;
+                next = Math.min(next, clock.toRealMillis(conn.resumeTime - clock.currentTimeMillis()));
+            }
+            return next;
+        }
+
+        /**
+         * Carries on with the buffered commands of throttled rovers whose wait is over, and starts reading from them
+         * again unless they get throttled again.
+         */
+        private void resumePaused() {
+            if (pausedKeys.isEmpty()) return;
+
+            // go round the queue once - rovers that are still waiting, or get throttled again, go back on the end
+            int count = pausedKeys.size();
+            for (int n = 0; n < count; n++) {
+                SelectionKey key = pausedKeys.poll();
+                if (!key.isValid()) continue;
+
+                Connection conn = (Connection)key.attachment();
+                if (conn.resumeTime > conn.session.getMatch().clock.currentTimeMillis()) {
+                    pausedKeys.add(key);
+                    continue;
+                }
+
+                conn.paused = false;
+                try {
+                    if (!processLines(key, conn)) {
+                        close(key, conn);
+                    } else if (!conn.paused) {
+                        updateInterest(key, conn);
+                    }
+                } catch (Exception e) {
+                    log(1, "closing " + conn.channel + " - reason: " + e);
+                    close(key, conn);
+                }
+            }
+        }
+
+        private void read(SelectionKey key, Connection conn) throws Exception {
+            while (true) {
+                buffer.clear();
+                int read = conn.channel.read(buffer);
+                if (read == 0) break;
+
+                // negative read means disconnect
+                if (read < 0) {
+                    close(key, conn);
+                    return;
+                }
+
+                // append to this connection's pending bytes
+                buffer.flip();
+                if (conn.inLength + read > conn.in.length) {
+                    if (conn.inLength + read > MAX_LINE_LENGTH) {
+                        throw new IOException("line exceeds " + MAX_LINE_LENGTH + " bytes");
+                    }
+                    byte[] grown = new byte[Math.max(conn.in.length * 2, conn.inLength + read)];
+                    System.arraycopy(conn.in, 0, grown, 0, conn.inLength);
+                    conn.in = grown;
+                }
+                buffer.get(conn.in, conn.inLength, read);
+                conn.inLength += read;
+
+                if (!processLines(key, conn)) {
+                    close(key, conn);
+                    return;
+                }
+                if (conn.paused) return; // leave the rest in the socket until the rover is resumed
+            }
+        }
+
+        /**
+         * Runs every complete line in the connection's input buffer and queues the replies. If the rover goes over its
+         * request rate the connection is paused, leaving the remaining lines in the buffer.
+         * @return false if the connection should be closed
+         */
+        private boolean processLines(SelectionKey key, Connection conn) throws Exception {
+            int start = 0;
+            for (int i = 0; i < conn.inLength; i++) {
+                if (conn.in[i] != '\n') continue;
+
+                if (conn.session != null) {
+                    if (!conn.session.getMatch().roversAreGO) {
+                        return false;
+                    }
+                    long throttleDelay = conn.session.tryAcquireRequest();
+                    if (throttleDelay > 0) {
+                        pause(key, conn, throttleDelay);
+                        break;
+                    }
+                }
+
+                int end = i;
+                if (end > start && conn.in[end - 1] == '\r') end--;
+                String line = new String(conn.in, start, end - start, StandardCharsets.UTF_8);
+                start = i + 1;
+
+                if (conn.session == null) {
+                    System.out.println(line + " has connected to server");
+                    conn.session = RoverSession.connect(line);
+                    conn.session.setEventSink(new ConnectionEvents(key, conn));
+                } else if (!conn.session.handle(line, conn.reply)) {
+                    return false;
+                }
+            }
+
+            // keep any partial line for the next read
+            if (start > 0) {
+                System.arraycopy(conn.in, start, conn.in, 0, conn.inLength - start);
+                conn.inLength -= start;
+            }
+
+            flushReply(key, conn);
+            return true;
+        }
+
+        /**
+         * Encodes the pending reply text and tries to write it straight away, only falling back to OP_WRITE when the
+         * socket buffer is full.
+         */
+        private void flushReply(SelectionKey key, Connection conn) throws IOException {
+            if (conn.reply.length() == 0) return;
+
+            byte[] data = conn.reply.toString().getBytes(StandardCharsets.UTF_8);
+            conn.reply.setLength(0);
+            conn.out.add(ByteBuffer.wrap(data));
+            conn.queuedBytes += data.length;
+            write(key, conn);
+        }
+
+        private void write(SelectionKey key, Connection conn) throws IOException {
+            ByteBuffer buf;
+            while ((buf = conn.out.peek()) != null) {
+                int written = conn.channel.write(buf);
+                conn.queuedBytes -= written;
+
+                // if we couldn't send all of it, try to finish transmitting later
+                if (buf.remaining() > 0) break;
+                conn.out.remove();
+            }
+            updateInterest(key, conn);
+        }
+
+        private void updateInterest(SelectionKey key, Connection conn) {
+            int ops = 0;
+            if (!conn.out.isEmpty()) ops |= SelectionKey.OP_WRITE;
+            // keep reading unless the rover is throttled or has stopped taking its replies
+            if (!conn.paused && conn.queuedBytes < MAX_QUEUED_OUTPUT) ops |= SelectionKey.OP_READ;
+            if (key.interestOps() != ops) key.interestOps(ops);
+        }
+
+        /**
+         * Stops reading from a rover that is over its request rate until the delay has passed on the game clock.
+         */
+        private void pause(SelectionKey key, Connection conn, long delay) {
+            conn.paused = true;
+            conn.resumeTime = conn.session.getMatch().clock.currentTimeMillis() + delay;
+            pausedKeys.add(key);
+            updateInterest(key, conn);
+        }
+
+        private void close(SelectionKey key, Connection conn) {
+            if (conn.closed) return;
+            conn.closed = true;
+            SwarmServer.metrics.connectionClosed();
+            if (conn.session != null) {
+                conn.session.close();
+            }
+            key.cancel();
+            closeQuietly(conn.channel);
+        }
+
+        private void closeQuietly(SocketChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+        }
+
+        /**
+         * Takes the events pushed to one rover. Events raised by a command running on this loop go out with that
+         * command's replies, anything else is handed over to the loop like a new channel is.
+         */
+        private class ConnectionEvents implements RoverSession.EventSink {
+            private final SelectionKey key;
+            private final Connection conn;
+
+            ConnectionEvents(SelectionKey key, Connection conn) {
+                this.key = key;
+                this.conn = conn;
+            }
+
+            @Override
+            public void push(String line) {
+                if (Thread.currentThread() == EventLoop.this) {
+                    conn.reply.append(line);
+                } else {
+                    conn.events.add(line);
+                    toNotify.add(key);
+                    selector.wakeup();
+                }
+            }
+
+            @Override
+            public void disconnect() {
+                // closed by the loop, like any other connection
+                conn.disconnectRequested = true;
+                toNotify.add(key);
+                selector.wakeup();
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package controlServer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import common.LatencyHistogram;
+import enums.RoverName;
+
+/**
+ * Counters and latency histograms for the server, so it can be seen where the
+ * time goes under load. Everything here is safe to update from any thread
+ * without locking.
+ *
+ * The numbers are reported by the STATS command and, when the server is
+ * started with -metrics=file, appended to that file every METRICS_DUMP_PERIOD.
+ */
+final class ServerMetrics {
+	// commands timed under their own name; anything else is counted as OTHER
+	private static final Set<String> COMMANDS = new HashSet<String>(Arrays.asList(
+			"MOVE", "LOC", "START_LOC", "TARGET_LOC", "SCAN_FORMAT", "SCAN", "TIMER", "GATHER",
+			"CARGO", "EQUIPMENT", "SUBSCRIBE", "UNSUBSCRIBE", "STATS"));
+	private static final String OTHER = "OTHER";
+	// corp numbers as returned by SwarmServer.getCorpNumber
+	static final String[] CORP_NAMES = { "none", "blue", "green" };
+
+	private final long startNanos = System.nanoTime();
+
+	private final ConcurrentHashMap<String, LatencyHistogram> commandLatency = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final LongAdder[] roverCommands = newAdders(RoverName.values().length);
+	private final LongAdder[] roverThrottled = newAdders(RoverName.values().length);
+	private final LongAdder[] corpCommands = newAdders(CORP_NAMES.length);
+	private final LongAdder[] corpThrottled = newAdders(CORP_NAMES.length);
+
+	private final AtomicInteger activeConnections = new AtomicInteger();
+	private final LongAdder totalConnections = new LongAdder();
+
+	// roverLocations and scienceLocations have no locks since they went to CAS - count the claims that failed instead
+	private final LongAdder roverMoveClaimsFailed = new LongAdder();
+	private final LongAdder gatherClaimsFailed = new LongAdder();
+
+	// "match map none blue green" for the matches that are over, oldest first - a match is dropped from
+	// SwarmServer.matches when it ends, so this is where its score is kept
+	static final int FINISHED_MATCHES_KEPT = 100;
+	private final ConcurrentLinkedDeque<String> finishedMatches = new ConcurrentLinkedDeque<String>();
+
+	private static LongAdder[] newAdders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * @param input the command line, only its first word is looked at
+	 * @param nanos how long the command took to run
+	 */
+	void recordCommand(RoverName rover, int corp, String input, long nanos) {
+		String command = commandName(input);
+		LatencyHistogram histogram = commandLatency.get(command);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = commandLatency.putIfAbsent(command, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		histogram.record(nanos);
+		roverCommands[rover.ordinal()].increment();
+		corpCommands[corp].increment();
+	}
+
+	// a command that had to wait for the rover's request rate limit
+	void recordThrottled(RoverName rover, int corp) {
+		roverThrottled[rover.ordinal()].increment();
+		corpThrottled[corp].increment();
+	}
+
+	void connectionOpened() {
+		activeConnections.incrementAndGet();
+		totalConnections.increment();
+	}
+
+	void connectionClosed() {
+		activeConnections.decrementAndGet();
+	}
+
+	// a GATHER that found science, but another rover took it first
+	void recordGatherClaimFailed() {
+		gatherClaimsFailed.increment();
+	}
+
+	void recordMoveClaimFailed() {
+		roverMoveClaimsFailed.increment();
+	}
+
+	void matchFinished(Match match) {
+		StringBuilder result = new StringBuilder();
+		result.append(match.getId()).append(' ').append(match.getMapName());
+		for (int corp = 0; corp < CORP_NAMES.length; corp++) {
+			result.append(' ').append(match.getCorpScore(corp));
+		}
+		finishedMatches.addLast(result.toString());
+		while (finishedMatches.size() > FINISHED_MATCHES_KEPT) {
+			finishedMatches.pollFirst();
+		}
+	}
+
+	static String commandName(String input) {
+		int end = input.indexOf(' ');
+		String command = (end < 0) ? input : input.substring(0, end);
+		return COMMANDS.contains(command) ? command : OTHER;
+	}
+
+	/**
+	 * Appends the current numbers as text lines, each ending with '\n'. Times
+	 * are in microseconds.
+	 */
+	void report(StringBuilder out) {
+		out.append("uptime_ms ").append((System.nanoTime() - startNanos) / 1000000).append('\n');
+		out.append("connections ").append(activeConnections.get())
+				.append(" total ").append(totalConnections.sum()).append('\n');
+
+		out.append("command count mean_us p50_us p90_us p99_us max_us\n");
+		// sorted so reports are easy to compare
+		Map<String, LatencyHistogram> sorted = new TreeMap<String, LatencyHistogram>(commandLatency);
+		for (Map.Entry<String, LatencyHistogram> entry : sorted.entrySet()) {
+			out.append(entry.getKey()).append(' ');
+			appendHistogram(out, entry.getValue());
+		}
+
+		out.append("rover commands throttled\n");
+		for (RoverName rover : RoverName.values()) {
+			long commands = roverCommands[rover.ordinal()].sum();
+			if (commands > 0) {
+				// synthetic load test rovers are all counted under NONE
+				out.append(rover == RoverName.NONE ? "synthetic" : rover.toString()).append(' ').append(commands).append(' ')
+						.append(roverThrottled[rover.ordinal()].sum()).append('\n');
+			}
+		}
+
+		out.append("corp commands throttled\n");
+		for (int corp = 0; corp < CORP_NAMES.length; corp++) {
+			out.append(CORP_NAMES[corp]).append(' ').append(corpCommands[corp].sum()).append(' ')
+					.append(corpThrottled[corp].sum()).append('\n');
+		}
+
+		out.append("scienceLocations_failed_claims ").append(gatherClaimsFailed.sum()).append('\n');
+		out.append("roverLocations_failed_claims ").append(roverMoveClaimsFailed.sum()).append('\n');
+
+		// what the request rate limit of each connected rover has done, by match
+		out.append("match rover accepted throttled\n");
+		for (Match match : new TreeMap<String, Match>(SwarmServer.matches).values()) {
+			match.reportRequestLimits(out);
+		}
+
+		out.append("finished match map");
+		for (String corp : CORP_NAMES) {
+			out.append(' ').append(corp);
+		}
+		out.append('\n');
+		for (String result : finishedMatches) {
+			out.append(result).append('\n');
+		}
+	}
+
+	private static void appendHistogram(StringBuilder out, LatencyHistogram histogram) {
+		out.append(histogram.getCount()).append(' ')
+				.append(String.format("%.1f", histogram.getMeanNanos() / 1000.0)).append(' ')
+				.append(histogram.getValueAtPercentile(50) / 1000).append(' ')
+				.append(histogram.getValueAtPercentile(90) / 1000).append(' ')
+				.append(histogram.getValueAtPercentile(99) / 1000).append(' ')
+				.append(histogram.getMaxNanos() / 1000).append('\n');
+	}
+}
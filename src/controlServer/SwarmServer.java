@@ -1,8 +1,6 @@
 package controlServer;
 
 import java.awt.Toolkit;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -10,29 +8,24 @@ import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Objects;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.SwingUtilities;
-import javax.swing.Timer;
-
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
+import common.BinaryMapFile;
 import common.Coord;
-import common.MapTile;
-import common.PlanetMap;
+import common.GameClock;
+import common.ProceduralWorld;
 import common.Rover;
-import common.RoverLocations;
-import common.ScanMap;
 import common.ScienceLocations;
-import enums.RoverDriveType;
-import enums.RoverName;
-import enums.RoverToolType;
-import enums.Science;
-import enums.Terrain;
 import supportTools.SwarmMapInit;
 
 
@@ -45,25 +38,23 @@ import supportTools.SwarmMapInit;
 public class SwarmServer {
 
     /**
-     * The port that the server listens on.
+     * The port that the server listens on, unless started with -port=N.
      */
-    private static final int PORT = 9537; // because ... csula class number
+    static final int DEFAULT_PORT = 9537; // because ... csula class number
+    private static int port = DEFAULT_PORT;
     
-    private static SwarmMapInit mapInit = new SwarmMapInit();
     private static String mapFileName = "MapDefault.txt";
-
-    private static int mapWidth = 0;
-    private static int mapHeight = 0;
-    private static PlanetMap planetMap = null; // = new PlanetMap(mapWidth, mapHeight); 
-    private static RoverLocations roverLocations = new RoverLocations();
-    private static ScienceLocations scienceLocations = new ScienceLocations();
-    private static ArrayList<Science> collectedScience_0 = new ArrayList<Science>();
-    private static ArrayList<Science> collectedScience_1 = new ArrayList<Science>();
-    private static ArrayList<Science> collectedScience_2 = new ArrayList<Science>();
-    private static ArrayList<ArrayList<Science>> corpCollectedScience = new ArrayList<ArrayList<Science>>();
     
-    private static long countdownTimer;
-    private static boolean roversAreGO;
+    // every match being played, by id - rovers that don't name a match when they connect play in
+    // the default one, which is on mapFileName and the only one shown on the displays
+    static final String DEFAULT_MATCH = "default";
+    static final ConcurrentHashMap<String, Match> matches = new ConcurrentHashMap<String, Match>();
+    static volatile Match defaultMatch = null;
+    // how many matches can be played at once, counting those started by rovers naming a match - -maxMatches=N
+    static int maxMatches = 64;
+    // text and binary map files already loaded, so matches on the same map share its terrain - the
+    // rovers and science in here are only ever copied, never played on
+    private static final ConcurrentHashMap<String, SwarmMapInit> loadedMaps = new ConcurrentHashMap<String, SwarmMapInit>();
     
 	static GUIdisplay mainPanel;
 	static MyGUIWorker myWorker;
@@ -76,8 +67,57 @@ public class SwarmServer {
     
 	// Length of time allowed for the rovers to get back to the retrieval zone
 	static final int MAXIMUM_ACTIVITY_TIME_LIMIT = 600000; // 10 Minutes = 600,000
-	static Timer countDownTimer;
-	static long startTime;
+	
+	// the clock new matches are timed by - real time unless started with -timeScale=N,
+	// which runs the game N times faster than real time for simulated matches
+	static volatile GameClock clock = GameClock.REAL;
+	
+	// -headless runs without any of the Swing displays, for batch and benchmark runs
+	static boolean headless = false;
+	
+	// runs the server's own periodic work, such as checking for the end of the match
+	static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "SwarmServer-scheduler");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	// sends the timed EVENT lines rovers SUBSCRIBE to; kept apart from the scheduler so a rover that is slow
+	// to take its events can't hold up the end of the match
+	static final ScheduledExecutorService eventScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "SwarmServer-events");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	// writes the EVENT lines raised on other threads, such as eventScheduler, to the sockets of Handler
+	// connections - a task per connection with events waiting, so a rover that is slow to read them only
+	// holds up its own
+	static final ExecutorService eventWriters = newEventWriters();
+	// how often the scheduler checks the game clocks for the end of the matches
+	static final long TIME_LIMIT_CHECK_PERIOD = 50;
+	
+	// command latencies, request counts and lock waits - see the STATS command and -metrics=file
+	static final ServerMetrics metrics = new ServerMetrics();
+	// how often, in real milliseconds, the metrics are appended to the -metrics file
+	static final long METRICS_DUMP_PERIOD = 10000;
+	private static String metricsFileName = null;
+	
+	// -syntheticRovers=N lets load tests connect as LOAD_0 to LOAD_(N-1) - see SyntheticRovers
+	static int syntheticRoverLimit = 0;
+	
+	// -mapMemory=MB caps the terrain held in memory: binary map files are then read in chunks as
+	// rovers get to them rather than mapped whole, and made up worlds (world:...) are held to it
+	static long mapMemoryBudget = 0;
+	static final long DEFAULT_WORLD_MEMORY = 256L * 1024 * 1024;
+	// maps with more tiles than this are too big for the displays, and are always run headless
+	static final long DISPLAY_TILE_LIMIT = 1000000;
+	
+	// every command run and its outcome, when started with -journal=file - see JournalReplay
+	// the default match is journaled to the file itself, any other to a file named after the match
+	private static String journalFileName = null;
 	
 	// These are the velocity or speed values for the different drive systems
 	// Changes these as necessary for good simulation balance
@@ -85,7 +125,8 @@ public class SwarmServer {
     static final int TREADS_TIME_PER_SQUARE = 1000;
     static final int WALKER_TIME_PER_SQUARE = 1200;
     
-    // limit of how many Calls can be made to the swarm server during a 1 second span
+    // limit of how many Calls can be made to the swarm server during a 1 second span - rovers
+    // that go over it have their commands delayed (see RoverSession.tryAcquireRequest)
     static final int CALLS_PER_SECOND_LIMIT = 500;
     
     // minimum time in milliseconds that has to pass before another Gather can be done
@@ -95,93 +136,329 @@ public class SwarmServer {
     static final int STANDARD_SCANMAP_RANGE = 7;
     static final int BOOSTED_SCANMAP_RANGE = 11; // range extender increased to 11 by popular demand
     
+    // how rover connections are serviced - "thread" runs a blocking Handler thread per rover,
+    // "virtual" runs the same blocking Handler on a virtual thread per rover (Java 21+),
+    // "nio" multiplexes all of them over a fixed number of SelectorServer event loops
+    private static String ioMode = "thread";
+    private static int eventLoopCount = Runtime.getRuntime().availableProcessors();
+    
     /**
      * The application main method, which just listens on a port and
-     * spawns handler threads.
+     * spawns handlers.
      */
     public static void main(String[] args) throws Exception {
-    	ActionListener timeLimitListener = new TimeLimitStop();
-    	countDownTimer = new Timer(MAXIMUM_ACTIVITY_TIME_LIMIT, timeLimitListener); 
-    	countDownTimer.start();
-    	startTime = System.currentTimeMillis();
-		
-		roversAreGO = true;
-		
-    	// if a command line argument is included it is used as the map filename
+    	// command line arguments starting with "-" are server options (-io=thread|virtual|nio, -loops=N,
+    	// -timeScale=N, -headless, -metrics=file, -journal=file, -syntheticRovers=N,
+    	// -mapMemory=MB, -port=N, -maxMatches=N, -match=ID:MAP), any other argument is used as the map filename
+    	// (a Map*.txt file or one made by MapConverter) or names a world to make up, world:WIDTHxHEIGHT[:SEED] -
+    	// see ProceduralWorld
+    	// -match=ID:MAP starts a match named ID on MAP along with the default one, and can be given more than once
+    	ArrayList<String> matchOptions = new ArrayList<String>();
     	for (String s: args){
-    		mapFileName = s;
+    		if (s.startsWith("-io=")) {
+    			ioMode = s.substring(4);
+    		} else if (s.startsWith("-loops=")) {
+    			eventLoopCount = Integer.parseInt(s.substring(7));
+    		} else if (s.startsWith("-timeScale=")) {
+    			clock = GameClock.scaled(Double.parseDouble(s.substring(11)));
+    		} else if (s.equals("-headless")) {
+    			headless = true;
+    		} else if (s.startsWith("-metrics=")) {
+    			metricsFileName = s.substring(9);
+    		} else if (s.startsWith("-journal=")) {
+    			journalFileName = s.substring(9);
+    		} else if (s.startsWith("-mapMemory=")) {
+    			mapMemoryBudget = Long.parseLong(s.substring(11)) * 1024 * 1024;
+    		} else if (s.startsWith("-syntheticRovers=")) {
+    			syntheticRoverLimit = Integer.parseInt(s.substring(17));
+    		} else if (s.startsWith("-port=")) {
+    			port = Integer.parseInt(s.substring(6));
+    		} else if (s.startsWith("-maxMatches=")) {
+    			maxMatches = Integer.parseInt(s.substring(12));
+    		} else if (s.startsWith("-match=")) {
+    			matchOptions.add(s.substring(7));
+    		} else {
+    			mapFileName = s;
+    		}
+    	}
+    	
+    	if (headless) {
+    		// make sure nothing on the way loads a display
+    		System.setProperty("java.awt.headless", "true");
     	}
+    	
+    	startTimers();
+		
         System.out.println("The Swarm server is running.");
-        ServerSocket listener = new ServerSocket(PORT);
-        
-        corpCollectedScience.add(collectedScience_0);
-        corpCollectedScience.add(collectedScience_1);
-        corpCollectedScience.add(collectedScience_2);
+        if (clock != GameClock.REAL) {
+        	System.out.println("SwarmServer: game clock is running at " + clock);
+        }
         
-        mapInit.parseInputFromDisplayTextFile(mapFileName);        
+        if (journalFileName != null) {
+        	// also keep what was recorded if the server is stopped before the end of the matches
+        	Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        		public void run() {
+        			for (Match match : matches.values()) {
+        				match.closeJournal();
+        			}
+        		}
+        	}));
+        }
         
-        mapHeight = mapInit.getMapHeight();
-        mapWidth = mapInit.getMapWidth();
-        planetMap = mapInit.getPlanetMap();
-        roverLocations = mapInit.getRoverLocations();
-        scienceLocations = mapInit.getScienceLocations();
+        Match match = startMatch(DEFAULT_MATCH, mapFileName);
+        defaultMatch = match;
+        for (String option : matchOptions) {
+        	int colon = option.indexOf(':');
+        	if (colon <= 0 || colon == option.length() - 1) {
+        		throw new IllegalArgumentException("-match is -match=ID:MAP, not -match=" + option);
+        	}
+        	startMatch(option.substring(0, colon), option.substring(colon + 1));
+        }
         
-        countdownTimer = System.currentTimeMillis();
+        if (!headless && (long) match.getMapWidth() * match.getMapHeight() > DISPLAY_TILE_LIMIT) {
+        	System.out.println("SwarmServer: a " + match.getMapWidth() + " x " + match.getMapHeight() + " map is too big to display, running headless");
+        	headless = true;
+        	System.setProperty("java.awt.headless", "true");
+        }
         
-		mainPanel = new GUIdisplay(mapWidth, mapHeight);
-		myWorker = new MyGUIWorker(mainPanel);
+		if (!headless) {
+			int mapWidth = match.getMapWidth();
+			int mapHeight = match.getMapHeight();
+			mainPanel = new GUIdisplay(mapWidth, mapHeight);
+			myWorker = new MyGUIWorker(mainPanel);
         
        
-		mainPanel2 = new GUIdisplay2(mapWidth, mapHeight);
-		myWorker2 = new MyGUIWorker2(mainPanel2);
+			mainPanel2 = new GUIdisplay2(mapWidth, mapHeight);
+			myWorker2 = new MyGUIWorker2(mainPanel2);
 		
-		mainPanel3 = new GUIdisplay3(mapWidth, mapHeight, MAXIMUM_ACTIVITY_TIME_LIMIT);
-		myWorker3 = new MyGUIWorker3(mainPanel3);
+			mainPanel3 = new GUIdisplay3(mapWidth, mapHeight, MAXIMUM_ACTIVITY_TIME_LIMIT, match.clock, match.startTime);
+			myWorker3 = new MyGUIWorker3(mainPanel3);
 		
 		
-		SwingUtilities.invokeLater(new Runnable() {
-			public void run() {
-				// currently sending it when calling the updateGUIDisplay() method
-//**			GUIdisplay.createAndShowGui(myWorker, mainPanel);
-				//GUIdisplay2.createAndShowGui(myWorker2, mainPanel2);
-				GUIdisplay3.createAndShowGui(myWorker3, mainPanel3);
-				try {
-					updateGUIDisplay();
-				} catch (Exception e) {				
-					e.printStackTrace();
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					// currently sending it when calling the updateGUIDisplay() method
+	//**			GUIdisplay.createAndShowGui(myWorker, mainPanel);
+					//GUIdisplay2.createAndShowGui(myWorker2, mainPanel2);
+					GUIdisplay3.createAndShowGui(myWorker3, mainPanel3);
+					try {
+						updateGUIDisplay();
+					} catch (Exception e) {				
+						e.printStackTrace();
+					}
 				}
-			}
-		});
+			});
+		}
 		       
+        if (ioMode.equals("nio")) {
+        	new SelectorServer(port, eventLoopCount).run();
+        	return;
+        }
+        
+        ExecutorService handlerExecutor = null;
+        if (ioMode.equals("virtual")) {
+        	handlerExecutor = newVirtualThreadExecutor();
+        	if (handlerExecutor == null) {
+        		System.out.println("SwarmServer: virtual threads need Java 21 or newer - using one thread per rover");
+        	}
+        }
+        
+        ServerSocket listener = new ServerSocket(port);
         try {
             while (true) {
-                new Handler(listener.accept()).start();
+            	Handler handler = new Handler(listener.accept());
+            	if (handlerExecutor != null) {
+            		handlerExecutor.execute(handler);
+            	} else {
+            		new Thread(handler).start();
+            	}
             }
         } finally {
             listener.close();
         }         
     }
+    
+    // starts the scheduler's periodic work - ending the matches on time, and writing the -metrics file
+    static void startTimers() {
+    	scheduler.scheduleAtFixedRate(new TimeLimitStop(), TIME_LIMIT_CHECK_PERIOD, TIME_LIMIT_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+    	if (metricsFileName != null) {
+    		scheduler.scheduleAtFixedRate(new MetricsDump(metricsFileName), METRICS_DUMP_PERIOD, METRICS_DUMP_PERIOD, TimeUnit.MILLISECONDS);
+    	}
+    }
+    
+    /**
+     * Loads the map, rover start positions and science of a match. Matches on
+     * the same map file share its terrain; a made up world (world:...) is made
+     * anew for every match, as its science is only placed as it is explored.
+     */
+    static Match loadGame(String matchId, String mapFileName, GameClock clock, long startTime) throws Exception {
+        if (ProceduralWorld.isWorldName(mapFileName)) {
+        	SwarmMapInit mapInit = new SwarmMapInit();
+        	mapInit.loadProceduralWorld(mapFileName, mapMemoryBudget > 0 ? mapMemoryBudget : DEFAULT_WORLD_MEMORY);
+        	return new Match(matchId, mapFileName, mapInit.getPlanetMap(), mapInit.getRoverLocations(),
+        			mapInit.getScienceLocations(), clock, startTime);
+        }
+        
+        SwarmMapInit mapInit = loadedMaps.get(mapFileName);
+        if (mapInit == null) {
+        	mapInit = new SwarmMapInit();
+        	if (BinaryMapFile.isBinaryMap(mapFileName)) {
+        		mapInit.loadFromBinaryFile(mapFileName, mapMemoryBudget);
+        	} else {
+        		mapInit.parseInputFromDisplayTextFile(mapFileName);
+        	}
+        	SwarmMapInit loaded = loadedMaps.putIfAbsent(mapFileName, mapInit);
+        	if (loaded != null) {
+        		mapInit = loaded;
+        	}
+        }
+        return new Match(matchId, mapFileName, mapInit.getPlanetMap(), mapInit.getRoverLocations().clone(),
+        		new ScienceLocations(mapInit.getScienceLocations().getHashMapClone()), clock, startTime);
+    }
+    
+    // loads a match, starts its clock and its journal, and puts it with the others
+    static Match startMatch(String matchId, String mapFileName) throws Exception {
+    	Match match = loadGame(matchId, mapFileName, clock, clock.currentTimeMillis());
+    	if (journalFileName != null) {
+    		String fileName = journalFileFor(matchId);
+    		match.startJournal(fileName);
+    		System.out.println("SwarmServer: journaling match " + matchId + " to " + fileName);
+    	}
+    	if (matches.putIfAbsent(matchId, match) != null) {
+    		match.closeJournal();
+    		throw new IllegalArgumentException("there is already a match named " + matchId);
+    	}
+    	System.out.println("SwarmServer: started match " + match);
+    	return match;
+    }
+    
+    /**
+     * The match a rover asked for when it connected - null asks for the default
+     * match. A match that isn't running yet, or is over, is started afresh on the
+     * server's map, as long as fewer than -maxMatches are being played.
+     */
+    static Match findMatch(String matchId) throws Exception {
+    	if (matchId == null) {
+    		return defaultMatch;
+    	}
+    	Match match = matches.get(matchId);
+    	if (match != null && match.roversAreGO) {
+    		return match;
+    	}
+    	synchronized (matches) {
+    		match = matches.get(matchId);
+    		if (match != null && match.roversAreGO) {
+    			return match;
+    		}
+    		if (match != null) {
+    			// over, but TimeLimitStop hasn't dropped it yet - it still records the result
+    			matches.remove(matchId, match);
+    		}
+    		int live = liveMatches();
+    		if (live >= maxMatches) {
+    			throw new IOException("can't start match " + matchId + ", the server is already playing " + live);
+    		}
+    		return startMatch(matchId, mapFileName);
+    	}
+    }
+    
+    private static int liveMatches() {
+    	int live = 0;
+    	for (Match match : matches.values()) {
+    		if (match.roversAreGO) {
+    			live++;
+    		}
+    	}
+    	return live;
+    }
+    
+    /**
+     * Ends a match whose time is up: disconnects its rovers, keeps its score in
+     * the metrics and drops it, so it no longer counts against -maxMatches and
+     * its id can be played again.
+     */
+    static void endMatch(Match match) {
+    	match.stop();
+    	metrics.matchFinished(match);
+    	matches.remove(match.getId(), match);
+    }
+    
+    // the default match is journaled to the -journal file, others to the same name with the match id
+    // put in before the extension
+    private static String journalFileFor(String matchId) {
+    	if (matchId.equals(DEFAULT_MATCH)) {
+    		return journalFileName;
+    	}
+    	int dot = journalFileName.lastIndexOf('.');
+    	if (dot <= journalFileName.lastIndexOf('/')) {
+    		return journalFileName + "-" + matchId;
+    	}
+    	return journalFileName.substring(0, dot) + "-" + matchId + journalFileName.substring(dot);
+    }
+    
+    // virtual threads where there are any, as the writers spend their time blocked on sockets
+    private static ExecutorService newEventWriters() {
+    	ExecutorService executor = newVirtualThreadExecutor();
+    	if (executor != null) {
+    		return executor;
+    	}
+    	return Executors.newCachedThreadPool(new ThreadFactory() {
+    		public Thread newThread(Runnable r) {
+    			Thread t = new Thread(r, "SwarmServer-event-writer");
+    			t.setDaemon(true);
+    			return t;
+    		}
+    	});
+    }
+    
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor() at runtime so the server
+     * still builds and runs on JDKs that predate virtual threads.
+     * @return the executor, or null if this JVM has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+    	try {
+    		return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    	} catch (ReflectiveOperationException e) {
+    		return null;
+    	}
+    }
 
     /**
-     * A handler thread class.  Handlers are spawned from the listening
-     * loop and are responsible for a dealing with a single client
-     * and processing its messages.
+     * A handler class.  Handlers are spawned from the listening
+     * loop, on a platform or virtual thread of their own, and are
+     * responsible for a dealing with a single client and processing
+     * its messages.
      */
-    private static class Handler extends Thread {
-    	//currently using these as the Rover Object attributes
-    	// this should be replaced with a Rover Object
-        private String roverNameString;
+    private static class Handler implements Runnable {
         private Socket socket;
         private BufferedReader in;
         private PrintWriter out;
+        // held for every write to out, as events can come from other threads - a ReentrantLock rather
+        // than synchronized, so a virtual thread blocked writing to a slow rover doesn't pin its carrier
+        private final ReentrantLock outLock = new ReentrantLock();
+        // events raised on other threads, waiting for eventWriter to send them
+        private final ConcurrentLinkedQueue<String> events = new ConcurrentLinkedQueue<String>();
+        private final AtomicBoolean eventWriterQueued = new AtomicBoolean();
+        // the thread reading from the socket, which writes its own events straight away
+        private volatile Thread readerThread;
         
-        // keeps track of Rover's current location
-        private int xpos = 0;
-        private int ypos = 0;
+        // run on SwarmServer.eventWriters - sends the waiting events, and goes again if more came in meanwhile
+        private final Runnable eventWriter = new Runnable() {
+        	public void run() {
+        		do {
+        			String line;
+        			while ((line = events.poll()) != null) {
+        				write(line);
+        			}
+        			eventWriterQueued.set(false);
+        		} while (!events.isEmpty() && eventWriterQueued.compareAndSet(false, true));
+        	}
+        };
         
 
         /**
-         * Constructs a handler thread, squirreling away the socket.
+         * Constructs a handler, squirreling away the socket.
          * All the interesting work is done in the run method.
          */
         public Handler(Socket socket) {
@@ -192,15 +469,29 @@ public class SwarmServer {
          * Services this thread's client by repeatedly requesting a Rover nameType
          * Then runs the Rover environment simulator server process        
          */
+        private void write(CharSequence text) {
+        	outLock.lock();
+        	try {
+        		out.print(text);
+        		out.flush();
+        	} finally {
+        		outLock.unlock();
+        	}
+        }
+        
         public void run() {
+            RoverSession session = null;
+            readerThread = Thread.currentThread();
+            metrics.connectionOpened();
             try {
                 // Create character streams for the socket.
                 in = new BufferedReader(new InputStreamReader(
                     socket.getInputStream()));
                 out = new PrintWriter(socket.getOutputStream(), true);
-         
+                String roverNameString;
 
-                // Request a name from this client.  Keep requesting until returned.             
+                // Request a name from this client.  Keep requesting until returned.
+                // The name can be followed by MATCH and the id of the match to play in.
                 while (true) {
                     out.println("SUBMITNAME");
                     roverNameString = in.readLine();
@@ -212,613 +503,118 @@ public class SwarmServer {
                     }
                 }
                 
-                // TODO check to see if this rover thread already exists.
-                // if exists and is active - refuse connection
-                // if exists and socket is not active - reconnect to that socket
-                // enforce time limit between reconnection to minimize spamming
-                
-                // make and instantiate a Rover object connected to this thread
-                RoverName rname = RoverName.getEnum(roverNameString); 
-                Rover rover = new Rover(rname);
-                
+                // the command logic is shared with the SelectorServer event loops
+                session = RoverSession.connect(roverNameString);
+                Match match = session.getMatch();
+                StringBuilder reply = new StringBuilder();
                 
+                // events can come from other threads, so every write to out is done holding outLock - and those
+                // threads, which are shared by every rover, hand theirs to eventWriter rather than wait on the socket
+                session.setEventSink(new RoverSession.EventSink() {
+                	public void push(String line) {
+                		if (Thread.currentThread() == readerThread) {
+                			write(line);
+                			return;
+                		}
+                		events.add(line);
+                		if (eventWriterQueued.compareAndSet(false, true)) {
+                			eventWriters.execute(eventWriter);
+                		}
+                	}
+                	
+                	// the read this thread is blocked in fails, which ends the session
+                	public void disconnect() {
+                		try {
+                			socket.close();
+                		} catch (IOException e) {  }
+                	}
+                });
                 
                 // ##### Run the Rover server process #####
-                while (roversAreGO) {	
+                while (match.roversAreGO) {	
                 	//read command input from the Rover
                     String input = in.readLine();
-
-                    //condition the input to empty string if null
                     if (input == null) {
-                    	input = "";
+                    	// the rover has disconnected
+                    	break;
                     }
                     
-                    // check requests per second
-                    // if rover is too greedy drop their connection - checks how many total requests have been made in the last second
-                    long roverServerRequestsPerSecond = rover.getRoverRequestCount();
-                   	
-                    if(roverServerRequestsPerSecond > CALLS_PER_SECOND_LIMIT){
-                    	System.out.println("SWARM_"+roverNameString+ "_thread: too many requests per second - dropping connection");
-                    	in.close();
-                    	socket.close();
+                    // a rover over its request rate is held back here rather than disconnected
+                    long throttleDelay;
+                    while ((throttleDelay = session.tryAcquireRequest()) > 0) {
+                    	match.clock.sleep(throttleDelay);
                     }
                     
-                    // debug checking
-                    //System.out.println("SWARM_SERVER_"+roverNameString+ "_thread: recieved command " + input);
-                    
-                      
-                    
-                    /**
-                	 * ******************** MOVE **********************
-                	 */                   
-                    if (input.startsWith("MOVE")){
-                    	//System.out.println("SWARM: ------ MOVE ------"); //debug test input parsing
-                    	// trim header off of input string
-                    	String dir = input.substring(5);	
-                    	
-                    	// invoke the doMove method to update the Rover position in the RoverLocations (roverLocations) static object
-                    	// this method also returns a Coord with the Rover position after the move attempt.
-                    	doMove(rover, dir); 
-                    	
-                    	// Update the GUI display with all the new rover locations when any individual rover moves
-            	    	updateGUIDisplay();
-                    	
-            	    	
-                    
-        	    	/**
-                	 * ******************** LOC **********************
-                	 */
-                    // gets the current position of the rover	
-                    } else if (input.startsWith("LOC")){  
-                    	//System.out.println("SWARM: ------ LOC ------"); //debug test input parsing
-                    	// does not need to synchronize-lock scienceLocations because not changing any values
-            	    	Coord roverPos = roverLocations.getLocation(rover.getRoverName());
-            	    	xpos = roverPos.xpos;
-            	    	ypos = roverPos.ypos;
-                    	out.println("LOC " + xpos + " " + ypos);
-                    	
-                    
-                    	
-                    /**
-                	 * ***************** START_LOC *******************
-                	 */
-                    // gets the current position of the rover	
-                    } else if (input.startsWith("START_LOC")){  
-                    	//System.out.println("SWARM: ------ START_LOC ------"); //debug test input parsing
-                    	// does not need to synchronize-lock scienceLocations because not changing any values
-                    	Coord startPos = planetMap.getStartPosition();
-                    	out.println("START_LOC " + startPos.xpos + " " + startPos.ypos);
-                        	
-                        	
-                        
-                    	
-                	/**
-                	 * **************** TARGET_LOC ********************
-                	 */
-                    // gets the current position of the rover	
-                    } else if (input.startsWith("TARGET_LOC")){  
-                    	//System.out.println("SWARM: ------ TARGET_LOC ------"); //debug test input parsing
-                    	// does not need to synchronize-lock scienceLocations because not changing any values
-                    	Coord targetPos = planetMap.getTargetPosition();
-                    	out.println("TARGET_LOC " + targetPos.xpos + " " + targetPos.ypos);
-                            	
-                            	
-                    	
-                	
-                	/**
-                	 * ******************** SCAN **********************
-                	 */
-                    // return json array of map area close around the rover
-                	// may check rover tool for mastcam to increase range  of map results - maybe
-                    } else if (input.startsWith("SCAN")){
-                    	
-                    	String jsonScanMap = retriveScanMap(rover);
-                    	
-            			out.println("SCAN"); //returns command header as check
-            			
-            			//return json string to Rover
-            			out.println(jsonScanMap.toString());
-
-            			//to mark the end of the json string
-            			out.println("SCAN_END");
-                    	
-                    	
-            			
-        			/**
-                	 * ******************** TIMER **********************
-                	 */
-                    // returns the total number of seconds remaining on the countdown timer	
-                    } else if (input.startsWith("TIMER")){  
-                    	int timeRemaining = 0;
-                    	timeRemaining = (MAXIMUM_ACTIVITY_TIME_LIMIT - (int)(System.currentTimeMillis() - startTime)) / 1000;
-                    	out.println("TIMER " + timeRemaining);
-            			
-                    	
-            			
-                	/**
-                	 * ******************* GATHER ***********************
-                	 */	
-                	// collect the science using either a drill or harvester
-                	// GATHER is a command with no return response
-                    } else if(input.startsWith("GATHER")) {
-                        
-                    	// does not need to synchronize-lock roverLocations because not changing any values
-                    	Coord roverPos = roverLocations.getLocation(rover.getRoverName());
-                    	
-                    	// lock scienceLocations because this requires checking then changing it
-                    	synchronized (scienceLocations){
-	                    	// true if this coordinate is in the scienceLocations hashmap and gather cooldown has been satisfied
-	                    	if(scienceLocations.checkLocation(roverPos)
-	                    			&& (rover.getRoverLastGatherTime() + GATHER_TIME_PER_TILE < (System.currentTimeMillis()))){ 
-	                    		
-	                    		if((rover.getTool_1() == RoverToolType.DRILL || (rover.getTool_2() == RoverToolType.DRILL) 
-	                    				 && (planetMap.getTile(roverPos).getTerrain() == Terrain.ROCK || planetMap.getTile(roverPos).getTerrain() == Terrain.GRAVEL))){
-	                    			// remove the science from scienceLocations and store in rover scienceCargo	
-	                    			Science foundScience = scienceLocations.takeScience(roverPos);
-	                    			rover.scienceCargo.add(foundScience);
-	                    			corpCollectedScience.get(getCorpNumber(rover)).add(foundScience);
-	                    			System.out.println("SwarmServer: corp " + getCorpNumber(rover) + " total science = " + corpCollectedScience.get(getCorpNumber(rover)).size());
-	                    		}
-	                    		
-	                    		if((rover.getTool_1() == RoverToolType.EXCAVATOR || (rover.getTool_2() == RoverToolType.EXCAVATOR) 
-	                    				 && (planetMap.getTile(roverPos).getTerrain() == Terrain.SOIL || planetMap.getTile(roverPos).getTerrain() == Terrain.SAND))){
-	                    			// remove the science from scienceLocations and store in rover scienceCargo	
-	                    			Science foundScience = scienceLocations.takeScience(roverPos);
-	                    			rover.scienceCargo.add(foundScience);
-	                    			corpCollectedScience.get(getCorpNumber(rover)).add(foundScience);
-	                    			System.out.println("SwarmServer: corp " + getCorpNumber(rover) + " total science = " + corpCollectedScience.get(getCorpNumber(rover)).size());
-	                    		}
-	                    	}
-	                    	scoreDisplayUpdate();
-                    	} //END synchronized lock
-                 	
-                    	
-                    	
-                    	
-	            	/**
-	            	 * ******************* CARGO ***********************
-	            	 */	 	                
-                    } else if(input.startsWith("CARGO")) {
-                    // Check to see what is in the rovers cargo hold (collected science).
-                    	Gson gson = new GsonBuilder()
-                    			.setPrettyPrinting()
-                    			.enableComplexMapKeySerialization()
-                    			.create();
-                    	// return contents of scienceCargo
-                    	String jsonCargoList = gson.toJson(rover.scienceCargo);
-                    	
-                    	out.println("CARGO"); //returns command header as check
-                    	
-                    	// return an ArrayList of rover equipment - json string?
-                    	out.println(jsonCargoList.toString());
-                    	
-                    	out.println("CARGO_END");
-                    	
-                    	
-                    	
-                    	
-                	/**
-	            	 * ******************* EQUIPMENT ***********************
-	            	 */	
-                    } else if(input.startsWith("EQUIPMENT")) {
-                    	Gson gson = new GsonBuilder()
-                    			.setPrettyPrinting()
-                    			.enableComplexMapKeySerialization()
-                    			.create();
-                    	ArrayList<String> eqList = new ArrayList<String>();
-                    	
-                    	eqList.add(rover.getRoverDrive().toString());
-                    	eqList.add(rover.getTool_1().toString());
-                    	eqList.add(rover.getTool_2().toString());
-                    	
-                    	String jsonEqList = gson.toJson(eqList);
-                    	
-                    	//System.out.println("SWARM_"+roverNameString+ "_thread: returning work EQUIPMENT");
-                    	out.println("EQUIPMENT"); //returns command header as check
-                    	
-                    	// return an ArrayList of rover equipment - json string?
-                    	out.println(jsonEqList.toString());
-                    	
-                    	out.println("EQUIPMENT_END");
-                    	
-                    
-                    	
-                    	
-                	/**
-	            	 * *********** DEFAULT - no recognizable command received ****************
-	            	 */		       	
-                    } else {
-                    	//default response
-                    	out.println("");
+                    reply.setLength(0);
+                    boolean keepConnection = session.handle(input, reply);
+                    if (reply.length() > 0) {
+                    	write(reply);
+                    }
+                    if (!keepConnection) {
+                    	break;
                     }
-                    
-                             
                 }
             } catch (IOException e) {
                 System.out.println(e);
             } catch (Exception e) {
 				e.printStackTrace();
 			} finally {
+                if (session != null) {
+                	session.close();
+                }
+                metrics.connectionClosed();
                 try {
                     socket.close();
                 } catch (IOException e) {  }
             }
         }
-        
-        
-        // ########################################################################################################
-        // support methods
-        
-
-        // *** SCAN ***
-		private String retriveScanMap(Rover thisRover) {
-			//System.out.println("SWARM: ------ SCAN ------"); //debug test input parsing
-			Gson gson = new GsonBuilder()
-        			.setPrettyPrinting()
-        			.enableComplexMapKeySerialization()
-        			.create();
-			Coord roverPos = roverLocations.getLocation(thisRover.getRoverName());
-			
-			// length of a side of the scan map array !!! must be odd number !!!
-			int scanRange = STANDARD_SCANMAP_RANGE;
-			// Adjust scanMap range with use of scan range booster
-			if(thisRover.getTool_1() == RoverToolType.RANGE_BOOTER || thisRover.getTool_2() == RoverToolType.RANGE_BOOTER){
-				scanRange = BOOSTED_SCANMAP_RANGE;
-			}
-
-			// because I don't want to accidentally change the original
-			HashMap<Coord, Science> sciHash = scienceLocations.getHashMapClone();
-			
-			// This method builds a temporary science locations list based on Rover equipment
-			HashMap<Coord, Science> filteredScienceLocations = new HashMap<Coord, Science>();
-			
-			// Check what Scan Tools Rover is equipped with and filter scan results based on this
-			if(thisRover.getTool_1() == RoverToolType.RADIATION_SENSOR || thisRover.getTool_2() == RoverToolType.RADIATION_SENSOR){
-			    for (Entry<Coord, Science> entry : sciHash.entrySet()) {
-			        if (Objects.equals(Science.RADIOACTIVE, entry.getValue())) {
-			        	filteredScienceLocations.put(entry.getKey(), Science.RADIOACTIVE);
-			        }
-			    }
-			}
-			
-			if(thisRover.getTool_1() == RoverToolType.CHEMICAL_SENSOR || thisRover.getTool_2() == RoverToolType.CHEMICAL_SENSOR){
-			    for (Entry<Coord, Science> entry : sciHash.entrySet()) {
-			        if (Objects.equals(Science.ORGANIC, entry.getValue())) {
-			        	filteredScienceLocations.put(entry.getKey(), Science.ORGANIC);
-			        }
-			    }
-			}
-			
-			if(thisRover.getTool_1() == RoverToolType.SPECTRAL_SENSOR || thisRover.getTool_2() == RoverToolType.SPECTRAL_SENSOR){
-			    for (Entry<Coord, Science> entry : sciHash.entrySet()) {
-			        if (Objects.equals(Science.CRYSTAL, entry.getValue())) {
-			        	filteredScienceLocations.put(entry.getKey(), Science.CRYSTAL);
-			        }
-			    }
-			}
-			
-			if(thisRover.getTool_1() == RoverToolType.RADAR_SENSOR || thisRover.getTool_2() == RoverToolType.RADAR_SENSOR){
-			    for (Entry<Coord, Science> entry : sciHash.entrySet()) {
-			        if (Objects.equals(Science.MINERAL, entry.getValue())) {
-			        	filteredScienceLocations.put(entry.getKey(), Science.MINERAL);
-			        }
-			    }
-			}
-			
-			// pass parameters to PlanetMap class to get a subset map of the surrounding area
-			ScanMap scanMap = planetMap.getScanMap(roverPos, scanRange, roverLocations, new ScienceLocations(filteredScienceLocations));
-			             	
-			// convert scanMap object to json and return to rover
-			String jsonScanMap = gson.toJson(scanMap);
-			
-			return jsonScanMap;		                 	
-		}
     }
     
 
    
-    // ** MOVE **
-    static Coord doMove(Rover thisRover, String requestedMoveDir) throws Exception{ 
-    	// *** pay close attention to this "synchronized" and make sure it works as intended ***
-    	// MOVE has to lock the roverLocations list because it needs to change it's contents
-    	synchronized (roverLocations){
-	    	Coord roverPos = roverLocations.getLocation(thisRover.getRoverName());
-	    	int xCurrentPos = roverPos.xpos;
-	    	int yCurrentPos = roverPos.ypos;
-	    	
-
-	    		    	
-	    	// ********* WHEELS **********	
-    		// Respond based on the rover drive type AND
-    		// Check that is has been at a minimum of "time limeit per second" seconds (WHEEL velocity) since the rover last moved
-	    	// AND check that it is not stuck in the sand
-	    	if(thisRover.getRoverDrive() == RoverDriveType.WHEELS
-	    			&& thisRover.getRoverLastMoveTime() + WHEELS_TIME_PER_SQUARE < (System.currentTimeMillis() )
-	    			&& planetMap.getTile(roverPos).getTerrain() != Terrain.SAND){
-	    			    		
-	    			if(requestedMoveDir.equals("N")){
-	    				yCurrentPos = yCurrentPos - 1;
-	    				if(!isValid_Y(yCurrentPos)){
-	    					// On the edge, returns rovers current position unchanged
-	    					return roverPos;
-	    				}
-		    		
-		    		//check planetMap (immutable)
-		    		MapTile possibleMovetoTile = planetMap.getTile(xCurrentPos, yCurrentPos);
-			    		if(possibleMovetoTile.getTerrain() != Terrain.ROCK && possibleMovetoTile.getTerrain() != Terrain.NONE){
-				    		// Move to the new map square, unless occupied by another rover
-				    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-				    			// if moveRover call is successful then update latest move time value
-				    			thisRover.updateMoveTime();
-				    		} else {
-				    			//System.out.println("no move north, rover in the way"); //debug status out
-				    		}
-			    		}
-	    			}
-		    	
-	    			if(requestedMoveDir.equals("S")){
-	    					yCurrentPos = yCurrentPos + 1;
-		    				if(!isValid_Y(yCurrentPos)){
-		    					// On the edge, returns rovers current position unchanged
-		    					return roverPos;
-		    				}
-		    				
-			    		//check planetMap (immutable)
-			    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-			    		if(moveThere.getTerrain() != Terrain.ROCK && moveThere.getTerrain() != Terrain.NONE){
-				    		// Move to the new map square, unless occupied by another rover
-				    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-				    			// if moveRover call is successful then update latest move time value
-				    			thisRover.updateMoveTime();
-				    		} else {
-				    			//System.out.println("no move south, rover in the way"); //debug status out
-				    		}
-			    		}
-	    			}
-		    		
-	    			if(requestedMoveDir.equals("E")){
-			    		xCurrentPos = xCurrentPos + 1;
-	    				if(!isValid_X(xCurrentPos)){
-	    					// On the edge, returns rovers current position unchanged
-	    					return roverPos;
-	    				}
-			    		//check planetMap (immutable)
-			    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-			    		if(moveThere.getTerrain() != Terrain.ROCK && moveThere.getTerrain() != Terrain.NONE){
-				    		// Move to the new map square, unless occupied by another rover	
-				    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-				    			// if moveRover call is successful then update latest move time value
-				    			thisRover.updateMoveTime();
-				    		} else {
-				    			//System.out.println("no move east, rover in the way"); //debug status out
-				    		}
-			    		}
-	    			}
-	    			
-	    			if(requestedMoveDir.equals("W")){
-			    		xCurrentPos = xCurrentPos - 1;
-	    				if(!isValid_X(xCurrentPos)){
-	    					// On the edge, returns rovers current position unchanged
-	    					return roverPos;
-	    				}
-			    		//check planetMap (immutable)
-			    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-			    		if(moveThere.getTerrain() != Terrain.ROCK && moveThere.getTerrain() != Terrain.NONE){
-				    		// Move to the new map square, unless occupied by another rover
-				    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-				    			// if moveRover call is successful then update latest move time value
-				    			thisRover.updateMoveTime();
-				    		} else {
-				    			//System.out.println("no move east, rover in the way"); //debug status out
-				    		}
-			    		}
-	    			}
-	    	}
-	    	
-	    	// ********* TREADS **********
-	    	// test for conditions that will prevent movement - too soon after last move and sitting on a rock
-	    	// treads will get stuck on rocks
-	    	if(thisRover.getRoverDrive() == RoverDriveType.TREADS
-	    			&& thisRover.getRoverLastMoveTime() + TREADS_TIME_PER_SQUARE < (System.currentTimeMillis()) 
-	    			&& planetMap.getTile(roverPos).getTerrain() != Terrain.ROCK){
-	    			    		
-	    			if(requestedMoveDir.equals("N")){
-		    		yCurrentPos = yCurrentPos - 1;
-    				if(!isValid_Y(yCurrentPos)){
-    					// On the edge, returns rovers current position unchanged
-    					return roverPos;
-    				}
-		    		//check planetMap (immutable)
-		    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-			    		if(moveThere.getTerrain() != Terrain.NONE){
-				    		// Move to the new map square, unless occupied by another rover 		
-				    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-				    			// if moveRover call is successful then update latest move time value
-				    			thisRover.updateMoveTime();
-				    		} else {
-				    			//System.out.println("no move north, rover in the way"); //debug status out
-				    		}
-			    		}
-	    			}
-		    	
-	    			if(requestedMoveDir.equals("S")){
-		    		yCurrentPos = yCurrentPos + 1;
-    				if(!isValid_Y(yCurrentPos)){
-    					// On the edge, returns rovers current position unchanged
-    					return roverPos;
-    				}
-		    		//check planetMap (immutable)
-		    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-			    		if(moveThere.getTerrain() != Terrain.NONE){
-				    		// Move to the new map square, unless occupied by another rover		    		
-				    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-				    			// if moveRover call is successful then update latest move time value
-				    			thisRover.updateMoveTime();
-				    		} else {
-				    			//System.out.println("no move south, rover in the way"); //debug status out
-				    		}
-			    		}
-	    			}
-	    			
-	    			if(requestedMoveDir.equals("E")){
-			    		xCurrentPos = xCurrentPos + 1;
-	    				if(!isValid_X(xCurrentPos)){
-	    					// On the edge, returns rovers current position unchanged
-	    					return roverPos;
-	    				}
-			    		//check planetMap (immutable)
-			    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-				    		if(moveThere.getTerrain() != Terrain.NONE){
-					    		// Move to the new map square, unless occupied by another rover
-					    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-					    			// if moveRover call is successful then update latest move time value
-					    			thisRover.updateMoveTime();
-					    		} else {
-					    			//System.out.println("no move east, rover in the way"); //debug status out
-					    		}
-				    		}
-		    			}
-	    			
-	    			if(requestedMoveDir.equals("W")){
-			    		xCurrentPos = xCurrentPos - 1;
-	    				if(!isValid_X(xCurrentPos)){
-	    					// On the edge, returns rovers current position unchanged
-	    					return roverPos;
-	    				}
-			    		//check planetMap (immutable)
-			    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-				    		if(moveThere.getTerrain() != Terrain.NONE){
-					    		// Move to the new map square, unless occupied by another rover	
-					    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-					    			// if moveRover call is successful then update latest move time value
-					    			thisRover.updateMoveTime();
-					    		} else {
-					    			//System.out.println("no move west, rover in the way"); //debug status out
-					    		}
-				    		}
-		    			}
-	    	}
-		    	
-
-	    	// ********* WALKER **********
-	    	// WALKERS also get stuck in sand
-	    	if(thisRover.getRoverDrive() == RoverDriveType.WALKER
-	    			&& thisRover.getRoverLastMoveTime() + WALKER_TIME_PER_SQUARE < (System.currentTimeMillis()) 
-	    			&& planetMap.getTile(roverPos).getTerrain() != Terrain.SAND){
-	    		
-	    			if(requestedMoveDir.equals("N")){
-		    		yCurrentPos = yCurrentPos - 1;
-    				if(!isValid_Y(yCurrentPos)){
-    					// On the edge, returns rovers current position unchanged
-    					return roverPos;
-    				}
-		    		//check planetMap (immutable)
-		    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-			    		if( moveThere.getTerrain() != Terrain.NONE){
-				    		// Move to the new map square, unless occupied by another rover		    		
-				    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-				    			// if moveRover call is successful then update latest move time value
-				    			thisRover.updateMoveTime();
-				    		} else {
-				    			//System.out.println("no move north, rover in the way"); //debug status out
-				    		}
-			    		}
-	    			}
-		    	
-	    			if(requestedMoveDir.equals("S")){
-		    		yCurrentPos = yCurrentPos + 1;
-    				if(!isValid_Y(yCurrentPos)){
-    					// On the edge, returns rovers current position unchanged
-    					return roverPos;
-    				}
-		    		//check planetMap (immutable)
-		    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-			    		if( moveThere.getTerrain() != Terrain.NONE){
-				    		// Move to the new map square, unless occupied by another rover
-				    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-				    			// if moveRover call is successful then update latest move time value
-				    			thisRover.updateMoveTime();
-				    		} else {
-				    			//System.out.println("no move south, rover in the way"); //debug status out
-				    		}
-			    		}
-	    			}
-	    			
-	    			if(requestedMoveDir.equals("E")){
-			    		xCurrentPos = xCurrentPos + 1;
-	    				if(!isValid_X(xCurrentPos)){
-	    					// On the edge, returns rovers current position unchanged
-	    					return roverPos;
-	    				}
-			    		//check planetMap (immutable)
-			    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-				    		if( moveThere.getTerrain() != Terrain.NONE){
-					    		// Move to the new map square, unless occupied by another rover	
-					    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-					    			// if moveRover call is successful then update latest move time value
-					    			thisRover.updateMoveTime();
-					    		} else {
-					    			//System.out.println("no move east, rover in the way"); //debug status out
-					    		}
-				    		}
-		    			}
-	    			
-	    			if(requestedMoveDir.equals("W")){
-			    		xCurrentPos = xCurrentPos - 1;
-	    				if(!isValid_X(xCurrentPos)){
-	    					// On the edge, returns rovers current position unchanged
-	    					return roverPos;
-	    				}
-			    		//check planetMap (immutable)
-			    		MapTile moveThere = planetMap.getTile(xCurrentPos, yCurrentPos);
-				    		if( moveThere.getTerrain() != Terrain.NONE){
-					    		// Move to the new map square, unless occupied by another rover
-					    		if(roverLocations.moveRover(thisRover.getRoverName(), new Coord(xCurrentPos, yCurrentPos))){
-					    			// if moveRover call is successful then update latest move time value
-					    			thisRover.updateMoveTime();
-					    		} else {
-					    			//System.out.println("no move west, rover in the way"); //debug status out
-					    		}
-				    		}
-		    			}
-	    	}
-	    	 		    	
-	    	return new Coord(xCurrentPos,yCurrentPos);
-    	} // *** release syncro lock on roverLocations
-    }
-    
-	static boolean checkValidLocation(Coord loc){
-		return (loc.xpos >= 0 && loc.xpos < mapWidth && loc.ypos >= 0 && loc.ypos < mapHeight);
-	}
-	
-	static boolean isValid_Y(int ypos){
-		return (ypos >= 0 && ypos < mapHeight);
-	}
-	
-	static boolean isValid_X(int xpos){
-		return (xpos >= 0 && xpos < mapWidth);
-	}
-    
+	// only the default match is shown on the displays
 	static void updateGUIDisplay() throws Exception{
+		if (headless) {
+			return;
+		}
+		Match match = defaultMatch;
 		//myWorker.displayRovers(roverLocations);
 		//myWorker.displayActivity(roverLocations, scienceLocations);
 		//myWorker.displayFullMap(roverLocations, scienceLocations, planetMap);
 		//myWorker2.displayFullMap(roverLocations.clone(), scienceLocations, planetMap);
-		myWorker3.displayFullMap(roverLocations.clone(), scienceLocations, planetMap);
+		myWorker3.displayFullMap(match.roverLocations, match.scienceLocations, match.planetMap);
+	}
+	
+	// the display keeps hold of the live roverLocations and scienceLocations, so after the first
+	// updateGUIDisplay() it only needs to hear which tiles changed
+	static void roverMovedDisplayUpdate(Match match, Coord from, Coord to){
+		if (headless || match != defaultMatch) {
+			return;
+		}
+		myWorker3.displayRoverMove(from, to);
 	}
 	
-	static void scoreDisplayUpdate() throws Exception{
-		myWorker3.displayScore(corpCollectedScience);
+	static void scienceRemovedDisplayUpdate(Match match, Coord loc){
+		if (headless || match != defaultMatch) {
+			return;
+		}
+		myWorker3.displayScienceRemoved(loc);
 	}
 	
-	static void stopRoverAreGO(){
-		roversAreGO = false;
-		countDownTimer.stop();
+	static void scoreDisplayUpdate(Match match) throws Exception{
+		if (headless || match != defaultMatch) {
+			return;
+		}
+		myWorker3.displayScore(match.getCorpScore(1), match.getCorpScore(2), match.getCorpScore(0));
 	}
 	
 	// sad face - more hard coded bs
-	private static int getCorpNumber(Rover aRover){
+	static int getCorpNumber(Rover aRover){
 		int tnum = 0;
+		if(aRover.isSynthetic()){
+			// load test rovers don't play for either corporation
+			return tnum;
+		}
 		String roverNumber = aRover.getRoverName().toString().substring(6);
 		// check for Blue Corp - return int 1
 		if(roverNumber.equals("01") || roverNumber.equals("02") || roverNumber.equals("03") 
@@ -836,10 +632,19 @@ public class SwarmServer {
 	}
 }
 
-class TimeLimitStop implements ActionListener {	
-	public void actionPerformed(ActionEvent event) {
-		SwarmServer.stopRoverAreGO();
-		System.out.println("Time is up - Return mission is launching");
-		Toolkit.getDefaultToolkit().beep();
+// Run periodically by SwarmServer.scheduler - ends each match once the time limit has passed on its
+// game clock, so a scaled or manual clock also decides when the match is over
+class TimeLimitStop implements Runnable {	
+	public void run() {
+		for (Match match : SwarmServer.matches.values()) {
+			if (!match.roversAreGO || !match.isTimeUp()) {
+				continue;
+			}
+			SwarmServer.endMatch(match);
+			System.out.println("Match " + match.getId() + ": Time is up - Return mission is launching");
+			if (!SwarmServer.headless && match == SwarmServer.defaultMatch) {
+				Toolkit.getDefaultToolkit().beep();
+			}
+		}
 	}
 }
\ No newline at end of file
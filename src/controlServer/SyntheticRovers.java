@@ -0,0 +1,90 @@
+package controlServer;
+
+import java.io.IOException;
+import java.util.Random;
+
+import common.Coord;
+import common.PlanetMap;
+import common.Rover;
+import common.RoverLocations;
+import enums.RoverName;
+import enums.Terrain;
+
+/**
+ * Rover identities for load testing, beyond the fixed set in RoverName.
+ *
+ * A server started with -syntheticRovers=N accepts the names LOAD_0 to
+ * LOAD_(N-1) at SUBMITNAME as well as the usual ones. A synthetic rover has
+ * the equipment of one of the match rovers ROVER_01 to ROVER_18, in turn, and
+ * is put on a free tile picked at random when it connects. It takes part in
+ * the game like any other rover - it is seen on SCANs and blocks moves - but
+ * doesn't score for a corporation, isn't written to the journal and is
+ * taken off the map again when its connection closes.
+ *
+ * See loadTest.LoadGenerator for the client side.
+ */
+final class SyntheticRovers {
+	static final String NAME_PREFIX = "LOAD_";
+
+	// the models synthetic rovers take their equipment from
+	private static final RoverName[] MODELS = {
+		RoverName.ROVER_01, RoverName.ROVER_02, RoverName.ROVER_03, RoverName.ROVER_04, RoverName.ROVER_05,
+		RoverName.ROVER_06, RoverName.ROVER_07, RoverName.ROVER_08, RoverName.ROVER_09, RoverName.ROVER_10,
+		RoverName.ROVER_11, RoverName.ROVER_12, RoverName.ROVER_13, RoverName.ROVER_14, RoverName.ROVER_15,
+		RoverName.ROVER_16, RoverName.ROVER_17, RoverName.ROVER_18
+	};
+
+	// how many random tiles are tried before giving up on finding a free one
+	private static final int PLACEMENT_ATTEMPTS = 100000;
+
+	private SyntheticRovers() {
+	}
+
+	/**
+	 * @return the number of the synthetic rover with this name, or -1 if it isn't
+	 *         one or is over the limit the server was started with
+	 */
+	static int parse(String name, int limit) {
+		if (!name.startsWith(NAME_PREFIX)) {
+			return -1;
+		}
+		try {
+			int n = Integer.parseInt(name.substring(NAME_PREFIX.length()));
+			return (n >= 0 && n < limit) ? n : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Makes synthetic rover n and puts it on the map of the match.
+	 */
+	static Rover create(int n, Match match) throws IOException {
+		PlanetMap planetMap = match.planetMap;
+		RoverLocations roverLocations = match.roverLocations;
+		Rover rover = new Rover(MODELS[n % MODELS.length], RoverLocations.syntheticId(n), match.clock);
+		if (roverLocations.getLocation(rover.getId()) != null) {
+			throw new IOException(NAME_PREFIX + n + " is already connected");
+		}
+
+		// seeded with n so a load test starts the same way every time
+		Random random = new Random(n);
+		for (int i = 0; i < PLACEMENT_ATTEMPTS; i++) {
+			int x = random.nextInt(planetMap.getWidth());
+			int y = random.nextInt(planetMap.getHeight());
+			// soil and gravel can be driven on and off by every drive type
+			Terrain ter = planetMap.getTerrain(x, y);
+			if (ter != Terrain.SOIL && ter != Terrain.GRAVEL) {
+				continue;
+			}
+			if (roverLocations.moveRover(rover.getId(), null, new Coord(x, y))) {
+				return rover;
+			}
+			// the tile was taken - or another connection placed this rover since the check above
+			if (roverLocations.getLocation(rover.getId()) != null) {
+				throw new IOException(NAME_PREFIX + n + " is already connected");
+			}
+		}
+		throw new IOException("no free tile for " + NAME_PREFIX + n);
+	}
+}
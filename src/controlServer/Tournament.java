@@ -0,0 +1,450 @@
+package controlServer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import common.GameClock;
+import common.LatencyHistogram;
+import common.ProceduralWorld;
+import common.Transport;
+
+/**
+ * Plays a tournament of matches between the sample bots without anyone
+ * having to watch. The matches are hosted by a headless SwarmServer in this
+ * process, several at a time, on a game clock running -timeScale times faster
+ * than real time, and each is played by a copy of every bot in -bots, run
+ * on threads of this process. When a match is over its scores, how long it
+ * took and the latencies of its commands are written to a CSV and a JSON
+ * file, along with a summary of the whole tournament.
+ *
+ * The bots only see the server through their connections, so they play as
+ * they would against a server of their own. Their pauses between commands
+ * are timed by the match's game clock, handed to them through a
+ * setClock(GameClock) method, so they get as many turns as on a real time
+ * clock. A bot without one pauses in real time and gets fewer turns the
+ * faster the clock, and then the JSON summary carries a caveat. The time
+ * scale is written next to every result either way.
+ *
+ * Run from the top of the repository so the map files are found, e.g.
+ *   java -cp bin:libs/* controlServer.Tournament -matches=40 -parallel=8 -out=results/strategy-a
+ *
+ * options:
+ *   -matches=N     matches to play (one on each map)
+ *   -parallel=N    matches played at once (4)
+ *   -maps=a,b      maps the matches are played on in turn, map files or world:WIDTHxHEIGHT[:SEED] - a world
+ *                  without a seed gets -seed plus the number of the match (every Map*.txt in the current directory)
+ *   -bots=a,b      the swarmBots playing in every match (ROVER_07,ROVER_00,ROVER_98,ROVER_99)
+ *   -timeScale=N   how much faster than real time the game clock runs (20)
+ *   -seed=N        seed of the first made up world (1)
+ *   -port=N        port the server listens on (9538, so it can run next to a SwarmServer)
+ *   -loops=N       server event loops (the number of processors)
+ *   -transport=t   socket, or local to have the bots that can talk to the server through an InProcessTransport
+ *                  rather than a socket - the others still use sockets (socket)
+ *   -out=name      results go to name.csv and name.json (tournament)
+ *   -log=file      where the output and errors of the bots and the server go (thrown away)
+ */
+public class Tournament {
+	static final String[] DEFAULT_BOTS = { "ROVER_07", "ROVER_00", "ROVER_98", "ROVER_99" };
+	static final int DEFAULT_PORT = SwarmServer.DEFAULT_PORT + 1;
+	// how often a match is checked to see if it is over, in real milliseconds
+	static final long MATCH_POLL_PERIOD = 100;
+	// how long a bot has to stop once its match is over before it is left to itself
+	static final long BOT_STOP_WAIT = 2000;
+	static final double DEFAULT_TIME_SCALE = 20;
+
+	// the tournament's own output - System.out and System.err go to -log while matches are played
+	private static final PrintStream out = System.out;
+	private static final PrintStream err = System.err;
+
+	// one line of the results
+	static class MatchResult {
+		String match;
+		String map;
+		List<String> bots;
+		// science collected, by corporation
+		LinkedHashMap<String, Integer> scores = new LinkedHashMap<String, Integer>();
+		long elapsedMillis;
+		long commands;
+		double meanMicros;
+		long p50Micros;
+		long p99Micros;
+		long maxMicros;
+		transient LatencyHistogram latency;
+	}
+
+	static class ScoreSummary {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		double mean;
+	}
+
+	static class Summary {
+		int matches;
+		double timeScale;
+		// set when a bot paused in real time on a faster clock, as the scores then depend on it
+		String caveat;
+		long elapsedMillis;
+		LinkedHashMap<String, ScoreSummary> scores = new LinkedHashMap<String, ScoreSummary>();
+		long commands;
+		double meanMicros;
+		long p50Micros;
+		long p99Micros;
+		long maxMicros;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int matchCount = -1;
+		int parallel = 4;
+		List<String> maps = null;
+		List<String> bots = Arrays.asList(DEFAULT_BOTS);
+		double timeScale = DEFAULT_TIME_SCALE;
+		long seed = 1;
+		int port = DEFAULT_PORT;
+		int loops = Runtime.getRuntime().availableProcessors();
+		String outName = "tournament";
+		String logFile = null;
+		boolean local = false;
+
+		for (String s : args) {
+			if (s.startsWith("-matches=")) {
+				matchCount = Integer.parseInt(s.substring(9));
+			} else if (s.startsWith("-parallel=")) {
+				parallel = Integer.parseInt(s.substring(10));
+			} else if (s.startsWith("-maps=")) {
+				maps = Arrays.asList(s.substring(6).split(","));
+			} else if (s.startsWith("-bots=")) {
+				bots = Arrays.asList(s.substring(6).split(","));
+			} else if (s.startsWith("-timeScale=")) {
+				timeScale = Double.parseDouble(s.substring(11));
+			} else if (s.startsWith("-seed=")) {
+				seed = Long.parseLong(s.substring(6));
+			} else if (s.startsWith("-port=")) {
+				port = Integer.parseInt(s.substring(6));
+			} else if (s.startsWith("-loops=")) {
+				loops = Integer.parseInt(s.substring(7));
+			} else if (s.startsWith("-out=")) {
+				outName = s.substring(5);
+			} else if (s.startsWith("-log=")) {
+				logFile = s.substring(5);
+			} else if (s.equals("-transport=local") || s.equals("-transport=socket")) {
+				local = s.endsWith("local");
+			} else {
+				out.println("Tournament: unknown option " + s);
+				System.exit(2);
+			}
+		}
+		if (maps == null) {
+			maps = mapFiles();
+		}
+		if (maps.isEmpty()) {
+			out.println("Tournament: no Map*.txt files here - run from the top of the repository or give -maps");
+			System.exit(2);
+		}
+		if (matchCount < 0) {
+			matchCount = maps.size();
+		}
+		for (String bot : bots) {
+			// check they can all be started before any match is
+			botRunMethod(bot);
+		}
+
+		// the server, headless and with matches only started from here
+		System.setProperty("java.awt.headless", "true");
+		SwarmServer.headless = true;
+		SwarmServer.clock = GameClock.scaled(timeScale);
+		SwarmServer.maxMatches = 0;
+		SwarmServer.startTimers();
+		final SelectorServer server = new SelectorServer(port, loops);
+		Thread serverThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					server.run();
+				} catch (IOException e) {
+					out.println("Tournament: the server stopped - " + e.getMessage());
+				}
+			}
+		}, "Tournament-server");
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		out.println("Tournament: " + matchCount + " matches of " + bots + ", " + parallel + " at a time, game clock at "
+				+ SwarmServer.clock);
+		String caveat = null;
+		for (String bot : bots) {
+			if (timeScale != 1 && clockSetter(botRunMethod(bot).getDeclaringClass()) == null) {
+				caveat = timeScaleCaveat(bot, timeScale);
+				out.println("Tournament: " + caveat);
+			}
+		}
+		PrintStream log = (logFile != null) ? new PrintStream(new FileOutputStream(logFile, true), true) : new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+		System.setOut(log);
+		System.setErr(log);
+
+		long begin = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallel));
+		List<Future<MatchResult>> futures = new ArrayList<Future<MatchResult>>();
+		for (int i = 1; i <= matchCount; i++) {
+			String map = maps.get((i - 1) % maps.size());
+			if (ProceduralWorld.isWorldName(map) && map.indexOf(':', ProceduralWorld.PREFIX.length()) < 0) {
+				map = map + ":" + (seed + i - 1);
+			}
+			futures.add(pool.submit(new MatchRunner("match-" + i, map, bots, port, local)));
+		}
+		List<MatchResult> results = new ArrayList<MatchResult>();
+		for (Future<MatchResult> future : futures) {
+			results.add(future.get());
+		}
+		pool.shutdown();
+		long elapsed = (System.nanoTime() - begin) / 1000000;
+
+		System.setOut(out);
+		System.setErr(err);
+		log.close();
+		Summary summary = summarize(results, timeScale, elapsed);
+		summary.caveat = caveat;
+		writeCsv(outName + ".csv", results, timeScale);
+		writeJson(outName + ".json", results, summary);
+		out.println("Tournament: " + results.size() + " matches in " + elapsed / 1000 + " s, results in "
+				+ outName + ".csv and " + outName + ".json");
+		for (String corp : summary.scores.keySet()) {
+			ScoreSummary score = summary.scores.get(corp);
+			out.println("Tournament: " + corp + " science min " + score.min + " mean " + String.format("%.1f", score.mean)
+					+ " max " + score.max);
+		}
+		out.println("Tournament: " + summary.commands + " commands, mean " + String.format("%.1f", summary.meanMicros)
+				+ " us, p99 " + summary.p99Micros + " us");
+		System.exit(0);
+	}
+
+	// every Map*.txt in the current directory, in name order
+	static List<String> mapFiles() {
+		List<String> maps = new ArrayList<String>();
+		String[] names = new File(".").list();
+		if (names != null) {
+			Arrays.sort(names);
+			for (String name : names) {
+				if (name.startsWith("Map") && name.endsWith(".txt")) {
+					maps.add(name);
+				}
+			}
+		}
+		return maps;
+	}
+
+	// a bot's run() - every bot has a (serverAddress, port, matchId) constructor to play in a given match
+	static Method botRunMethod(String bot) throws ReflectiveOperationException {
+		Class<?> botClass = Class.forName("swarmBots." + bot);
+		botClass.getConstructor(String.class, int.class, String.class);
+		return botClass.getMethod("run");
+	}
+
+	/**
+	 * Plays one match: starts it on the server, connects the bots to it and
+	 * waits for the game clock to run out.
+	 */
+	static class MatchRunner implements Callable<MatchResult> {
+		private final String matchId;
+		private final String map;
+		private final List<String> bots;
+		private final int port;
+		private final boolean local;
+
+		MatchRunner(String matchId, String map, List<String> bots, int port, boolean local) {
+			this.matchId = matchId;
+			this.map = map;
+			this.bots = bots;
+			this.port = port;
+			this.local = local;
+		}
+
+		public MatchResult call() throws Exception {
+			Match match = SwarmServer.startMatch(matchId, map);
+			long begin = System.nanoTime();
+			List<Thread> botThreads = new ArrayList<Thread>();
+			for (String bot : bots) {
+				Thread thread = new Thread(botRunner(bot, match.clock), matchId + "-" + bot);
+				thread.setDaemon(true);
+				thread.start();
+				botThreads.add(thread);
+			}
+
+			// the server's scheduler stops the match, which disconnects the bots
+			while (match.roversAreGO) {
+				Thread.sleep(MATCH_POLL_PERIOD);
+			}
+			long elapsed = (System.nanoTime() - begin) / 1000000;
+			for (Thread thread : botThreads) {
+				// wakes up the bots that pause between commands without checking the connection
+				thread.interrupt();
+			}
+			for (Thread thread : botThreads) {
+				thread.join(BOT_STOP_WAIT);
+			}
+
+			MatchResult result = new MatchResult();
+			result.match = matchId;
+			result.map = map;
+			result.bots = bots;
+			for (int corp = 0; corp < ServerMetrics.CORP_NAMES.length; corp++) {
+				result.scores.put(ServerMetrics.CORP_NAMES[corp], match.getCorpScore(corp));
+			}
+			result.elapsedMillis = elapsed;
+			setLatency(result, match.commandLatency);
+			out.println("Tournament: " + matchId + " on " + map + " - " + result.scores + " in " + elapsed / 1000 + " s");
+			return result;
+		}
+
+		private Runnable botRunner(final String bot, GameClock clock) throws ReflectiveOperationException {
+			final Method run = botRunMethod(bot);
+			Class<?> botClass = run.getDeclaringClass();
+			final Object rover;
+			if (local && hasTransportConstructor(botClass)) {
+				rover = botClass.getConstructor(Transport.class, String.class).newInstance(new InProcessTransport(), matchId);
+			} else {
+				rover = botClass.getConstructor(String.class, int.class, String.class).newInstance("localhost", port, matchId);
+			}
+			Method setClock = clockSetter(botClass);
+			if (setClock != null) {
+				setClock.invoke(rover, clock);
+			}
+			return new Runnable() {
+				public void run() {
+					try {
+						run.invoke(rover);
+					} catch (InvocationTargetException e) {
+						// most bots only stop when their connection does, so this is how the match usually ends for them
+						System.out.println("Tournament: " + bot + " in " + matchId + " stopped - " + e.getCause());
+					} catch (IllegalAccessException e) {
+						System.out.println("Tournament: could not run " + bot + " - " + e);
+					}
+				}
+			};
+		}
+	}
+
+	// bots that can be handed a Transport have a (Transport, matchId) constructor
+	static boolean hasTransportConstructor(Class<?> botClass) {
+		try {
+			botClass.getConstructor(Transport.class, String.class);
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	// bots that can pause by the game clock have a setClock(GameClock), null for the others
+	static Method clockSetter(Class<?> botClass) {
+		try {
+			return botClass.getMethod("setClock", GameClock.class);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	static void setLatency(MatchResult result, LatencyHistogram latency) {
+		result.latency = latency;
+		result.commands = latency.getCount();
+		result.meanMicros = latency.getMeanNanos() / 1000;
+		result.p50Micros = latency.getValueAtPercentile(50) / 1000;
+		result.p99Micros = latency.getValueAtPercentile(99) / 1000;
+		result.maxMicros = latency.getMaxNanos() / 1000;
+	}
+
+	static Summary summarize(List<MatchResult> results, double timeScale, long elapsed) {
+		Summary summary = new Summary();
+		summary.matches = results.size();
+		summary.timeScale = timeScale;
+		summary.elapsedMillis = elapsed;
+		LatencyHistogram latency = new LatencyHistogram();
+		for (MatchResult result : results) {
+			for (String corp : result.scores.keySet()) {
+				ScoreSummary score = summary.scores.get(corp);
+				if (score == null) {
+					score = new ScoreSummary();
+					summary.scores.put(corp, score);
+				}
+				int value = result.scores.get(corp);
+				score.min = Math.min(score.min, value);
+				score.max = Math.max(score.max, value);
+				score.mean += (double) value / results.size();
+			}
+			latency.add(result.latency);
+		}
+		summary.commands = latency.getCount();
+		summary.meanMicros = latency.getMeanNanos() / 1000;
+		summary.p50Micros = latency.getValueAtPercentile(50) / 1000;
+		summary.p99Micros = latency.getValueAtPercentile(99) / 1000;
+		summary.maxMicros = latency.getMaxNanos() / 1000;
+		return summary;
+	}
+
+	static String timeScaleCaveat(String bot, double timeScale) {
+		return "the game clock ran at " + timeScale + "x time but " + bot + " pauses in real time, so it got about 1/" + timeScale
+				+ " of the turns it would on a real time clock - only compare scores with runs at the same timeScale";
+	}
+
+	static void writeCsv(String fileName, List<MatchResult> results, double timeScale) throws IOException {
+		Writer writer = new FileWriter(fileName);
+		try {
+			writer.write("match,map,bots");
+			for (String corp : ServerMetrics.CORP_NAMES) {
+				writer.write("," + corp);
+			}
+			writer.write(",time_scale,elapsed_ms,commands,mean_us,p50_us,p99_us,max_us\n");
+			for (MatchResult result : results) {
+				// the bots are separated by spaces, and world names have no commas, so nothing needs quoting
+				StringBuilder line = new StringBuilder();
+				line.append(result.match).append(',').append(result.map).append(',');
+				for (int i = 0; i < result.bots.size(); i++) {
+					line.append(i > 0 ? " " : "").append(result.bots.get(i));
+				}
+				for (int score : result.scores.values()) {
+					line.append(',').append(score);
+				}
+				line.append(',').append(timeScale).append(',').append(result.elapsedMillis).append(',').append(result.commands)
+						.append(',').append(String.format("%.1f", result.meanMicros)).append(',').append(result.p50Micros)
+						.append(',').append(result.p99Micros).append(',').append(result.maxMicros).append('\n');
+				writer.write(line.toString());
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	static void writeJson(String fileName, List<MatchResult> results, Summary summary) throws IOException {
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		LinkedHashMap<String, Object> json = new LinkedHashMap<String, Object>();
+		json.put("summary", summary);
+		json.put("matches", results);
+		Writer writer = new FileWriter(fileName);
+		try {
+			gson.toJson(json, writer);
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package enums;
+
+public enum MoveDirection {
+	N (0, -1),
+	S (0, 1),
+	E (1, 0),
+	W (-1, 0),
+	NONE (0, 0);
+
+	private final int xOffset;
+	private final int yOffset;
+
+	private MoveDirection(int xOffset, int yOffset) {
+		this.xOffset = xOffset;
+		this.yOffset = yOffset;
+	}
+
+	public int getXOffset() {
+		return xOffset;
+	}
+
+	public int getYOffset() {
+		return yOffset;
+	}
+
+    public static MoveDirection getEnum(String input){
+    	MoveDirection output;
+
+    	switch(input){
+    	case "N":
+    		output = MoveDirection.N;
+    		break;
+    	case "S":
+    		output = MoveDirection.S;
+    		break;
+    	case "E":
+    		output = MoveDirection.E;
+    		break;
+    	case "W":
+    		output = MoveDirection.W;
+    		break;
+
+    	default:
+    		output = MoveDirection.NONE;
+    	}
+    	return output;
+    }
+}
@@ -0,0 +1,70 @@
+package loadTest;
+
+import java.util.Random;
+
+/**
+ * The kinds of traffic a LoadGenerator can put on the server. Each synthetic
+ * rover asks its mix for the next command every time round its loop.
+ */
+public enum CommandMix {
+	// mostly SCANs, the most expensive command to serve
+	SCAN_HEAVY {
+		Command next(Random random, long step) {
+			int p = random.nextInt(100);
+			return p < 70 ? Command.SCAN : p < 90 ? Command.LOC : Command.MOVE;
+		}
+	},
+	// mostly MOVEs, which contend for tiles in RoverLocations
+	MOVE_HEAVY {
+		Command next(Random random, long step) {
+			int p = random.nextInt(100);
+			return p < 70 ? Command.MOVE : p < 90 ? Command.LOC : Command.SCAN;
+		}
+	},
+	// a MOVE in a random direction, then a LOC to see where it got to
+	RANDOM_WALK {
+		Command next(Random random, long step) {
+			return (step % 2 == 0) ? Command.MOVE : Command.LOC;
+		}
+	},
+	// what ROVER_07 does each time round its loop - LOC, SCAN and GATHER in one BATCH, then a MOVE
+	// that keeps going the same way until it is blocked
+	ROVER_07 {
+		Command next(Random random, long step) {
+			return (step % 2 == 0) ? Command.TICK : Command.MOVE;
+		}
+
+		boolean keepsHeading() {
+			return true;
+		}
+	};
+
+	/**
+	 * What a synthetic rover sends. GATHER has no reply of its own, so it is
+	 * sent in a BATCH to have something to time; TICK is the ROVER_07 batch.
+	 */
+	enum Command { LOC, SCAN, MOVE, GATHER, TIMER, TICK }
+
+	abstract Command next(Random random, long step);
+
+	// false if every MOVE goes in a new random direction
+	boolean keepsHeading() {
+		return false;
+	}
+
+	/**
+	 * @param name scan, move, walk or rover07
+	 */
+	public static CommandMix parse(String name) {
+		if (name.equals("scan")) {
+			return SCAN_HEAVY;
+		} else if (name.equals("move")) {
+			return MOVE_HEAVY;
+		} else if (name.equals("walk")) {
+			return RANDOM_WALK;
+		} else if (name.equals("rover07")) {
+			return ROVER_07;
+		}
+		throw new IllegalArgumentException("unknown command mix: " + name + " - use scan, move, walk or rover07");
+	}
+}
@@ -0,0 +1,122 @@
+package loadTest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts a swarm of synthetic rovers on a running SwarmServer and reports the
+ * throughput and latency of the commands they send.
+ *
+ * The server has to be started with -syntheticRovers=N for at least as many
+ * rovers as are asked for here (plus -first), and usually -headless and
+ * -io=nio, e.g.
+ *   SwarmServer -headless -io=nio -syntheticRovers=2000 Map100x60_2016-04-30_1.txt
+ *   LoadGenerator -rovers=2000 -mix=rover07 -rate=20000 -seconds=30
+ *
+ * options:
+ *   -host=name        server to connect to (localhost)
+ *   -port=N           its port (9537)
+ *   -rovers=N         how many rovers to connect (100)
+ *   -first=N          number of the first rover, so several generators can share a match (0)
+ *   -match=id         the match on the server to play in, started if it isn't running yet (the default match)
+ *   -mix=name         scan, move, walk or rover07 - see CommandMix (rover07)
+ *   -rate=N           commands a second from all the rovers together, 0 for as fast as they can (0)
+ *   -scanFormat=name  JSON, BINARY or DELTA (JSON)
+ *   -warmup=S         seconds run before the latencies are recorded (5)
+ *   -seconds=S        seconds the latencies are recorded for (30)
+ *   -seed=N           for the rovers' random choices (1)
+ */
+public class LoadGenerator {
+
+	public static void main(String[] args) throws Exception {
+		String host = "localhost";
+		int port = 9537;
+		int roverCount = 100;
+		int first = 0;
+		CommandMix mix = CommandMix.ROVER_07;
+		double rate = 0;
+		String scanFormat = "JSON";
+		double warmup = 5;
+		double seconds = 30;
+		long seed = 1;
+		String matchId = null;
+
+		for (String s : args) {
+			if (s.startsWith("-host=")) {
+				host = s.substring(6);
+			} else if (s.startsWith("-port=")) {
+				port = Integer.parseInt(s.substring(6));
+			} else if (s.startsWith("-rovers=")) {
+				roverCount = Integer.parseInt(s.substring(8));
+			} else if (s.startsWith("-first=")) {
+				first = Integer.parseInt(s.substring(7));
+			} else if (s.startsWith("-mix=")) {
+				mix = CommandMix.parse(s.substring(5));
+			} else if (s.startsWith("-rate=")) {
+				rate = Double.parseDouble(s.substring(6));
+			} else if (s.startsWith("-scanFormat=")) {
+				scanFormat = s.substring(12);
+			} else if (s.startsWith("-warmup=")) {
+				warmup = Double.parseDouble(s.substring(8));
+			} else if (s.startsWith("-seconds=")) {
+				seconds = Double.parseDouble(s.substring(9));
+			} else if (s.startsWith("-seed=")) {
+				seed = Long.parseLong(s.substring(6));
+			} else if (s.startsWith("-match=")) {
+				matchId = s.substring(7);
+			} else {
+				System.out.println("LoadGenerator: unknown option " + s);
+				System.exit(2);
+			}
+		}
+
+		LoadStats stats = new LoadStats();
+		List<SyntheticRover> rovers = new ArrayList<SyntheticRover>();
+		// one at a time, so the server's accept backlog isn't overrun
+		for (int n = first; n < first + roverCount; n++) {
+			SyntheticRover rover = new SyntheticRover(n, mix, stats, seed);
+			try {
+				rover.connect(host, port, matchId, scanFormat);
+				rovers.add(rover);
+			} catch (IOException e) {
+				rover.close();
+				System.out.println("LoadGenerator: " + rover.getName() + " could not connect - " + e.getMessage()
+						+ " (is the server running with -syntheticRovers=" + (first + roverCount) + "?)");
+			}
+		}
+		if (rovers.isEmpty()) {
+			System.exit(1);
+		}
+		System.out.println("LoadGenerator: " + rovers.size() + " rovers connected, running " + mix
+				+ (rate > 0 ? " at " + rate + " commands/s" : " as fast as the server answers")
+				+ " with " + scanFormat + " scans");
+
+		// the rovers' sends are spread evenly over each interval rather than all going at once
+		long start = System.nanoTime() + 100000000L;
+		long intervalNanos = (rate > 0) ? (long) (1e9 * rovers.size() / rate) : 0;
+		long recordFrom = start + (long) (warmup * 1e9);
+		long endAt = recordFrom + (long) (seconds * 1e9);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < rovers.size(); i++) {
+			SyntheticRover rover = rovers.get(i);
+			rover.firstSend = start + intervalNanos * i / rovers.size();
+			rover.intervalNanos = intervalNanos;
+			rover.recordFrom = recordFrom;
+			rover.endAt = endAt;
+			Thread thread = new Thread(rover, rover.getName());
+			thread.setDaemon(true);
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		StringBuilder report = new StringBuilder();
+		stats.report(report, seconds);
+		System.out.print(report);
+		System.out.println("LoadGenerator: " + stats.getErrors() + " rovers lost their connection");
+		System.exit(stats.getErrors() == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,64 @@
+package loadTest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import common.LatencyHistogram;
+
+/**
+ * Latencies of every command the synthetic rovers sent, shared by all of them.
+ */
+class LoadStats {
+	private static final CommandMix.Command[] COMMANDS = CommandMix.Command.values();
+
+	private final LatencyHistogram[] latency = new LatencyHistogram[COMMANDS.length];
+	private final LatencyHistogram all = new LatencyHistogram();
+	private final AtomicInteger errors = new AtomicInteger();
+
+	LoadStats() {
+		for (int i = 0; i < latency.length; i++) {
+			latency[i] = new LatencyHistogram();
+		}
+	}
+
+	void record(CommandMix.Command command, long nanos) {
+		latency[command.ordinal()].record(nanos);
+		all.record(nanos);
+	}
+
+	// a rover that lost its connection - only the first few are printed
+	void recordError(String message) {
+		if (errors.incrementAndGet() <= 10) {
+			System.out.println("LoadGenerator: " + message);
+		}
+	}
+
+	int getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * Appends a line per command, and one for all of them, as text lines each
+	 * ending with '\n'. Times are in microseconds.
+	 * @param seconds how long the commands were recorded for
+	 */
+	void report(StringBuilder out, double seconds) {
+		out.append("command count ops_per_s mean_us p50_us p99_us p999_us max_us\n");
+		for (CommandMix.Command command : COMMANDS) {
+			if (latency[command.ordinal()].getCount() > 0) {
+				appendLine(out, command.name(), latency[command.ordinal()], seconds);
+			}
+		}
+		appendLine(out, "ALL", all, seconds);
+	}
+
+	private static void appendLine(StringBuilder out, String name, LatencyHistogram histogram, double seconds) {
+		out.append(name).append(' ')
+				.append(histogram.getCount()).append(' ')
+				.append(String.format("%.1f", histogram.getCount() / seconds)).append(' ')
+				.append(String.format("%.1f", histogram.getMeanNanos() / 1000.0)).append(' ')
+				.append(histogram.getValueAtPercentile(50) / 1000).append(' ')
+				.append(histogram.getValueAtPercentile(99) / 1000).append(' ')
+				.append(histogram.getValueAtPercentile(99.9) / 1000).append(' ')
+				.append(histogram.getMaxNanos() / 1000).append('\n');
+	}
+}
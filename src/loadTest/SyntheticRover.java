@@ -0,0 +1,185 @@
+package loadTest;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import enums.MoveDirection;
+
+/**
+ * One connection to the server, logged in as synthetic rover LOAD_n, sending
+ * the commands of its CommandMix and timing each one until it gets the whole
+ * reply back.
+ *
+ * With a send interval the commands are sent on a fixed schedule and timed
+ * from when they were due to go rather than when they went, so a server that
+ * falls behind shows up in the latencies instead of just slowing the rover
+ * down. Without one the rover sends its next command as soon as it has the
+ * last reply.
+ */
+class SyntheticRover implements Runnable {
+	private static final MoveDirection[] DIRECTIONS = { MoveDirection.N, MoveDirection.S, MoveDirection.E, MoveDirection.W };
+	// a server that doesn't answer for this long is taken to have gone
+	private static final int READ_TIMEOUT = 30000;
+
+	private final int number;
+	private final CommandMix mix;
+	private final LoadStats stats;
+	private final Random random;
+
+	private Socket socket;
+	private BufferedReader in;
+	private Writer out;
+	// the last line of a SCAN reply in the negotiated scan format
+	private String scanEnd;
+	private MoveDirection heading;
+
+	// System.nanoTime values, set by the LoadGenerator before the rover is started
+	long firstSend;
+	long intervalNanos;
+	long recordFrom;
+	long endAt;
+
+	SyntheticRover(int number, CommandMix mix, LoadStats stats, long seed) {
+		this.number = number;
+		this.mix = mix;
+		this.stats = stats;
+		this.random = new Random(seed + number);
+		this.heading = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+	}
+
+	String getName() {
+		return "LOAD_" + number;
+	}
+
+	/**
+	 * Connects, logs in and sets up the connection - the scan format, and MOVE
+	 * events so a MOVE has a reply to time.
+	 * @param matchId the match to play in, or null for the server's default match
+	 */
+	void connect(String host, int port, String matchId, String scanFormat) throws IOException {
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		socket.setSoTimeout(READ_TIMEOUT);
+		in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+
+		readUntil("SUBMITNAME");
+		send(getName() + (matchId != null ? " MATCH " + matchId : "") + "\n");
+		send("SCAN_FORMAT " + scanFormat + "\n");
+		String format = readUntil("SCAN_FORMAT");
+		if (format.endsWith("BINARY")) {
+			scanEnd = "SCAN_BIN";
+		} else if (format.endsWith("DELTA")) {
+			scanEnd = "SCAN_DELTA";
+		} else {
+			scanEnd = "SCAN_END";
+		}
+		send("SUBSCRIBE MOVE\n");
+		readUntil("SUBSCRIBE");
+	}
+
+	public void run() {
+		long next = firstSend;
+		long step = 0;
+		try {
+			while (true) {
+				long start;
+				if (intervalNanos > 0) {
+					if (next >= endAt) {
+						break;
+					}
+					long now;
+					while ((now = System.nanoTime()) < next) {
+						LockSupport.parkNanos(next - now);
+					}
+					start = next;
+					next += intervalNanos;
+				} else {
+					start = System.nanoTime();
+					if (start >= endAt) {
+						break;
+					}
+				}
+
+				CommandMix.Command command = mix.next(random, step++);
+				runCommand(command);
+				if (start >= recordFrom) {
+					stats.record(command, System.nanoTime() - start);
+				}
+			}
+		} catch (IOException e) {
+			stats.recordError(getName() + ": " + e);
+		} finally {
+			close();
+		}
+	}
+
+	private void runCommand(CommandMix.Command command) throws IOException {
+		switch (command) {
+		case LOC:
+			send("LOC\n");
+			readUntil("LOC");
+			break;
+		case SCAN:
+			send("SCAN\n");
+			readUntil(scanEnd);
+			break;
+		case MOVE:
+			if (!mix.keepsHeading()) {
+				heading = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+			}
+			send("MOVE " + heading + "\n");
+			if (readUntil("EVENT MOVE").startsWith("EVENT MOVE BLOCKED")) {
+				heading = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+			}
+			break;
+		case GATHER:
+			send("BATCH\nGATHER\nBATCH_END\n");
+			readUntil("BATCH_END");
+			break;
+		case TIMER:
+			send("TIMER\n");
+			readUntil("TIMER");
+			break;
+		case TICK:
+			send("BATCH\nLOC\nSCAN\nGATHER\nBATCH_END\n");
+			readUntil("BATCH_END");
+			break;
+		}
+	}
+
+	private void send(String lines) throws IOException {
+		out.write(lines);
+		out.flush();
+	}
+
+	// reads lines up to and including the first one starting with prefix, and returns it
+	private String readUntil(String prefix) throws IOException {
+		while (true) {
+			String line = in.readLine();
+			if (line == null) {
+				throw new EOFException("server closed the connection");
+			}
+			if (line.startsWith(prefix)) {
+				return line;
+			}
+		}
+	}
+
+	void close() {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
@@ -9,7 +9,11 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import common.Coord;
+import common.ScanDelta;
 import common.ScanMap;
+import common.ScanMapCodec;
+import common.SocketTransport;
+import common.Transport;
 import enums.Science;
 
 public class Query {
@@ -32,23 +36,158 @@ public class Query {
 		}
 	}
 	
-	private BufferedReader in;
-	private PrintWriter out;
+	/**
+	 * Receives the EVENT lines the server pushes for the topics passed to
+	 * {@link Query#subscribe(String)}. Called on the thread that is reading
+	 * from the server, while it is waiting for a reply or in
+	 * {@link Query#awaitReady()}.
+	 */
+	public interface EventListener {
+		// the rover moved to loc (topic LOC)
+		void onLoc(Coord loc);
+
+		// result is ACCEPTED, COOLDOWN or BLOCKED, loc is where the rover is now (topic MOVE)
+		void onMove(String result, Coord loc);
+
+		// the drive has cooled down and the rover can move again (topic READY)
+		void onReady();
+	}
+
+	/**
+	 * An EventListener that ignores everything, to override just what is needed.
+	 */
+	public static class EventAdapter implements EventListener {
+		@Override
+		public void onLoc(Coord loc) {
+		}
+
+		@Override
+		public void onMove(String result, Coord loc) {
+		}
+
+		@Override
+		public void onReady() {
+		}
+	}
+
+	private Transport transport;
 	private Gson gson;
+
+	private ArrayList<EventListener> listeners = new ArrayList<EventListener>();
+	private boolean readySubscribed = false;
+	private boolean ready = true;
+	// true while the server is sending SCAN replies as deltas
+	private boolean deltaScans = false;
 	
 	public Query(BufferedReader in, PrintWriter out, Gson gson) {
-		this.in = in;
-		this.out = out;
+		this(new SocketTransport(in, out), gson);
+	}
+
+	/**
+	 * @param transport the connection to the server - a socket or, for a rover
+	 *        in the same JVM as the server, a controlServer.InProcessTransport
+	 */
+	public Query(Transport transport, Gson gson) {
+		this.transport = transport;
 		this.gson = gson;
 	}
 	
+	/**
+	 * Reads the next line from the server that isn't a pushed event, handing
+	 * any events on the way to the listeners.
+	 * @return the line, or null if the connection was closed
+	 * @throws IOException
+	 */
+	private String readLine() throws IOException {
+		String line;
+		while ((line = transport.readLine()) != null && dispatchEvent(line));
+		return line;
+	}
+
+	/**
+	 * @return true if the line was an event
+	 */
+	private boolean dispatchEvent(String line) {
+		if (!line.startsWith("EVENT ")) return false;
+
+		String[] parts = line.split(" ");
+		if (parts[1].equals("READY")) {
+			ready = true;
+			for (EventListener listener : listeners) {
+				listener.onReady();
+			}
+		} else if (parts[1].equals("LOC") && parts.length == 4) {
+			Coord loc = new Coord(Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+			for (EventListener listener : listeners) {
+				listener.onLoc(loc);
+			}
+		} else if (parts[1].equals("MOVE") && parts.length == 5) {
+			Coord loc = new Coord(Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+			for (EventListener listener : listeners) {
+				listener.onMove(parts[2], loc);
+			}
+		}
+		// events this client doesn't know about are skipped
+		return true;
+	}
+
+	public void addEventListener(EventListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeEventListener(EventListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Asks the server to push events for a topic - LOC, MOVE or READY - to
+	 * the listeners.
+	 * @return false if the server doesn't support the topic
+	 * @throws IOException
+	 */
+	public boolean subscribe(String topic) throws IOException {
+		if (topic.equals("READY")) {
+			// the server answers with a READY as soon as the rover can move
+			ready = false;
+		}
+		boolean subscribed = sendAndGetReply("SUBSCRIBE " + topic) != null;
+		if (topic.equals("READY")) {
+			readySubscribed = subscribed;
+			ready = ready || !subscribed;
+		}
+		return subscribed;
+	}
+
+	/**
+	 * Waits until the server says the rover's drive has cooled down since the
+	 * last {@link Query#doMove(String)}. Returns straight away if not
+	 * subscribed to READY.
+	 * @throws IOException
+	 */
+	public void awaitReady() throws IOException {
+		while (!ready) {
+			String line = transport.readLine();
+			if (line == null) throw new IOException("connection closed");
+			dispatchEvent(line); // anything else here was meant for an earlier, abandoned request
+		}
+	}
+
+	// false between a MOVE and the READY that follows it, when subscribed to READY
+	public boolean isReady() {
+		return ready;
+	}
+
 	/**
 	 * Clears the input buffer. Intended to be used when there was an unexpected
 	 * reply.
 	 * @throws IOException
 	 */
 	private void flush() throws IOException {
-		while (in.ready()) in.readLine();
+		while (transport.ready()) {
+			// events are still passed on, they aren't part of the unexpected reply
+			String line = transport.readLine();
+			if (line != null) dispatchEvent(line);
+		}
 	}
 
 	/**
@@ -59,14 +198,28 @@ public class Query {
 	 * @throws IOException
 	 */
 	private String sendAndGetReply(String command) throws IOException {
-		out.println(command);
-		String reply = in.readLine();
+		transport.send(command + "\n");
+		String reply = readLine();
 		if (reply == null || !reply.startsWith(command)) {
 			flush();
+			resyncScan();
 			return null;
 		}
 		return reply;
 	}
+
+	/**
+	 * The server takes every delta it encodes as the base of the next one, so
+	 * once a reply has been dropped the rover's map and the server's base
+	 * differ. Selecting DELTA again makes the server send the next SCAN as a
+	 * full window.
+	 * @throws IOException
+	 */
+	private void resyncScan() throws IOException {
+		if (deltaScans) {
+			requestScanFormat("DELTA");
+		}
+	}
 	
 	public ArrayList<String> getEquipment() throws IOException {
 		//System.out.println("ROVER_07 method getEquipment()");
@@ -75,7 +228,7 @@ public class Query {
 		// start building string of json data
 		String jsonEqListIn;
 		StringBuilder jsonEqList = new StringBuilder();
-		while (!(jsonEqListIn = in.readLine()).equals("EQUIPMENT_END")) {
+		while (!(jsonEqListIn = readLine()).equals("EQUIPMENT_END")) {
 			jsonEqList.append(jsonEqListIn);
 		}
 
@@ -93,13 +246,85 @@ public class Query {
 		return Parser.extractLocation(line);
 	}
 
+	/**
+	 * Asks the server to send SCAN results in the compact binary format
+	 * instead of pretty-printed JSON. Servers that don't know the command
+	 * keep using JSON, which {@link Query#getScan()} still understands.
+	 * @return true if the server switched to the binary format
+	 * @throws IOException
+	 */
+	public boolean requestBinaryScan() throws IOException {
+		return requestScanFormat("BINARY");
+	}
+
+	/**
+	 * Asks the server to answer SCAN with only the tiles that changed since
+	 * the previous SCAN, read with {@link Query#getScanDelta()} and applied
+	 * with {@link WorldMap#updateMap(ScanDelta)}.
+	 * @return true if the server switched to deltas
+	 * @throws IOException
+	 */
+	public boolean requestDeltaScan() throws IOException {
+		return requestScanFormat("DELTA");
+	}
+
+	private boolean requestScanFormat(String format) throws IOException {
+		transport.send("SCAN_FORMAT " + format + "\n");
+		String reply = readLine();
+		if (reply == null) return false;
+		if (reply.startsWith("SCAN_FORMAT ")) {
+			deltaScans = reply.equals("SCAN_FORMAT DELTA");
+		}
+		if (reply.equals("SCAN_FORMAT " + format)) return true;
+
+		if (reply.equals("SCAN")) {
+			// older servers match commands by prefix and take this for a SCAN - skip the JSON scan they send
+			String line;
+			while ((line = readLine()) != null && !line.equals("SCAN_END"));
+		} else if (!reply.startsWith("SCAN_FORMAT ")) {
+			flush();
+		}
+		return false;
+	}
+
 	public ScanMap getScan() throws IOException {
-		if (sendAndGetReply("SCAN") == null) return null;
+		String reply = sendAndGetReply("SCAN");
+		if (reply == null) return null;
+		return readScan(reply);
+	}
+
+	/**
+	 * Sends a SCAN and returns what changed since the last one. A full scan,
+	 * from a server not sending deltas, comes back as a delta covering the
+	 * whole window.
+	 */
+	public ScanDelta getScanDelta() throws IOException {
+		String reply = sendAndGetReply("SCAN");
+		if (reply == null) return null;
+		return readScanDelta(reply);
+	}
+
+	private ScanDelta readScanDelta(String reply) throws IOException {
+		if (reply.startsWith("SCAN_DELTA ")) {
+			return ScanDelta.decodeFromString(reply.substring(11));
+		}
+		return ScanDelta.fromScanMap(readScan(reply));
+	}
+
+	/**
+	 * Reads the rest of a SCAN reply.
+	 * @param reply the first line of the reply
+	 */
+	private ScanMap readScan(String reply) throws IOException {
+		// binary scans are a single line
+		if (reply.startsWith("SCAN_BIN ")) {
+			return ScanMapCodec.decodeFromString(reply.substring(9));
+		}
 
 		// start building string of json data
 		String jsonScanMapIn;
 		StringBuilder jsonScanMap = new StringBuilder();	
-		while (!(jsonScanMapIn = in.readLine()).equals("SCAN_END")) {
+		while (!(jsonScanMapIn = readLine()).equals("SCAN_END")) {
 			jsonScanMap.append(jsonScanMapIn);
 		}
 
@@ -113,7 +338,7 @@ public class Query {
 		// start building string of json data
 		String jsonCargoListIn;
 		StringBuilder jsonCargoList = new StringBuilder();	
-		while (!(jsonCargoListIn = in.readLine()).equals("CARGO_END")) {
+		while (!(jsonCargoListIn = readLine()).equals("CARGO_END")) {
 			jsonCargoList.append(jsonCargoListIn);
 		}
 
@@ -122,10 +347,130 @@ public class Query {
 	}
 	
 	public void doMove(String dir) {
-		out.println("MOVE " + dir);
+		if (readySubscribed) {
+			ready = false;
+		}
+		transport.send("MOVE " + dir + "\n");
 	}
 	
 	public void doGather() {
-		out.println("GATHER");
+		transport.send("GATHER\n");
+	}
+
+	public Batch newBatch() {
+		return new Batch();
+	}
+
+	/**
+	 * A group of commands sent to the server in one go, wrapped in BATCH and
+	 * BATCH_END, so they cost one round trip instead of one each. Add the
+	 * commands, call {@link Batch#send()} and then read the results.
+	 * <p>
+	 * A server that doesn't know BATCH answers the two marker lines with empty
+	 * lines and the commands in between as usual, which is read the same way.
+	 * A batch of more commands than the server takes (100) is answered with
+	 * BATCH_ERROR, and send() returns false.
+	 * <p>
+	 * When send() returns false the replies were lost, and if the server was
+	 * sending scan deltas it is asked for DELTA again, so the next SCAN comes
+	 * back as a full window rather than a delta against a scan never read.
+	 */
+	public class Batch {
+		private ArrayList<String> commands = new ArrayList<String>();
+		private Coord loc;
+		private ScanMap scan;
+		private ScanDelta scanDelta;
+
+		private Batch() {
+		}
+
+		public Batch loc() {
+			commands.add(LocType.HERE.getCommand());
+			return this;
+		}
+
+		public Batch scan() {
+			commands.add("SCAN");
+			return this;
+		}
+
+		public Batch gather() {
+			commands.add("GATHER");
+			return this;
+		}
+
+		public Batch move(String dir) {
+			commands.add("MOVE " + dir);
+			return this;
+		}
+
+		/**
+		 * Sends the commands and reads all of the replies.
+		 * @return false if a reply didn't match its command
+		 * @throws IOException
+		 */
+		public boolean send() throws IOException {
+			StringBuilder frame = new StringBuilder("BATCH\n");
+			for (String command : commands) {
+				frame.append(command).append('\n');
+			}
+			frame.append("BATCH_END\n");
+			// one write, so the whole batch goes out together
+			transport.send(frame.toString());
+
+			String header = readLine();
+			if (header == null || !(header.equals("BATCH") || header.isEmpty())) {
+				return failed();
+			}
+			for (String command : commands) {
+				// GATHER and MOVE have no reply
+				if (!command.equals("SCAN") && !command.equals("LOC")) continue;
+
+				String reply = readLine();
+				if (reply == null || !reply.startsWith(command)) {
+					return failed();
+				}
+				if (command.equals("SCAN")) {
+					if (reply.startsWith("SCAN_DELTA ")) {
+						scan = null;
+						scanDelta = ScanDelta.decodeFromString(reply.substring(11));
+					} else {
+						scan = readScan(reply);
+						scanDelta = null;
+					}
+				} else {
+					loc = Parser.extractLocation(reply);
+				}
+			}
+			String trailer = readLine();
+			if (trailer == null || !(trailer.equals("BATCH_END") || trailer.isEmpty())) {
+				return failed();
+			}
+			return true;
+		}
+
+		private boolean failed() throws IOException {
+			flush();
+			resyncScan();
+			return false;
+		}
+
+		// result of the last LOC in the batch
+		public Coord getLoc() {
+			return loc;
+		}
+
+		// result of the last SCAN in the batch, or null if the server sent a delta
+		public ScanMap getScan() {
+			return scan;
+		}
+
+		// result of the last SCAN in the batch as a delta, whichever form the server sent
+		public ScanDelta getScanDelta() {
+			if (scanDelta == null && scan != null) {
+				scanDelta = ScanDelta.fromScanMap(scan);
+			}
+			return scanDelta;
+		}
 	}
 }
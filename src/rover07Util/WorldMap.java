@@ -2,6 +2,7 @@ package rover07Util;
 
 import common.Coord;
 import common.MapTile;
+import common.ScanDelta;
 import common.ScanMap;
 import enums.Science;
 import rover07Util.Pathfinding.Map;
@@ -54,24 +55,47 @@ public class WorldMap implements Map {
                 final WorldMapCell cell = getCell(topLeftX + dx, topLeftY + dy);
                 if (cell == null) continue;
 
-                final MapTile newTile = scanned[dx][dy];
-                final MapTile oldTile = cell.getTile();
-                if (oldTile != null && oldTile.getTerrain() == newTile.getTerrain()) {
-                    Science oldScience = oldTile.getScience();
-                    if (oldScience != Science.NONE || oldScience == newTile.getScience()) {
-                        cell.touch();
-                        continue;
-                    }
+                if (mergeTile(cell, scanned[dx][dy])) {
+                    changed.add(cell);
                 }
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Applies a SCAN_DELTA reply. Only the tiles it carries are looked at;
+     * the rest of the window is unchanged since the previous scan.
+     */
+    public Set<WorldMapCell> updateMap(ScanDelta delta) {
+        final Set<WorldMapCell> changed = new HashSet<>();
+        for (int n = 0; n < delta.size(); n++) {
+            final WorldMapCell cell = getCell(delta.getX(n), delta.getY(n));
+            if (cell == null) continue;
 
-                cell.setTile(newTile);
+            if (mergeTile(cell, delta.getTile(n))) {
                 changed.add(cell);
             }
         }
-
         return changed;
     }
 
+    // returns true if the cell learned something new from the tile
+    private boolean mergeTile(WorldMapCell cell, MapTile newTile) {
+        final MapTile oldTile = cell.getTile();
+        if (oldTile != null && oldTile.getTerrain() == newTile.getTerrain()) {
+            Science oldScience = oldTile.getScience();
+            if (oldScience != Science.NONE || oldScience == newTile.getScience()) {
+                cell.touch();
+                return false;
+            }
+        }
+
+        cell.setTile(newTile);
+        return true;
+    }
+
     public void grow(int growX, int growY) {
         // add columns to existing rows
         for (int y = 0; y < height; y++) {
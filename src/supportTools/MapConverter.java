@@ -0,0 +1,55 @@
+package supportTools;
+
+import java.io.IOException;
+
+import common.BinaryMapFile;
+
+/**
+ * Converts a Map*.txt file to the binary map format the server can memory map
+ * (see common.BinaryMapFile), or a binary map back to text.
+ *
+ * usage: MapConverter inputFile [outputFile]
+ *   Map100x60_2016-04-30_1.txt is written to Map100x60_2016-04-30_1.swmap,
+ *   and a binary map to the same name with .txt, unless outputFile is given.
+ */
+public class MapConverter {
+	public static final String BINARY_EXTENSION = ".swmap";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("usage: MapConverter inputFile [outputFile]");
+			System.exit(2);
+		}
+		String inputFile = args[0];
+		boolean toText = BinaryMapFile.isBinaryMap(inputFile);
+		String outputFile = (args.length > 1) ? args[1] : baseName(inputFile) + (toText ? ".txt" : BINARY_EXTENSION);
+		if (outputFile.equals(inputFile)) {
+			System.out.println("MapConverter: won't overwrite " + inputFile + " with itself");
+			System.exit(2);
+		}
+
+		SwarmMapInit mapInit = new SwarmMapInit();
+		long start = System.nanoTime();
+		if (toText) {
+			mapInit.loadFromBinaryFile(inputFile);
+		} else {
+			mapInit.parseInputFromDisplayTextFile(inputFile);
+		}
+		long loaded = System.nanoTime();
+		if (toText) {
+			mapInit.saveToDisplayTextFile(outputFile);
+		} else {
+			mapInit.saveToBinaryFile(outputFile);
+		}
+		long saved = System.nanoTime();
+
+		System.out.println("MapConverter: " + inputFile + " (" + mapInit.getMapWidth() + " x " + mapInit.getMapHeight()
+				+ ") read in " + (loaded - start) / 1000000 + " ms, " + outputFile + " written in " + (saved - loaded) / 1000000 + " ms");
+	}
+
+	private static String baseName(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		int slash = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\'));
+		return (dot > slash) ? fileName.substring(0, dot) : fileName;
+	}
+}
@@ -13,9 +13,10 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
+import common.BinaryMapFile;
 import common.Coord;
-import common.MapTile;
 import common.PlanetMap;
+import common.ProceduralWorld;
 import common.RoverLocations;
 import common.ScienceLocations;
 import enums.RoverName;
@@ -100,6 +101,53 @@ public class SwarmMapInit {
 		this.targetPosCoord = tswarm.planetMap.getTargetPosition();
 	}
 
+	/**
+	 * Loads a map written by saveToBinaryFile (or supportTools.MapConverter). The
+	 * terrain is memory mapped rather than read in, so this is quick however big
+	 * the map is.
+	 */
+	public void loadFromBinaryFile(String fileName) throws IOException {
+		loadFromBinaryFile(fileName, 0);
+	}
+
+	/**
+	 * @param memoryBudget 0 to memory map the terrain, otherwise the bytes of it to
+	 *        hold at once, read from the file as it is needed
+	 */
+	public void loadFromBinaryFile(String fileName, long memoryBudget) throws IOException {
+		BinaryMapFile mapFile = new BinaryMapFile(fileName, memoryBudget);
+		this.mapName = mapFile.getMapName();
+		System.out.println("MapInit: " + this.mapName);
+		this.planetMap = mapFile.getPlanetMap();
+		this.mapWidth = planetMap.getWidth();
+		this.mapHeight = planetMap.getHeight();
+		this.roverLocations = mapFile.getRoverLocations();
+		this.scienceLocations = mapFile.getScienceLocations();
+		this.startPosCoord = planetMap.getStartPosition();
+		this.targetPosCoord = planetMap.getTargetPosition();
+	}
+
+	/**
+	 * Makes up a world as named by worldName (see ProceduralWorld), keeping no
+	 * more than memoryBudget bytes of its terrain at once.
+	 */
+	public void loadProceduralWorld(String worldName, long memoryBudget) {
+		ProceduralWorld world = ProceduralWorld.fromName(worldName, memoryBudget);
+		this.mapName = world.getName();
+		System.out.println("MapInit: " + this.mapName);
+		this.planetMap = world.getPlanetMap();
+		this.mapWidth = planetMap.getWidth();
+		this.mapHeight = planetMap.getHeight();
+		this.roverLocations = world.getRoverLocations();
+		this.scienceLocations = world.getScienceLocations();
+		this.startPosCoord = planetMap.getStartPosition();
+		this.targetPosCoord = planetMap.getTargetPosition();
+	}
+
+	public void saveToBinaryFile(String fileName) throws IOException {
+		BinaryMapFile.write(fileName, mapName, planetMap, roverLocations, scienceLocations);
+	}
+
 	public int getMapWidth() {
 		return mapWidth;
 	}
@@ -121,7 +169,6 @@ public class SwarmMapInit {
 	}
 
 	public void parseInputFromDisplayTextFile(String fileName) throws IOException {
-		this.roverLocations = new RoverLocations();
 		this.scienceLocations = new ScienceLocations();
 
 		FileReader input = new FileReader(fileName);
@@ -136,6 +183,7 @@ public class SwarmMapInit {
 		Coord mapSize = extractCoord(bufRead.readLine());
 		this.mapWidth = mapSize.xpos;
 		this.mapHeight = mapSize.ypos;
+		this.roverLocations = new RoverLocations(this.mapWidth, this.mapHeight);
 		
 		// line 3 - start position (x, y) coordinate
 		Coord startPos = extractCoord(bufRead.readLine());
@@ -173,10 +221,10 @@ public class SwarmMapInit {
 					String posOne = tstr.substring(0, 1);
 					if (!posOne.equals("_")) {
 						
-						planetMap.setTile(new MapTile(posOne), i, yPos);
+						planetMap.setTerrain(Terrain.getEnum(posOne), i, yPos);
 					} else {
 						
-						planetMap.setTile(new MapTile("N"), i, yPos);
+						planetMap.setTerrain(Terrain.SOIL, i, yPos);
 					}
 
 					String posTwo = tstr.substring(1, 2);
@@ -249,8 +297,9 @@ public class SwarmMapInit {
 		for (int j = 0; j < mapHeight; j++) {
 			for (int i = 0; i < mapWidth; i++) {
 				// check for rover
-				if (roverLocations.containsCoord(new Coord(i, j))) {
-					String rNum = roverLocations.getName(new Coord(i, j)).toString();
+				RoverName rover = roverLocations.getName(i, j);
+				if (rover != null) {
+					String rNum = rover.toString();
 					printMap.append("|" + rNum.substring(6));
 				} else {
 					printMap.append("|  ");
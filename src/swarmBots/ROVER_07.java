@@ -3,8 +3,11 @@ package swarmBots;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import common.Coord;
+import common.GameClock;
 import common.MapTile;
-import common.ScanMap;
+import common.ScanDelta;
+import common.SocketTransport;
+import common.Transport;
 import enums.RoverName;
 import enums.Science;
 import enums.Terrain;
@@ -13,13 +16,10 @@ import rover07Util.*;
 import rover07Util.Pathfinding.DStarLite;
 import rover07Util.Pathfinding.MapCell;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -33,47 +33,78 @@ public class ROVER_07 {
     // connection settings
     private final String ROVER_NAME = "ROVER_07";
     private final String SERVER_ADDRESS;
-    private final int PORT_ADDRESS = 9537;
+    private final int PORT_ADDRESS;
+    // the match to play in on a server that hosts several, null for its default match
+    private final String MATCH_ID;
+    // the connection to use instead of a socket to SERVER_ADDRESS, if any
+    private final Transport TRANSPORT;
+    // times the pauses between commands
+    private GameClock clock = GameClock.REAL;
 
     private Query q;
     private RoverComms comms;
 
+    // where the server last said we moved to, when it pushes LOC events
+    private Coord pushedLoc;
+
     /**
      * Constructors
      */
     public ROVER_07(String serverAddress) {
+        this(serverAddress, 9537, null);
+    }
+
+    public ROVER_07(String serverAddress, int port, String matchId) {
         System.out.println("ROVER_07 rover object constructed");
         SERVER_ADDRESS = serverAddress;
+        PORT_ADDRESS = port;
+        MATCH_ID = matchId;
+        TRANSPORT = null;
+    }
+
+    // plays over a connection that is already open, e.g. a controlServer.InProcessTransport
+    public ROVER_07(Transport transport, String matchId) {
+        System.out.println("ROVER_07 rover object constructed");
+        SERVER_ADDRESS = null;
+        PORT_ADDRESS = 0;
+        MATCH_ID = matchId;
+        TRANSPORT = transport;
+    }
+
+    // pauses by the match's game clock rather than real time, so a faster clock doesn't cost turns - see controlServer.Tournament
+    public void setClock(GameClock clock) {
+        this.clock = clock;
     }
 
     /**
      * Connects to the server then enters the processing loop.
      */
-    private void run() throws IOException {
+    public void run() throws IOException {
         Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
-        // Make connection and initialize streams
-        Socket socket = new Socket(SERVER_ADDRESS, PORT_ADDRESS);
-        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        // Make connection
+        Transport transport = TRANSPORT != null ? TRANSPORT : new SocketTransport(SERVER_ADDRESS, PORT_ADDRESS);
 
-        q = new Query(in, out, gson);
+        q = new Query(transport, gson);
 
-        // Set up rover communications thread
-        try {
-            comms = new RoverComms(RoverName.getEnum(ROVER_NAME));
-        } catch (IOException e) {
-            comms = null;
-            System.err.println("Failed to initialize rover connection");
-            e.printStackTrace();
+        // Set up rover communications thread - the rovers talk on fixed ports, so only in the
+        // default match, as rovers in other matches on the same machine would hear each other
+        if (MATCH_ID == null) {
+            try {
+                comms = new RoverComms(RoverName.getEnum(ROVER_NAME));
+            } catch (IOException e) {
+                comms = null;
+                System.err.println("Failed to initialize rover connection");
+                e.printStackTrace();
+            }
         }
 
         // Process all messages from server, wait until server requests Rover ID name
         while (true) {
-            String line = in.readLine();
+            String line = transport.readLine();
             if (line.startsWith("SUBMITNAME")) {
                 // This sets the name of this instance of a swarmBot for identifying the thread to the server
-                out.println(ROVER_NAME);
+                transport.send((MATCH_ID == null ? ROVER_NAME : ROVER_NAME + " MATCH " + MATCH_ID) + "\n");
                 break;
             }
         }
@@ -86,9 +117,9 @@ public class ROVER_07 {
         }
 
         try {
-            socket.close();
+            transport.close();
         } catch (Exception e) {
-            System.err.println("Failed to close socket");
+            System.err.println("Failed to close connection");
             e.printStackTrace();
         }
 
@@ -119,6 +150,30 @@ public class ROVER_07 {
         equipment = q.getEquipment();
         System.out.println(ROVER_NAME + " equipment list results " + equipment + "\n");
 
+        // ask for SCAN replies with only the tiles that changed; falls back to binary, then JSON, on servers without it
+        if (q.requestDeltaScan()) {
+            System.out.println(ROVER_NAME + " delta scan format enabled");
+        } else {
+            boolean binaryScan = q.requestBinaryScan();
+            System.out.println(ROVER_NAME + " binary scan format " + (binaryScan ? "enabled" : "not supported"));
+        }
+
+        // have the server push our location and tell us when the drive is ready again,
+        // instead of asking for LOC and sleeping a fixed time every loop
+        final boolean locEvents = q.subscribe("LOC");
+        final boolean readyEvents = q.subscribe("READY");
+        System.out.println(ROVER_NAME + " location events " + (locEvents ? "enabled" : "not supported") +
+                ", ready events " + (readyEvents ? "enabled" : "not supported"));
+        if (locEvents) {
+            pushedLoc = q.getLoc();
+            q.addEventListener(new Query.EventAdapter() {
+                @Override
+                public void onLoc(Coord loc) {
+                    pushedLoc = loc;
+                }
+            });
+        }
+
         // get START_LOC
         startLoc = q.getLoc(Query.LocType.START);
         System.out.println(ROVER_NAME + " START_LOC " + startLoc);
@@ -171,41 +226,41 @@ public class ROVER_07 {
                 }
             }
 
-            // **** do a LOC ****
-            currentLoc = q.getLoc();
+            // **** do a LOC, SCAN and GATHER in a single round trip ****
+            // the gather happens at the location LOC returns, since we don't move in between
+            // LOC isn't needed when the server pushes our moves - they arrive ahead of the batch reply
+            Query.Batch batch = q.newBatch();
+            if (!locEvents) batch.loc();
+            batch.scan().gather();
+            if (!batch.send()) {
+                // the scan was lost - Query has asked for the next one in full, so the map doesn't miss it
+                System.err.println("ROVER_07 unexpected reply to LOC/SCAN/GATHER batch");
+                clock.sleep(200);
+                continue;
+            }
+            currentLoc = locEvents ? pushedLoc : batch.getLoc();
             System.out.println("ROVER_07 current location: " + currentLoc);
 
-
-
-            // ***** do a SCAN *****
             //System.out.println("ROVER_07 sending SCAN request");
-            ScanMap scanMap = q.getScan();
-            //scanMap.debugPrintMap();
+            // only the tiles that changed since the last scan, or the whole window from servers without deltas
+            ScanDelta scanDelta = batch.getScanDelta();
 
 
 
             boolean replan = false;
 
             { // check if we need to grow world map
-                int extentX = 0;
-                int extentY = 0;
-
-                final int scanSize = scanMap.getEdgeSize();
-                final MapTile[][] map = scanMap.getScanMap();
-                for (int x = 0; x < scanSize; x++) {
-                    for (int y = 0; y < scanSize; y++) {
-                        if (x <= extentX && y <= extentY) continue;
-                        final MapTile tile = map[x][y];
-                        if (tile.getTerrain() != Terrain.NONE) {
-                            extentX = Math.max(x, extentX);
-                            extentY = Math.max(y, extentY);
-                        }
+                final int radius = scanDelta.getEdgeSize() >> 1;
+                int maxX = currentLoc.xpos - radius;
+                int maxY = currentLoc.ypos - radius;
+                // tiles not in the delta were already seen by an earlier scan
+                for (int n = 0; n < scanDelta.size(); n++) {
+                    if (scanDelta.getTerrain(n) != Terrain.NONE) {
+                        maxX = Math.max(scanDelta.getX(n), maxX);
+                        maxY = Math.max(scanDelta.getY(n), maxY);
                     }
                 }
 
-                final int maxX = currentLoc.xpos - (scanSize >> 1) + extentX;
-                final int maxY = currentLoc.ypos - (scanSize >> 1) + extentY;
-
                 final int growX = Math.max(maxX - worldMap.getWidth(), 0);
                 final int growY = Math.max(maxY - worldMap.getHeight(), 0);
 
@@ -217,7 +272,7 @@ public class ROVER_07 {
             }
 
             // merge terrain/science changes
-            Set<WorldMapCell> changes = worldMap.updateMap(currentLoc, scanMap);
+            Set<WorldMapCell> changes = worldMap.updateMap(scanDelta);
             for (WorldMapCell cell : changes) {
                 final MapTile tile = cell.getTile();
                 //System.out.println("learned " + cell.getCoord() + " is " +
@@ -242,41 +297,45 @@ public class ROVER_07 {
 
             // mark rover cells as blocked
             {
-                // unblock last set
-                for (WorldMapCell cell : roverCells) {
-                    cell.setBlocked(false);
-                    if (pf != null) pf.markChangedCell(cell);
-                    replan = true;
+                // unblock cells that went out of view, since the scan won't tell us about them any more
+                Iterator<WorldMapCell> it = roverCells.iterator();
+                while (it.hasNext()) {
+                    WorldMapCell cell = it.next();
+                    if (!scanDelta.inWindow(cell.getX(), cell.getY())) {
+                        it.remove();
+                        cell.setBlocked(false);
+                        if (pf != null) pf.markChangedCell(cell);
+                        replan = true;
+                    }
                 }
-                roverCells.clear();
-
-                // block new set
-                final int scanSize = scanMap.getEdgeSize();
-                final MapTile[][] scanTiles = scanMap.getScanMap();
-                final int radius = scanSize >> 1;
-                final int startX = currentLoc.xpos - radius;
-                final int startY = currentLoc.ypos - radius;
-                for (int dx = 0; dx < scanSize; dx++) {
-                    for (int dy = 0; dy < scanSize; dy++) {
-                        if (dx == radius && dy == radius) continue; // don't block our own spot
-
-                        if (scanTiles[dx][dy].getHasRover()) {
-                            WorldMapCell cell = worldMap.getCell(startX + dx, startY + dy);
-                            if (cell == null || cell.isBlocked()) continue;
-
-                            cell.setBlocked(true);
-                            roverCells.add(cell);
-                            if (pf != null) pf.markChangedCell(cell);
-                            replan = true;
-                        }
+
+                // block cells a rover moved onto, unblock the ones it left
+                for (int n = 0; n < scanDelta.size(); n++) {
+                    final int x = scanDelta.getX(n);
+                    final int y = scanDelta.getY(n);
+                    if (x == currentLoc.xpos && y == currentLoc.ypos) continue; // don't block our own spot
+
+                    WorldMapCell cell = worldMap.getCell(x, y);
+                    if (cell == null) continue;
+
+                    if (scanDelta.getHasRover(n)) {
+                        if (cell.isBlocked()) continue;
+
+                        cell.setBlocked(true);
+                        roverCells.add(cell);
+                        if (pf != null) pf.markChangedCell(cell);
+                        replan = true;
+                    } else if (roverCells.remove(cell)) {
+                        cell.setBlocked(false);
+                        if (pf != null) pf.markChangedCell(cell);
+                        replan = true;
                     }
                 }
             }
 
 
 
-            // ***** do a GATHER *****
-            q.doGather();
+            // ***** GATHER was sent with the batch *****
             { // unmark any gatherable science at this loc
                 MapTile tile = worldMap.getCell(currentLoc).getTile();
                 Terrain terr = tile.getTerrain();
@@ -288,6 +347,7 @@ public class ROVER_07 {
 
 
             // ***** move *****
+            boolean moveSent = false;
             Coord bestGoal = goalPicker.getClosestGoal(currentLoc);
             if (bestGoal == null) {
                 // TODO perform clustering to find least discovered areas?
@@ -335,14 +395,20 @@ public class ROVER_07 {
                 }
 
                 if (next != null) {
+                    String dir = null;
                     if (next.getX() == currentLoc.xpos + 1) {
-                        q.doMove("E");
+                        dir = "E";
                     } else if (next.getY() == currentLoc.ypos + 1) {
-                        q.doMove("S");
+                        dir = "S";
                     } else if (next.getX() == currentLoc.xpos - 1) {
-                        q.doMove("W");
+                        dir = "W";
                     } else if (next.getY() == currentLoc.ypos - 1) {
-                        q.doMove("N");
+                        dir = "N";
+                    }
+
+                    if (dir != null) {
+                        q.doMove(dir);
+                        moveSent = true;
                     } else {
                         System.err.println("Can't find which way to move: " +
                                 "(" + currentLoc.xpos + "," + currentLoc.ypos + ") -> " +
@@ -356,8 +422,12 @@ public class ROVER_07 {
                 }
             }
 
-            // repeat
-            Thread.sleep(200);
+            // repeat - the moment the drive has cooled down if the server tells us, otherwise after a pause
+            if (moveSent && readyEvents) {
+                q.awaitReady();
+            } else {
+                clock.sleep(200);
+            }
             //System.out.println("ROVER_07 ------------ bottom process control --------------");
         }
     }
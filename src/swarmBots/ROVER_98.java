@@ -14,6 +14,7 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
 import common.Coord;
+import common.GameClock;
 import common.MapTile;
 import common.ScanMap;
 import enums.Terrain;
@@ -33,6 +34,9 @@ public class ROVER_98 {
 	int sleepTime;
 	String SERVER_ADDRESS = "localhost";
 	static final int PORT_ADDRESS = 9537;
+	int port = PORT_ADDRESS;
+	String matchId = null; // plays in the server's default match unless set
+	GameClock clock = GameClock.REAL; // times the pauses between commands
 
 	public ROVER_98() {
 		// constructor
@@ -50,16 +54,28 @@ public class ROVER_98 {
 		SERVER_ADDRESS = serverAddress;
 		sleepTime = 200; // in milliseconds - smaller is faster, but the server will cut connection if it is too small
 	}
+	
+	// plays in the named match on a server that hosts several - see controlServer.Tournament
+	public ROVER_98(String serverAddress, int port, String matchId) {
+		this(serverAddress);
+		this.port = port;
+		this.matchId = matchId;
+	}
+
+	// paces the rover by its match's game clock - see controlServer.Tournament
+	public void setClock(GameClock clock) {
+		this.clock = clock;
+	}
 
 	/**
 	 * Connects to the server then enters the processing loop.
 	 */
-	private void run() throws IOException, InterruptedException {
+	public void run() throws IOException, InterruptedException {
 
 		// Make connection to SwarmServer and initialize streams
 		Socket socket = null;
 		try {
-			socket = new Socket(SERVER_ADDRESS, PORT_ADDRESS);
+			socket = new Socket(SERVER_ADDRESS, port);
 
 			in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 			out = new PrintWriter(socket.getOutputStream(), true);
@@ -70,7 +86,7 @@ public class ROVER_98 {
 			while (true) {
 				String line = in.readLine();
 				if (line.startsWith("SUBMITNAME")) {
-					out.println(rovername); // This sets the name of this instance
+					out.println(matchId == null ? rovername : rovername + " MATCH " + matchId); // This sets the name of this instance
 											// of a swarmBot for identifying the
 											// thread to the server
 					break;
@@ -232,7 +248,7 @@ public class ROVER_98 {
 	
 				
 				// this is the Rovers HeartBeat, it regulates how fast the Rover cycles through the control loop
-				Thread.sleep(sleepTime);
+				clock.sleep(sleepTime);
 				
 				System.out.println("ROVER_98 ------------ bottom process control --------------"); 
 			}
@@ -12,6 +12,7 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
 import common.Coord;
+import common.GameClock;
 import common.MapTile;
 import common.ScanMap;
 import enums.Terrain;
@@ -36,6 +37,9 @@ public class ROVER_99 {
 	int sleepTime;
 	String SERVER_ADDRESS = "localhost";
 	static final int PORT_ADDRESS = 9537;
+	int port = PORT_ADDRESS;
+	String matchId = null; // plays in the server's default match unless set
+	GameClock clock = GameClock.REAL; // times the pauses between commands
 
 	public ROVER_99() {
 		// constructor
@@ -53,15 +57,27 @@ public class ROVER_99 {
 		SERVER_ADDRESS = serverAddress;
 		sleepTime = 200; // in milliseconds - smaller is faster, but the server will cut connection if it is too small
 	}
+	
+	// plays in the named match on a server that hosts several - see controlServer.Tournament
+	public ROVER_99(String serverAddress, int port, String matchId) {
+		this(serverAddress);
+		this.port = port;
+		this.matchId = matchId;
+	}
+
+	// paces the rover by its match's game clock - see controlServer.Tournament
+	public void setClock(GameClock clock) {
+		this.clock = clock;
+	}
 
 	/**
 	 * Connects to the server then enters the processing loop.
 	 */
-	private void run() throws IOException, InterruptedException {
+	public void run() throws IOException, InterruptedException {
 
 		// Make connection and initialize streams
 		//TODO - need to close this socket
-		Socket socket = new Socket(SERVER_ADDRESS, PORT_ADDRESS); // set port here
+		Socket socket = new Socket(SERVER_ADDRESS, port); // set port here
 		in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 		out = new PrintWriter(socket.getOutputStream(), true);
 
@@ -72,7 +88,7 @@ public class ROVER_99 {
 		while (true) {
 			String line = in.readLine();
 			if (line.startsWith("SUBMITNAME")) {
-				out.println(rovername); // This sets the name of this instance
+				out.println(matchId == null ? rovername : rovername + " MATCH " + matchId); // This sets the name of this instance
 										// of a swarmBot for identifying the
 										// thread to the server
 				break;
@@ -159,7 +175,7 @@ public class ROVER_99 {
 				for (int i = 0; i < 5; i++) {
 					out.println("MOVE S");
 					//System.out.println("ROVER_00 request move E");
-					Thread.sleep(1100);
+					clock.sleep(1100);
 				}
 				blocked = false;
 					//reverses direction after being blocked
@@ -223,7 +239,7 @@ public class ROVER_99 {
 			System.out.println("ROVER_99 blocked test " + blocked);
 
 			
-			Thread.sleep(sleepTime);
+			clock.sleep(sleepTime);
 			
 			System.out.println("ROVER_99 ------------ bottom process control --------------"); 
 
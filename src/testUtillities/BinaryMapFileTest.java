@@ -0,0 +1,77 @@
+package testUtillities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import common.BinaryMapFile;
+import supportTools.SwarmMapInit;
+
+/**
+ * Converts the map files in the top directory to the binary map format and
+ * back, and checks that each comes back the same - terrain, science, rovers,
+ * start and target positions - whether mapped or read in chunks, and that
+ * damaged files are refused.
+ *
+ * Run from the top of the repository so the map files are found.
+ */
+public class BinaryMapFileTest {
+	static boolean passed = true;
+
+	public static void main(String[] args) throws IOException {
+		String[] maps = { "Map100x60_2016-04-30_1.txt", "Map50x50map2.txt", "MapDefault.txt" };
+		File binary = File.createTempFile("BinaryMapFileTest", ".swmap");
+		binary.deleteOnExit();
+
+		for (String map : maps) {
+			SwarmMapInit text = new SwarmMapInit();
+			text.parseInputFromDisplayTextFile(map);
+			text.saveToBinaryFile(binary.getPath());
+			check(map + " is seen as binary once converted", BinaryMapFile.isBinaryMap(binary.getPath()), true);
+			check(map + " text file isn't seen as binary", BinaryMapFile.isBinaryMap(map), false);
+
+			SwarmMapInit loaded = new SwarmMapInit();
+			loaded.loadFromBinaryFile(binary.getPath());
+			check(map + " size", loaded.getMapWidth() + "x" + loaded.getMapHeight(), text.getMapWidth() + "x" + text.getMapHeight());
+			check(map + " start position", loaded.getPlanetMap().getStartPosition(), text.getPlanetMap().getStartPosition());
+			check(map + " target position", loaded.getPlanetMap().getTargetPosition(), text.getPlanetMap().getTargetPosition());
+			check(map + " rovers", loaded.getRoverLocations().getHashMapClone(), text.getRoverLocations().getHashMapClone());
+			check(map + " science", loaded.getScienceLocations().getHashMapClone(), text.getScienceLocations().getHashMapClone());
+			// the printed map has every tile's terrain, science and rover in it
+			check(map + " printed the same", loaded.makeInitString(), text.makeInitString());
+
+			// and read a chunk at a time rather than mapped
+			SwarmMapInit chunked = new SwarmMapInit();
+			chunked.loadFromBinaryFile(binary.getPath(), 1);
+			check(map + " printed the same read in chunks", chunked.makeInitString(), text.makeInitString());
+		}
+
+		// cut off the end of the last one
+		RandomAccessFile file = new RandomAccessFile(binary, "rw");
+		file.setLength(file.length() - 1);
+		file.close();
+		check("short file refused", loads(binary.getPath()), false);
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	static boolean loads(String fileName) {
+		try {
+			new SwarmMapInit().loadFromBinaryFile(fileName);
+			return true;
+		} catch (IOException e) {
+			System.out.println("BinaryMapFileTest: refused - " + e.getMessage());
+			return false;
+		}
+	}
+
+	static void check(String what, Object got, Object expected) {
+		if (!got.equals(expected)) {
+			System.out.println("FAIL " + what + ": got " + got + ", expected " + expected);
+			passed = false;
+		}
+	}
+}
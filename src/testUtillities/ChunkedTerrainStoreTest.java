@@ -0,0 +1,158 @@
+package testUtillities;
+
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import common.ChunkSource;
+import common.ChunkedTerrainStore;
+import common.Coord;
+import common.MapTile;
+import common.PlanetMap;
+import common.ProceduralWorld;
+import common.TerrainStore;
+import enums.Science;
+import enums.Terrain;
+
+/**
+ * Checks that a ChunkedTerrainStore with a small memory budget gives back the
+ * same terrain as its source however often its chunks are let go, keeps the
+ * tiles that were changed, and stays within its budget; that a scan across
+ * chunk boundaries sees the same as with everything held; and that a
+ * 100,000 x 100,000 ProceduralWorld can be explored in a few megabytes.
+ */
+public class ChunkedTerrainStoreTest {
+	static boolean passed = true;
+
+	// not a whole number of chunks either way, so the part chunks at the edges are used
+	static final int WIDTH = 1000;
+	static final int HEIGHT = 700;
+	// the smallest budget there is - 64 chunks, out of 176
+	static final long SMALL_BUDGET = 1;
+
+	public static void main(String[] args) throws Exception {
+		Random random = new Random(11);
+		final Terrain[] terrains = Terrain.values();
+		final byte[][] expected = new byte[WIDTH][HEIGHT];
+		for (int x = 0; x < WIDTH; x++) {
+			for (int y = 0; y < HEIGHT; y++) {
+				expected[x][y] = TerrainStore.pack(terrains[random.nextInt(terrains.length)], random.nextInt(TerrainStore.MAX_ELEVATION + 1));
+			}
+		}
+		ChunkSource source = new ChunkSource() {
+			public void loadChunk(int x0, int y0, int size, byte[] tiles) {
+				for (int y = y0; y < Math.min(y0 + size, HEIGHT); y++) {
+					for (int x = x0; x < Math.min(x0 + size, WIDTH); x++) {
+						tiles[(y - y0) * size + (x - x0)] = expected[x][y];
+					}
+				}
+			}
+		};
+
+		final ChunkedTerrainStore store = new ChunkedTerrainStore(WIDTH, HEIGHT, source, SMALL_BUDGET);
+		check("every tile reads back", readsBack(store, expected, random, 200000), 0);
+		check("chunks were let go", store.getChunkEvictions() > 0, true);
+		check("no more than 64 chunks held", store.getHeldChunks() <= 64, true);
+
+		// a change has to outlast its chunk being passed over by the eviction
+		store.set(WIDTH - 1, HEIGHT - 1, Terrain.FLUID, 3);
+		expected[WIDTH - 1][HEIGHT - 1] = TerrainStore.pack(Terrain.FLUID, 3);
+		check("reads back after a change", readsBack(store, expected, random, 200000), 0);
+		check("changed tile kept", store.getTerrain(WIDTH - 1, HEIGHT - 1), Terrain.FLUID);
+		TerrainStore copy = store.copy();
+		copy.set(WIDTH - 1, HEIGHT - 1, Terrain.SAND, 0);
+		check("copy keeps the change, and is separate", copy.getTerrain(0, 0) == store.getTerrain(0, 0)
+				&& store.getTerrain(WIDTH - 1, HEIGHT - 1) == Terrain.FLUID, true);
+
+		// readers on several threads while chunks come and go
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final long seed = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					wrong.addAndGet(readsBack(store, expected, new Random(seed), 200000));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		check("tiles read on 4 threads", wrong.get(), 0);
+
+		// the same world held whole and held in the smallest budget
+		PlanetMap whole = new ProceduralWorld(WIDTH, HEIGHT, 3, Long.MAX_VALUE).getPlanetMap();
+		ProceduralWorld smallWorld = new ProceduralWorld(WIDTH, HEIGHT, 3, SMALL_BUDGET);
+		PlanetMap small = smallWorld.getPlanetMap();
+		Set<Science> none = EnumSet.noneOf(Science.class);
+		int differ = 0;
+		for (int i = 0; i < 2000; i++) {
+			// centred on or next to a chunk corner, so the window is in up to four chunks
+			Coord center = new Coord(64 * (1 + random.nextInt(WIDTH / 64)) + random.nextInt(5) - 2,
+					64 * (1 + random.nextInt(HEIGHT / 64 - 1)) + random.nextInt(5) - 2);
+			MapTile[][] a = whole.getScanMap(center, 11, smallWorld.getRoverLocations(), smallWorld.getScienceLocations(), none).getScanMap();
+			MapTile[][] b = small.getScanMap(center, 11, smallWorld.getRoverLocations(), smallWorld.getScienceLocations(), none).getScanMap();
+			for (int x = 0; x < 11; x++) {
+				for (int y = 0; y < 11; y++) {
+					if (a[x][y].getTerrain() != b[x][y].getTerrain() || a[x][y].getElevation() != b[x][y].getElevation()) {
+						differ++;
+					}
+				}
+			}
+		}
+		check("scans across chunk boundaries", differ, 0);
+		check("start area is clear", small.getTerrain(small.getStartPosition()), Terrain.SOIL);
+
+		// a rover's worth of scans across a huge world
+		System.gc();
+		long before = usedMemory();
+		ProceduralWorld huge = ProceduralWorld.fromName("world:100000x100000:7", 16L * 1024 * 1024);
+		PlanetMap hugeMap = huge.getPlanetMap();
+		Coord pos = hugeMap.getStartPosition();
+		Set<Science> all = EnumSet.allOf(Science.class);
+		long start = System.nanoTime();
+		for (int i = 0; i < 20000; i++) {
+			pos = new Coord(pos.xpos + 3, pos.ypos + ((i / 1000) % 2 == 0 ? 1 : -1));
+			hugeMap.getScanMap(pos, 11, huge.getRoverLocations(), huge.getScienceLocations(), all);
+		}
+		long elapsed = System.nanoTime() - start;
+		ChunkedTerrainStore hugeStore = (ChunkedTerrainStore) hugeMap.getTerrainStore();
+		System.gc();
+		System.out.println("ChunkedTerrainStoreTest: 20000 scans across world:100000x100000 in " + elapsed / 1000000 + " ms, "
+				+ hugeStore.getChunkLoads() + " chunks loaded, " + hugeStore.getHeldChunks() + " held, about "
+				+ (usedMemory() - before) / (1024 * 1024) + " MB used");
+		check("huge world within budget", hugeStore.getHeldChunks() <= 16 * 1024 * 1024 / (64 * 64), true);
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	// reads random tiles, returns how many weren't as expected
+	static int readsBack(TerrainStore store, byte[][] expected, Random random, int reads) {
+		int wrong = 0;
+		for (int i = 0; i < reads; i++) {
+			int x = random.nextInt(WIDTH);
+			int y = random.nextInt(HEIGHT);
+			if (TerrainStore.pack(store.getTerrain(x, y), store.getElevation(x, y)) != expected[x][y]) {
+				wrong++;
+			}
+		}
+		return wrong;
+	}
+
+	static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static void check(String what, Object got, Object expected) {
+		if (!got.equals(expected)) {
+			System.out.println("FAIL " + what + ": got " + got + ", expected " + expected);
+			passed = false;
+		}
+	}
+}
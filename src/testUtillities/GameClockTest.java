@@ -0,0 +1,89 @@
+package testUtillities;
+
+import common.Coord;
+import common.GameClock;
+import common.ManualClock;
+import common.PlanetMap;
+import common.Rover;
+import common.RoverLocations;
+import controlServer.MovementRules;
+import enums.MoveDirection;
+import enums.RoverName;
+
+/**
+ * Checks the move cooldown against a ManualClock, where the outcome only depends
+ * on how far the clock was advanced, and that a scaled clock really runs faster
+ * than real time.
+ */
+public class GameClockTest {
+	static boolean passed = true;
+
+	public static void main(String[] args) throws Exception {
+		ManualClock clock = new ManualClock(1000);
+		PlanetMap planetMap = new PlanetMap(5, 5);
+		RoverLocations roverLocations = new RoverLocations(5, 5);
+		roverLocations.putRover(RoverName.ROVER_00, new Coord(2, 2));
+
+		// ROVER_00 has wheels
+		Rover rover = new Rover(RoverName.ROVER_00, clock);
+		long cooldown = MovementRules.getTimePerSquare(rover.getRoverDrive());
+
+		check("move blocked right after start",
+				MovementRules.move(rover, MoveDirection.E, clock.currentTimeMillis(), planetMap, roverLocations), new Coord(2, 2));
+
+		clock.advance(cooldown);
+		check("move blocked at exactly the cooldown",
+				MovementRules.move(rover, MoveDirection.E, clock.currentTimeMillis(), planetMap, roverLocations), new Coord(2, 2));
+
+		clock.advance(1);
+		check("move allowed after the cooldown",
+				MovementRules.move(rover, MoveDirection.E, clock.currentTimeMillis(), planetMap, roverLocations), new Coord(3, 2));
+
+		check("second move blocked by the new cooldown",
+				MovementRules.move(rover, MoveDirection.S, clock.currentTimeMillis(), planetMap, roverLocations), new Coord(3, 2));
+
+		// a thread sleeping on the manual clock only wakes up when it is advanced far enough
+		final ManualClock sleepClock = new ManualClock();
+		Thread sleeper = new Thread(new Runnable() {
+			public void run() {
+				try {
+					sleepClock.sleep(5000);
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		sleeper.start();
+		// wait for it to actually be asleep, otherwise it would start counting from after the advance
+		while (sleeper.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		sleepClock.advance(4999);
+		sleeper.join(200);
+		check("sleeper still waiting at 4999", sleeper.isAlive(), true);
+		sleepClock.advance(1);
+		sleeper.join(1000);
+		check("sleeper woken at 5000", sleeper.isAlive(), false);
+
+		// 10 minutes of game time at 1000x should take well under 10 seconds
+		GameClock fast = GameClock.scaled(1000);
+		long realStart = System.currentTimeMillis();
+		long gameStart = fast.currentTimeMillis();
+		fast.sleep(600000);
+		long realTaken = System.currentTimeMillis() - realStart;
+		long gameTaken = fast.currentTimeMillis() - gameStart;
+		System.out.println("scaled clock: " + gameTaken + "ms of game time in " + realTaken + "ms");
+		check("scaled clock runs fast", realTaken < 5000 && gameTaken >= 600000, true);
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	static void check(String name, Object actual, Object expected) {
+		if (!expected.equals(actual)) {
+			System.out.println("FAIL: " + name + " - expected " + expected + " but was " + actual);
+			passed = false;
+		}
+	}
+}
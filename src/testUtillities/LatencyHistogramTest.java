@@ -0,0 +1,91 @@
+package testUtillities;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import common.LatencyHistogram;
+
+/**
+ * Records known values into a LatencyHistogram from several threads and checks
+ * the counts, and that the percentiles are within the promised precision of
+ * the exact ones.
+ */
+public class LatencyHistogramTest {
+	static boolean passed = true;
+
+	public static void main(String[] args) throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		check("empty histogram", histogram.getValueAtPercentile(99), 0L);
+
+		// small values are exact
+		LatencyHistogram small = new LatencyHistogram();
+		for (long v = 1; v <= 100; v++) {
+			small.record(v);
+		}
+		check("p50 of 1..100", small.getValueAtPercentile(50), 50L);
+		check("p99 of 1..100", small.getValueAtPercentile(99), 99L);
+		check("max of 1..100", small.getMaxNanos(), 100L);
+
+		// the same values recorded in two halves and added up
+		LatencyHistogram odd = new LatencyHistogram();
+		LatencyHistogram even = new LatencyHistogram();
+		for (long v = 1; v <= 100; v++) {
+			(v % 2 == 0 ? even : odd).record(v);
+		}
+		LatencyHistogram sum = new LatencyHistogram();
+		sum.add(odd);
+		sum.add(even);
+		check("count of added", sum.getCount(), 100L);
+		check("p50 of added", sum.getValueAtPercentile(50), 50L);
+		check("max of added", sum.getMaxNanos(), 100L);
+		check("mean of added", sum.getMeanNanos(), small.getMeanNanos());
+
+		// spread over six orders of magnitude, from four threads at once
+		final int threads = 4;
+		final int perThread = 250000;
+		final long[] values = new long[threads * perThread];
+		Random random = new Random(7);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) Math.pow(10, 2 + random.nextDouble() * 6);
+		}
+		Thread[] recorders = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int from = t * perThread;
+			recorders[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = from; i < from + perThread; i++) {
+						histogram.record(values[i]);
+					}
+				}
+			});
+			recorders[t].start();
+		}
+		for (Thread recorder : recorders) {
+			recorder.join();
+		}
+
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		check("count", histogram.getCount(), (long) values.length);
+		check("max", histogram.getMaxNanos(), sorted[sorted.length - 1]);
+		for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+			long exact = sorted[(int) Math.ceil(percentile / 100 * sorted.length) - 1];
+			long reported = histogram.getValueAtPercentile(percentile);
+			// never below the real value, and at most one bucket (1/64) above it
+			check("p" + percentile + " within 1.6% (exact " + exact + ", reported " + reported + ")",
+					reported >= exact && reported <= exact + exact / 64 + 1, true);
+		}
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	static void check(String name, Object actual, Object expected) {
+		if (!expected.equals(actual)) {
+			System.out.println("FAIL: " + name + " - expected " + expected + " but was " + actual);
+			passed = false;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package testUtillities;
+
+import java.io.File;
+
+import common.MatchJournal;
+
+/**
+ * Writes a MatchJournal long enough to need several mapped chunks, reads it
+ * back and checks every record, then checks that a journal that was never
+ * closed can still be read up to its last record. Positions go past
+ * Short.MAX_VALUE, as they do on the biggest procedural worlds.
+ */
+public class MatchJournalTest {
+	static boolean passed = true;
+
+	static final long START_TIME = 1460000000000L;
+
+	public static void main(String[] args) throws Exception {
+		File file = File.createTempFile("MatchJournalTest", ".swj");
+		file.deleteOnExit();
+
+		// a bit over two chunks worth
+		int records = 2 * 4 * 1024 * 1024 / MatchJournal.RECORD_SIZE + 1000;
+		MatchJournal journal = new MatchJournal(file.getPath(), "Map100x60.txt", START_TIME);
+		for (int i = 0; i < records; i++) {
+			journal.append(command(i), i % 20, i % 5, i % 7, START_TIME + i * 3L, i % 1000 * 100, i % 600 * 150);
+		}
+		journal.close();
+		journal.close(); // a second close does nothing
+
+		check("every record read back", readAll(file.getPath(), records), records);
+		check("trimmed to the records", file.length() < 3 * 4 * 1024 * 1024, true);
+
+		// left open, as when the server is killed - the unused end of the chunk is zeros
+		MatchJournal unclosed = new MatchJournal(file.getPath(), "Map100x60.txt", START_TIME);
+		for (int i = 0; i < 10; i++) {
+			unclosed.append(command(i), i % 20, i % 5, i % 7, START_TIME + i * 3L, i % 1000 * 100, i % 600 * 150);
+		}
+		check("unclosed journal read up to its last record", readAll(file.getPath(), 10), 10);
+		unclosed.close();
+
+		check("unknown command", MatchJournal.Command.fromLine("LAND ON MARS"), MatchJournal.Command.OTHER);
+		check("command with an argument", MatchJournal.Command.fromLine("MOVE N"), MatchJournal.Command.MOVE);
+		check("CONNECT is never read from a command line", MatchJournal.Command.fromLine("CONNECT"), MatchJournal.Command.OTHER);
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	static MatchJournal.Command command(int i) {
+		MatchJournal.Command[] commands = MatchJournal.Command.values();
+		return commands[i % commands.length];
+	}
+
+	// reads the journal, checking each record against what was written, and returns how many there were
+	static int readAll(String fileName, int expected) throws Exception {
+		MatchJournal.Reader reader = new MatchJournal.Reader(fileName);
+		check("start time", reader.getStartTime(), START_TIME);
+		check("map file name", reader.getMapFileName(), "Map100x60.txt");
+		int i = 0;
+		while (reader.next()) {
+			if (reader.getCommand() != command(i) || reader.getRover() != i % 20 || reader.getArg() != i % 5
+					|| reader.getScience() != i % 7 || reader.getTime() != START_TIME + i * 3L
+					|| reader.getX() != i % 1000 * 100 || reader.getY() != i % 600 * 150) {
+				check("record " + i, false, true);
+				break;
+			}
+			i++;
+		}
+		reader.close();
+		return i;
+	}
+
+	static void check(String name, Object actual, Object expected) {
+		if (!expected.equals(actual)) {
+			System.out.println("FAIL: " + name + " - expected " + expected + " but was " + actual);
+			passed = false;
+		}
+	}
+}
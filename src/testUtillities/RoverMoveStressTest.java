@@ -0,0 +1,187 @@
+package testUtillities;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import common.Coord;
+import common.RoverLocations;
+import enums.RoverName;
+
+/**
+ * Hammers RoverLocations.moveRover from many threads at once on a small, crowded
+ * map and then checks that no two rovers ended up on the same location and that
+ * the occupancy grid agrees with the rover positions. Then races moves against
+ * the building of the grid.
+ *
+ * usage: RoverMoveStressTest [threads] [milliseconds]
+ */
+public class RoverMoveStressTest {
+	static final int MAP_WIDTH = 12;
+	static final int MAP_HEIGHT = 12;
+
+	public static void main(String[] args) throws Exception {
+		int threadCount = (args.length > 0) ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+		long runTime = (args.length > 1) ? Long.parseLong(args[1]) : 3000;
+
+		final RoverLocations roverLocations = new RoverLocations(MAP_WIDTH, MAP_HEIGHT);
+		final RoverName[] rovers = RoverName.values();
+		int placed = 0;
+		for (RoverName rname : rovers) {
+			if (rname == RoverName.NONE) {
+				continue;
+			}
+			roverLocations.putRover(rname, new Coord(placed % MAP_WIDTH, placed / MAP_WIDTH));
+			placed++;
+		}
+		System.out.println("placed " + placed + " rovers on a " + MAP_WIDTH + "x" + MAP_HEIGHT + " map, running "
+				+ threadCount + " threads for " + runTime + "ms");
+
+		final AtomicLong moves = new AtomicLong();
+		final AtomicLong blocked = new AtomicLong();
+		final long stopTime = System.currentTimeMillis() + runTime;
+
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final long seed = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					Random random = new Random(seed);
+					long myMoves = 0;
+					long myBlocked = 0;
+					while (System.currentTimeMillis() < stopTime) {
+						for (int n = 0; n < 1000; n++) {
+							// any thread may pick any rover so the same rover is also moved from several threads
+							RoverName rname = rovers[random.nextInt(rovers.length)];
+							Coord from = roverLocations.getLocation(rname);
+							if (from == null) {
+								continue;
+							}
+							int x = from.xpos;
+							int y = from.ypos;
+							switch (random.nextInt(4)) {
+							case 0: y--; break;
+							case 1: y++; break;
+							case 2: x++; break;
+							default: x--; break;
+							}
+							if (x < 0 || y < 0 || x >= MAP_WIDTH || y >= MAP_HEIGHT) {
+								continue;
+							}
+							if (roverLocations.moveRover(rname, from, new Coord(x, y))) {
+								myMoves++;
+							} else {
+								myBlocked++;
+							}
+						}
+					}
+					moves.addAndGet(myMoves);
+					blocked.addAndGet(myBlocked);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		System.out.println(moves.get() + " moves made, " + blocked.get() + " moves blocked");
+
+		// check the invariants now that everything has stopped
+		boolean passed = true;
+		HashMap<RoverName, Coord> positions = roverLocations.getHashMapClone();
+		HashSet<Coord> taken = new HashSet<Coord>();
+		for (Entry<RoverName, Coord> entry : positions.entrySet()) {
+			if (!taken.add(entry.getValue())) {
+				System.out.println("FAIL: " + entry.getKey() + " shares " + entry.getValue() + " with another rover");
+				passed = false;
+			}
+			if (roverLocations.getName(entry.getValue()) != entry.getKey()) {
+				System.out.println("FAIL: grid shows " + roverLocations.getName(entry.getValue()) + " at "
+						+ entry.getValue() + " instead of " + entry.getKey());
+				passed = false;
+			}
+		}
+		if (positions.size() != placed) {
+			System.out.println("FAIL: " + positions.size() + " rovers left out of " + placed);
+			passed = false;
+		}
+
+		int occupied = 0;
+		for (int j = 0; j < MAP_HEIGHT; j++) {
+			for (int i = 0; i < MAP_WIDTH; i++) {
+				if (roverLocations.containsCoord(i, j)) {
+					occupied++;
+				}
+			}
+		}
+		if (occupied != placed) {
+			System.out.println("FAIL: " + occupied + " locations marked as occupied for " + placed + " rovers");
+			passed = false;
+		}
+
+		// without the map size the grid starts out covering only where the rovers were put, and has to
+		// grow as they move off it - two rovers walk away from each other, well past the first block
+		RoverLocations unsized = new RoverLocations();
+		unsized.putRover(RoverName.ROVER_01, new Coord(1, 1));
+		unsized.putRover(RoverName.ROVER_02, new Coord(2, 1));
+		for (int step = 2; step < 200; step++) {
+			if (!unsized.moveRover(RoverName.ROVER_01, new Coord(1, step))
+					|| !unsized.moveRover(RoverName.ROVER_02, new Coord(step + 1, 1))) {
+				System.out.println("FAIL: could not move off the grid of an unsized RoverLocations at step " + step);
+				passed = false;
+				break;
+			}
+		}
+		if (unsized.getName(1, 199) != RoverName.ROVER_01 || unsized.containsCoord(1, 1) || unsized.containsCoord(2, 1)) {
+			System.out.println("FAIL: the grown grid doesn't match where the rovers went");
+			passed = false;
+		}
+
+		// the grid is built from the rover positions on first use - moves racing the build must
+		// still see every rover, so none of these moves onto a rover's location may succeed
+		final AtomicLong collisions = new AtomicLong();
+		for (int round = 0; round < 2000; round++) {
+			final RoverLocations fresh = new RoverLocations();
+			for (int i = 1; i < rovers.length; i++) {
+				fresh.putRover(rovers[i], new Coord(i, 0));
+			}
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread[] racers = new Thread[4];
+			for (int t = 0; t < racers.length; t++) {
+				final int offset = t;
+				racers[t] = new Thread(new Runnable() {
+					public void run() {
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						for (int i = 1; i < rovers.length - 1; i++) {
+							int mover = 1 + (i + offset) % (rovers.length - 2);
+							if (fresh.moveRover(rovers[mover], new Coord(mover + 1, 0))) {
+								collisions.incrementAndGet();
+							}
+						}
+					}
+				});
+				racers[t].start();
+			}
+			start.countDown();
+			for (Thread racer : racers) {
+				racer.join();
+			}
+		}
+		if (collisions.get() != 0) {
+			System.out.println("FAIL: " + collisions.get() + " moves onto another rover while the grid was built");
+			passed = false;
+		}
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package testUtillities;
+
+import java.util.Random;
+
+import common.Coord;
+import common.ScanDelta;
+import common.ScanMapCodec;
+import enums.Science;
+import enums.Terrain;
+
+/**
+ * Walks a scan window around a random map and checks that applying each
+ * ScanDelta to the previous window gives back the current one, and that a
+ * one tile move only sends the newly visible row or column.
+ */
+public class ScanDeltaTest {
+	static boolean passed = true;
+
+	static final int MAP_SIZE = 40;
+	static final int EDGE = 7;
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		byte[][] map = new byte[MAP_SIZE][MAP_SIZE];
+		for (int x = 0; x < MAP_SIZE; x++) {
+			for (int y = 0; y < MAP_SIZE; y++) {
+				map[x][y] = randomTile(random);
+			}
+		}
+
+		Coord center = new Coord(20, 20);
+		byte[] sent = window(map, center);
+		ScanDelta first = ScanDelta.decode(ScanDelta.encode(center, EDGE, sent, null, null));
+		check("first scan is full", first.isFull(), true);
+		check("first scan has every tile", first.size(), EDGE * EDGE);
+
+		// the client's copy of the window, rebuilt only from deltas
+		byte[][] seen = new byte[MAP_SIZE][MAP_SIZE];
+		apply(seen, first);
+
+		int[][] steps = { { 1, 0 }, { 0, 1 }, { -1, 0 }, { 0, -1 } };
+		for (int i = 0; i < 500; i++) {
+			int[] step = steps[random.nextInt(steps.length)];
+			Coord next = new Coord(clamp(center.xpos + step[0]), clamp(center.ypos + step[1]));
+			boolean moved = !next.equals(center);
+
+			// another rover or a gather changes a tile now and then
+			boolean tileChanged = random.nextInt(4) == 0;
+			if (tileChanged) {
+				map[clamp(next.xpos + random.nextInt(EDGE) - 3)][clamp(next.ypos + random.nextInt(EDGE) - 3)] = randomTile(random);
+			}
+
+			byte[] current = window(map, next);
+			ScanDelta delta = ScanDelta.decodeFromString(ScanDelta.encodeToString(next, EDGE, current, center, sent));
+			apply(seen, delta);
+
+			if (!tileChanged) {
+				check("delta after a one tile move", delta.size(), moved ? EDGE : 0);
+			}
+			check("window rebuilt from deltas at step " + i, matches(seen, map, next), true);
+
+			center = next;
+			sent = current;
+		}
+
+		check("edge size change sends a full scan",
+				ScanDelta.decode(ScanDelta.encode(center, 5, new byte[25], center, sent)).isFull(), true);
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	static byte randomTile(Random random) {
+		Terrain ter = Terrain.values()[random.nextInt(4) + 1];
+		Science sci = random.nextInt(10) == 0 ? Science.MINERAL : Science.NONE;
+		return ScanMapCodec.encodeTile(ter, sci, random.nextInt(20) == 0);
+	}
+
+	static int clamp(int v) {
+		return Math.max(EDGE, Math.min(MAP_SIZE - EDGE - 1, v));
+	}
+
+	static byte[] window(byte[][] map, Coord center) {
+		byte[] tiles = new byte[EDGE * EDGE];
+		for (int i = 0; i < EDGE; i++) {
+			for (int j = 0; j < EDGE; j++) {
+				tiles[i * EDGE + j] = map[center.xpos - EDGE / 2 + i][center.ypos - EDGE / 2 + j];
+			}
+		}
+		return tiles;
+	}
+
+	static void apply(byte[][] seen, ScanDelta delta) {
+		for (int n = 0; n < delta.size(); n++) {
+			seen[delta.getX(n)][delta.getY(n)] = ScanMapCodec.encodeTile(delta.getTile(n));
+		}
+	}
+
+	static boolean matches(byte[][] seen, byte[][] map, Coord center) {
+		for (int i = 0; i < EDGE; i++) {
+			for (int j = 0; j < EDGE; j++) {
+				int x = center.xpos - EDGE / 2 + i;
+				int y = center.ypos - EDGE / 2 + j;
+				if (seen[x][y] != map[x][y]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	static void check(String name, Object actual, Object expected) {
+		if (!expected.equals(actual)) {
+			System.out.println("FAIL: " + name + " - expected " + expected + " but was " + actual);
+			passed = false;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package testUtillities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import common.Coord;
+import common.ScienceLocations;
+import enums.Science;
+
+/**
+ * Has many threads gather every science on a map at once, as rovers racing
+ * for the same tiles would, and checks that each science was taken exactly
+ * once and that none is left behind, in the spatial index or the hash map.
+ * Then has science put on the same locations while it is being gathered, as
+ * a ProceduralWorld does, and checks the hash map still matches the index.
+ *
+ * usage: ScienceClaimStressTest [threads] [rounds]
+ */
+public class ScienceClaimStressTest {
+	static final int MAP_WIDTH = 150;
+	static final int MAP_HEIGHT = 100;
+
+	public static void main(String[] args) throws Exception {
+		int threadCount = (args.length > 0) ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		final Science[] sciences = Science.values();
+		boolean passed = true;
+
+		for (int round = 0; round < rounds; round++) {
+			// science on every other location, of every kind, crossing the index's chunk edges
+			final ScienceLocations scienceLocations = new ScienceLocations();
+			long[] placed = new long[sciences.length];
+			for (int y = 0; y < MAP_HEIGHT; y++) {
+				for (int x = (y & 1); x < MAP_WIDTH; x += 2) {
+					Science sci = sciences[1 + (x + y) % (sciences.length - 1)];
+					scienceLocations.putScience(new Coord(x, y), sci);
+					placed[sci.ordinal()]++;
+				}
+			}
+
+			// every thread goes over the whole map, from a different starting row
+			final AtomicLongArray taken = new AtomicLongArray(sciences.length);
+			Thread[] threads = new Thread[threadCount];
+			for (int t = 0; t < threadCount; t++) {
+				final int firstRow = t * MAP_HEIGHT / threadCount;
+				threads[t] = new Thread(new Runnable() {
+					public void run() {
+						for (int i = 0; i < MAP_HEIGHT; i++) {
+							int y = (firstRow + i) % MAP_HEIGHT;
+							for (int x = 0; x < MAP_WIDTH; x++) {
+								Science sci = scienceLocations.takeScience(new Coord(x, y));
+								if (sci != Science.NONE) {
+									taken.incrementAndGet(sci.ordinal());
+								}
+							}
+						}
+					}
+				});
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			for (Science sci : sciences) {
+				if (taken.get(sci.ordinal()) != placed[sci.ordinal()]) {
+					System.out.println("FAIL round " + round + ": " + sci + " placed " + placed[sci.ordinal()] + " but taken "
+							+ taken.get(sci.ordinal()) + " times");
+					passed = false;
+				}
+			}
+			if (!scienceLocations.getHashMapClone().isEmpty()) {
+				System.out.println("FAIL round " + round + ": " + scienceLocations.getHashMapClone().size() + " science left in the hash map");
+				passed = false;
+			}
+			for (int y = 0; y < MAP_HEIGHT; y++) {
+				for (int x = 0; x < MAP_WIDTH; x++) {
+					if (scienceLocations.checkLocation(new Coord(x, y))) {
+						System.out.println("FAIL round " + round + ": science left at " + x + "," + y);
+						passed = false;
+					}
+				}
+			}
+		}
+
+		for (int round = 0; round < rounds; round++) {
+			final ScienceLocations scienceLocations = new ScienceLocations();
+			scienceLocations.putScience(new Coord(0, 0), Science.MINERAL); // so the index is built
+			Thread[] threads = new Thread[threadCount];
+			for (int t = 0; t < threadCount; t++) {
+				final boolean putter = (t % 2 == 0);
+				final int seed = t;
+				threads[t] = new Thread(new Runnable() {
+					public void run() {
+						for (int i = 0; i < 20000; i++) {
+							Coord loc = new Coord((i * 7 + seed) % 10, (i * 3) % 10);
+							if (putter) {
+								scienceLocations.putScience(loc, sciences[1 + (i + seed) % (sciences.length - 1)]);
+							} else {
+								scienceLocations.takeScience(loc);
+							}
+						}
+					}
+				});
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			for (int y = 0; y < 10; y++) {
+				for (int x = 0; x < 10; x++) {
+					Coord loc = new Coord(x, y);
+					Science inHash = scienceLocations.getHashMapClone().get(loc);
+					Science inIndex = scienceLocations.scanLocation(loc);
+					if ((inHash == null ? Science.NONE : inHash) != inIndex) {
+						System.out.println("FAIL put round " + round + ": " + loc + " is " + inHash + " in the hash map but " + inIndex
+								+ " in the index");
+						passed = false;
+					}
+				}
+			}
+		}
+
+		// the examples go through the index too, even once it has been built
+		ScienceLocations example = new ScienceLocations();
+		example.checkLocation(new Coord(0, 0));
+		example.loadExampleTestScienceLocations();
+		if (example.scanLocation(new Coord(20, 14)) != Science.RADIOACTIVE) {
+			System.out.println("FAIL: example science not in the index");
+			passed = false;
+		}
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package testUtillities;
+
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+import common.ArrayTerrainStore;
+import common.Coord;
+import common.MapTile;
+import common.PlanetMap;
+import common.RoverLocations;
+import common.ScanMap;
+import common.ScanMapCodec;
+import common.ScienceLocations;
+import common.TerrainStore;
+import enums.RoverName;
+import enums.Science;
+import enums.Terrain;
+
+/**
+ * Checks that the packed TerrainStore behind PlanetMap gives back the terrain
+ * and elevation put in, and that a scan of it as MapTiles and as packed tiles
+ * agree, including off the edge of the map.
+ *
+ * Pass a size (e.g. 10000) to also fill a map that big - give the JVM the
+ * heap for it.
+ */
+public class TerrainStoreTest {
+	static boolean passed = true;
+
+	public static void main(String[] args) {
+		Random random = new Random(7);
+		Terrain[] terrains = Terrain.values();
+
+		PlanetMap planetMap = new PlanetMap(60, 40);
+		Terrain[][] ter = new Terrain[60][40];
+		int[][] elev = new int[60][40];
+		for (int x = 0; x < 60; x++) {
+			for (int y = 0; y < 40; y++) {
+				ter[x][y] = terrains[random.nextInt(terrains.length)];
+				elev[x][y] = random.nextInt(TerrainStore.MAX_ELEVATION + 1);
+				planetMap.setTile(new MapTile(ter[x][y], elev[x][y]), x, y);
+			}
+		}
+		boolean same = true;
+		for (int x = 0; x < 60; x++) {
+			for (int y = 0; y < 40; y++) {
+				MapTile tile = planetMap.getTile(x, y);
+				same &= tile.getTerrain() == ter[x][y] && tile.getElevation() == elev[x][y]
+						&& planetMap.getTerrain(x, y) == ter[x][y];
+			}
+		}
+		check("terrain and elevation read back", same, true);
+
+		PlanetMap copy = new PlanetMap(planetMap);
+		copy.setTerrain(Terrain.SAND, 0, 0);
+		check("copy is independent", planetMap.getTerrain(0, 0), ter[0][0]);
+
+		boolean thrown = false;
+		try {
+			planetMap.setTile(new MapTile(Terrain.ROCK, TerrainStore.MAX_ELEVATION + 1), 1, 1);
+		} catch (IllegalArgumentException e) {
+			thrown = true;
+		}
+		check("elevation over the maximum is refused", thrown, true);
+
+		RoverLocations rovers = new RoverLocations();
+		rovers.putRover(RoverName.ROVER_01, new Coord(2, 3));
+		ScienceLocations science = new ScienceLocations();
+		science.putScience(new Coord(1, 2), Science.MINERAL);
+		science.putScience(new Coord(30, 20), Science.ORGANIC);
+		Set<Science> visible = EnumSet.allOf(Science.class);
+
+		// corners run off the map, so both have to fill in NONE the same way
+		Coord[] centers = { new Coord(0, 0), new Coord(30, 20), new Coord(59, 39), new Coord(2, 3) };
+		for (Coord center : centers) {
+			int edge = 11;
+			MapTile[][] scan = planetMap.getScanMap(center, edge, rovers, science, visible).getScanMap();
+			byte[] tiles = new byte[edge * edge];
+			planetMap.getScanTiles(center, edge, rovers, science, visible, tiles);
+			boolean agree = true;
+			for (int i = 0; i < edge; i++) {
+				for (int j = 0; j < edge; j++) {
+					agree &= ScanMapCodec.encodeTile(scan[i][j]) == tiles[i * edge + j];
+				}
+			}
+			check("getScanMap and getScanTiles agree around " + center, agree, true);
+		}
+		ScanMap scanMap = planetMap.getScanMap(new Coord(2, 3), 3, rovers, science, visible);
+		check("scan shows the rover", scanMap.getScanMap()[1][1].getHasRover(), true);
+		check("scan shows the science", scanMap.getScanMap()[0][0].getScience(), Science.MINERAL);
+
+		if (args.length > 0) {
+			int size = Integer.parseInt(args[0]);
+			long before = usedMemory();
+			TerrainStore big = new ArrayTerrainStore(size, size, Terrain.SOIL);
+			big.set(size - 1, size - 1, Terrain.ROCK, 3);
+			System.out.println("TerrainStoreTest: " + size + " x " + size + " map uses about "
+					+ (usedMemory() - before) / (1024 * 1024) + " MB");
+			check("far corner of a big map", big.getTerrain(size - 1, size - 1), Terrain.ROCK);
+			check("far corner elevation", big.getElevation(size - 1, size - 1), 3);
+		}
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static void check(String what, Object got, Object expected) {
+		if (!got.equals(expected)) {
+			System.out.println("FAIL " + what + ": got " + got + ", expected " + expected);
+			passed = false;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package testUtillities;
+
+import common.ManualClock;
+import common.TokenBucket;
+
+/**
+ * Runs a TokenBucket against a ManualClock - a burst is let through, the next
+ * request is told how long to wait, and tokens come back at the set rate.
+ */
+public class TokenBucketTest {
+	static boolean passed = true;
+
+	public static void main(String[] args) {
+		ManualClock clock = new ManualClock();
+		TokenBucket bucket = new TokenBucket(500, 500, clock);
+
+		int accepted = 0;
+		for (int i = 0; i < 500; i++) {
+			if (bucket.tryAcquire() == 0) {
+				accepted++;
+			}
+		}
+		check("whole burst accepted", accepted, 500);
+		check("wait once the burst is used up", bucket.tryAcquire(), 2L);
+
+		clock.advance(2);
+		check("one token back after 2ms", bucket.tryAcquire(), 0L);
+		check("then empty again", bucket.tryAcquire() > 0, true);
+
+		// a second of quiet refills the bucket, but never past the burst size
+		clock.advance(5000);
+		accepted = 0;
+		for (int i = 0; i < 600; i++) {
+			if (bucket.tryAcquire() == 0) {
+				accepted++;
+			}
+		}
+		check("refilled up to the burst size", accepted, 500);
+
+		check("accepted count", bucket.getAcceptedCount(), 1001L);
+		check("throttled count", bucket.getThrottledCount(), 102L);
+
+		System.out.println(passed ? "PASS" : "FAIL");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	static void check(String name, Object actual, Object expected) {
+		if (!expected.equals(actual)) {
+			System.out.println("FAIL: " + name + " - expected " + expected + " but was " + actual);
+			passed = false;
+		}
+	}
+}